@@ -0,0 +1,43 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.bench;
+
+/**
+ * Result of one benchmark.
+ * Created 18th October, 2026.
+ */
+public final class BenchResult {
+    public final String name;
+    public final int iterations;
+    public final long operations;
+    public final double nsPerOpMean, nsPerOpMin, nsPerOpMax, nsPerOpStdDev;
+
+    public BenchResult(String name, double[] iterNsPerOp, long operations) {
+        this.name = name;
+        iterations = iterNsPerOp.length;
+        this.operations = operations;
+        double sum = 0, min = Double.MAX_VALUE, max = 0;
+        for (double d : iterNsPerOp) {
+            sum += d;
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+        }
+        double mean = sum / iterNsPerOp.length;
+        double var = 0;
+        for (double d : iterNsPerOp)
+            var += (d - mean) * (d - mean);
+        nsPerOpMean = mean;
+        nsPerOpMin = min;
+        nsPerOpMax = max;
+        nsPerOpStdDev = Math.sqrt(var / iterNsPerOp.length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-40s %14.2f ns/op (min %.2f, max %.2f, sd %.2f)", name, nsPerOpMean, nsPerOpMin, nsPerOpMax, nsPerOpStdDev);
+    }
+}
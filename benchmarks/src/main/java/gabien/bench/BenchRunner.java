@@ -0,0 +1,110 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedList;
+
+/**
+ * Runs benchmarks: warmup iterations, then measured iterations, each a fixed amount of wall-clock time.
+ * This is deliberately simple; it's here to catch regressions between releases, not to win arguments.
+ * Created 18th October, 2026.
+ */
+public final class BenchRunner {
+    public final int warmupIterations, measureIterations;
+    public final long iterationNanos;
+    public final LinkedList<BenchResult> results = new LinkedList<>();
+    /**
+     * Sink for benchmark return values, so the work is observably used.
+     */
+    public long sink;
+
+    public BenchRunner(int warmupIterations, int measureIterations, long iterationNanos) {
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+        this.iterationNanos = iterationNanos;
+    }
+
+    public BenchResult run(Benchmark bench) throws Exception {
+        bench.setup();
+        try {
+            for (int i = 0; i < warmupIterations; i++)
+                iteration(bench);
+            double[] nsPerOp = new double[measureIterations];
+            long totalOps = 0;
+            for (int i = 0; i < measureIterations; i++) {
+                long start = System.nanoTime();
+                long runs = iteration(bench);
+                long end = System.nanoTime();
+                long ops = runs * bench.opsPerRun;
+                nsPerOp[i] = (end - start) / (double) ops;
+                totalOps += ops;
+            }
+            BenchResult res = new BenchResult(bench.name, nsPerOp, totalOps);
+            results.add(res);
+            return res;
+        } finally {
+            bench.teardown();
+        }
+    }
+
+    /**
+     * Calls run until the iteration time is up, and returns how many times it was called.
+     */
+    private long iteration(Benchmark bench) throws Exception {
+        long deadline = System.nanoTime() + iterationNanos;
+        long runs = 0;
+        do {
+            sink += bench.run();
+            runs++;
+        } while (System.nanoTime() < deadline);
+        return runs;
+    }
+
+    /**
+     * Writes the results as JSON.
+     */
+    public void writeJSON(Writer w) throws IOException {
+        w.write("{\n");
+        w.write("  \"java.version\": " + jsonString(System.getProperty("java.version")) + ",\n");
+        w.write("  \"os.arch\": " + jsonString(System.getProperty("os.arch")) + ",\n");
+        w.write("  \"timestamp\": " + System.currentTimeMillis() + ",\n");
+        w.write("  \"warmupIterations\": " + warmupIterations + ",\n");
+        w.write("  \"measureIterations\": " + measureIterations + ",\n");
+        w.write("  \"iterationNanos\": " + iterationNanos + ",\n");
+        w.write("  \"results\": [");
+        boolean first = true;
+        for (BenchResult r : results) {
+            w.write(first ? "\n" : ",\n");
+            first = false;
+            w.write("    {\"name\": " + jsonString(r.name));
+            w.write(", \"operations\": " + r.operations);
+            w.write(", \"nsPerOp\": " + r.nsPerOpMean);
+            w.write(", \"nsPerOpMin\": " + r.nsPerOpMin);
+            w.write(", \"nsPerOpMax\": " + r.nsPerOpMax);
+            w.write(", \"nsPerOpStdDev\": " + r.nsPerOpStdDev + "}");
+        }
+        w.write("\n  ]\n}\n");
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+                sb.append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.bench;
+
+/**
+ * A single benchmark.
+ * run is called repeatedly; it should return something derived from its work so the JIT can't throw the work away.
+ * Created 18th October, 2026.
+ */
+public abstract class Benchmark {
+    public final String name;
+    /**
+     * How many operations one call to run counts as (i.e. frames decoded, vertices batched).
+     */
+    public final int opsPerRun;
+
+    public Benchmark(String name, int opsPerRun) {
+        this.name = name;
+        this.opsPerRun = opsPerRun;
+    }
+
+    /**
+     * Prepares inputs. Not timed.
+     */
+    public void setup() throws Exception {
+    }
+
+    /**
+     * Does the work being measured.
+     */
+    public abstract long run() throws Exception;
+
+    /**
+     * Cleans up after setup. Not timed.
+     */
+    public void teardown() throws Exception {
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+
+import gabien.natives.BadGPU;
+import gabien.natives.Loader;
+import gabien.vopeks.Vopeks;
+
+/**
+ * Benchmark entrypoint.
+ * Usage: [--quick] [--natives] [--filter TEXT] [--out FILE.json] [--ogg FILE] [--mp3 FILE]
+ * Created 18th October, 2026.
+ */
+public class Main {
+    public static void main(String[] args) throws Exception {
+        boolean quick = false;
+        boolean natives = false;
+        String filter = null;
+        File out = null;
+        File ogg = null;
+        File mp3 = null;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--quick")) {
+                quick = true;
+            } else if (a.equals("--natives")) {
+                natives = true;
+            } else if (a.equals("--filter")) {
+                filter = args[++i];
+            } else if (a.equals("--out")) {
+                out = new File(args[++i]);
+            } else if (a.equals("--ogg")) {
+                ogg = new File(args[++i]);
+                natives = true;
+            } else if (a.equals("--mp3")) {
+                mp3 = new File(args[++i]);
+                natives = true;
+            } else {
+                System.err.println("Unknown argument: " + a);
+                System.err.println("Usage: [--quick] [--natives] [--filter TEXT] [--out FILE.json] [--ogg FILE] [--mp3 FILE]");
+                System.exit(1);
+                return;
+            }
+        }
+        LinkedList<Benchmark> benchmarks = new LinkedList<>();
+        PureBenchmarks.add(benchmarks);
+        Vopeks vopeks = null;
+        if (natives) {
+            if (!Loader.defaultLoaderJavaSE())
+                throw new RuntimeException("Natives did not load");
+            vopeks = new Vopeks(BadGPU.NewInstanceFlags.ForceInternalRasterizer, null, false);
+            while (!vopeks.initComplete.get())
+                Thread.yield();
+            Throwable t = vopeks.initFailure.get();
+            if (t != null)
+                throw new RuntimeException("VOPEKS did not initialize", t);
+            NativeBenchmarks.add(benchmarks, vopeks, ogg, mp3);
+        }
+        BenchRunner runner = quick ? new BenchRunner(1, 3, 100000000L) : new BenchRunner(5, 10, 500000000L);
+        for (Benchmark b : benchmarks) {
+            if (filter != null && !b.name.contains(filter))
+                continue;
+            // progress goes to stderr, stdout is reserved for the JSON
+            System.err.println(runner.run(b));
+        }
+        if (vopeks != null)
+            vopeks.shutdown();
+        if (out != null) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8)) {
+                runner.writeJSON(w);
+            }
+        } else {
+            Writer w = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            runner.writeJSON(w);
+            w.flush();
+        }
+        // Keeps the sink alive.
+        if (runner.sink == 42)
+            System.err.println("(sink)");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.media.audio.AudioIOSource;
+import gabien.media.audio.fileio.MP3Source;
+import gabien.media.audio.fileio.OggVorbisSource;
+import gabien.natives.BadGPU;
+import gabien.render.IGrDriver;
+import gabien.vopeks.Vopeks;
+import gabien.vopeks.VopeksBatchingSurface;
+import gabien.vopeks.VopeksImage;
+
+/**
+ * Benchmarks that need the natives.
+ * VOPEKS runs on the internal rasterizer, so results don't depend on the GPU driver.
+ * Created 18th October, 2026.
+ */
+public final class NativeBenchmarks {
+    private NativeBenchmarks() {
+    }
+
+    public static void add(List<Benchmark> list, final Vopeks vopeks, @Nullable File ogg, @Nullable File mp3) {
+        // Ops are quads. Two textures in ABAB order, which is the worst case for batching.
+        final int quads = 2048;
+        addVopeks(list, vopeks, "VopeksBatchingSurface.staging", quads, false, false);
+        addVopeks(list, vopeks, "VopeksBatchingSurface.direct", quads, true, false);
+        addVopeks(list, vopeks, "VopeksBatchingSurface.staging.deferred", quads, false, true);
+        if (ogg != null)
+            addDecode(list, "OggVorbisSource.decode", ogg, false);
+        if (mp3 != null)
+            addDecode(list, "MP3Source.decode", mp3, true);
+    }
+
+    private static void addVopeks(List<Benchmark> list, final Vopeks vopeks, String name, final int quads, final boolean direct, final boolean deferred) {
+        list.add(new Benchmark(name, quads) {
+            VopeksBatchingSurface surface;
+            VopeksImage texA, texB;
+            final Semaphore done = new Semaphore(0);
+
+            @Override
+            public void setup() {
+                surface = new VopeksBatchingSurface(vopeks, name, 512, 512, null, 65536, direct);
+                surface.setDeferredBatching(deferred);
+                int[] pixels = new int[16 * 16];
+                for (int i = 0; i < pixels.length; i++)
+                    pixels[i] = 0xFF000000 | (i * 0x010203);
+                texA = new VopeksImage(vopeks, "A", 16, 16, BadGPU.TextureLoadFormat.ARGBI32_SA, pixels);
+                texB = new VopeksImage(vopeks, "B", 16, 16, BadGPU.TextureLoadFormat.ARGBI32_SA, pixels);
+            }
+
+            @Override
+            public long run() {
+                for (int i = 0; i < quads; i++) {
+                    float x = (i * 16) % 512;
+                    float y = ((i * 16) / 512) % 512;
+                    surface.rawBatchXYST(false, 0, 0, 512, 512, IGrDriver.BLEND_NORMAL, 0, (i & 1) == 0 ? texA : texB,
+                            x, y, 0, 0,
+                            x + 16, y, 16, 0,
+                            x + 16, y + 16, 16, 16,
+                            x, y + 16, 0, 16);
+                }
+                surface.batchFlush();
+                // Wait for VOPEKS to catch up, or the queue just fills up.
+                vopeks.putTask((instance) -> done.release());
+                done.acquireUninterruptibly();
+                return quads;
+            }
+
+            @Override
+            public void teardown() {
+                surface.shutdown();
+                texA.shutdown();
+                texB.shutdown();
+            }
+        });
+    }
+
+    private static void addDecode(List<Benchmark> list, String name, final File file, final boolean isMP3) {
+        // Ops are files; decoding the whole thing each time.
+        list.add(new Benchmark(name, 1) {
+            byte[] data;
+
+            @Override
+            public void setup() throws Exception {
+                data = Files.readAllBytes(file.toPath());
+            }
+
+            @Override
+            public long run() throws Exception {
+                ByteArrayInputStream bais = new ByteArrayInputStream(data);
+                AudioIOSource src = isMP3 ? MP3Source.fromInputStream(bais, true) : OggVorbisSource.fromInputStream(bais, true);
+                float[] res = src.readAllAsF32();
+                src.close();
+                return res.length;
+            }
+        });
+    }
+}
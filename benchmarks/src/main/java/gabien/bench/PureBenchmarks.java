@@ -0,0 +1,292 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.bench;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import datum.DatumReaderTokenSource;
+import gabien.atlas.AllAtlasStrategies;
+import gabien.atlas.IAtlasStrategy;
+import gabien.datum.DatumStruct;
+import gabien.datum.DatumStructField;
+import gabien.media.audio.PCMConversions;
+import gabien.media.midi.DefaultMIDIPalette;
+import gabien.media.midi.MIDISynthesizer;
+import gabien.render.IGrDriver;
+import gabien.text.RenderedTextChunk;
+import gabien.text.IFixedSizeFont;
+import gabien.text.TextTools;
+import gabien.uslx.append.Rect;
+import gabien.uslx.append.Size;
+
+/**
+ * Benchmarks that don't need the natives.
+ * Created 18th October, 2026.
+ */
+public final class PureBenchmarks {
+    private PureBenchmarks() {
+    }
+
+    public static void add(List<Benchmark> list) {
+        final int pcmLen = 65536;
+        list.add(new Benchmark("PCMConversions.pcmS16ToF64", pcmLen) {
+            short[] src = new short[pcmLen];
+            double[] dst = new double[pcmLen];
+
+            @Override
+            public void setup() {
+                Random r = new Random(1);
+                for (int i = 0; i < pcmLen; i++)
+                    src[i] = (short) r.nextInt();
+            }
+
+            @Override
+            public long run() {
+                PCMConversions.pcmS16ToF64(src, dst);
+                return (long) dst[pcmLen - 1];
+            }
+        });
+        list.add(new Benchmark("PCMConversions.pcmF64ToS16", pcmLen) {
+            double[] src = new double[pcmLen];
+            short[] dst = new short[pcmLen];
+
+            @Override
+            public void setup() {
+                Random r = new Random(1);
+                for (int i = 0; i < pcmLen; i++)
+                    src[i] = (r.nextDouble() * 2) - 1;
+            }
+
+            @Override
+            public long run() {
+                PCMConversions.pcmF64ToS16(src, dst);
+                return dst[pcmLen - 1];
+            }
+        });
+        list.add(new Benchmark("PCMConversions.pcmS32ToS16", pcmLen) {
+            int[] src = new int[pcmLen];
+            short[] dst = new short[pcmLen];
+
+            @Override
+            public void setup() {
+                Random r = new Random(1);
+                for (int i = 0; i < pcmLen; i++)
+                    src[i] = r.nextInt();
+            }
+
+            @Override
+            public long run() {
+                PCMConversions.pcmS32ToS16(src, dst);
+                return dst[pcmLen - 1];
+            }
+        });
+        // Ops are frames. A full chord on a few channels to give the synthesizer something to chew.
+        final int midiFrames = 4096;
+        list.add(new Benchmark("MIDISynthesizer.render", midiFrames) {
+            MIDISynthesizer synth;
+            float[] buffer = new float[midiFrames * 2];
+
+            @Override
+            public void setup() {
+                DefaultMIDIPalette.initialize();
+                synth = new MIDISynthesizer(44100, DefaultMIDIPalette.INSTANCE, 32);
+                for (int ch = 0; ch < 4; ch++) {
+                    synth.midiChannels[ch].program = ch * 8;
+                    for (int n = 0; n < 4; n++)
+                        synth.midiChannels[ch].noteOn(48 + (ch * 5) + (n * 4), 100);
+                }
+            }
+
+            @Override
+            public long run() {
+                synth.render(buffer, 0, midiFrames);
+                return (long) (buffer[0] * 1000);
+            }
+        });
+        // Ops are frames. Dense polyphony, grouped rendering across threads.
+        for (final int threads : new int[] {1, 4}) {
+            list.add(new Benchmark("MIDISynthesizer.render (" + threads + " threads)", midiFrames) {
+                MIDISynthesizer synth;
+                float[] buffer = new float[midiFrames * 2];
+
+                @Override
+                public void setup() {
+                    DefaultMIDIPalette.initialize();
+                    synth = new MIDISynthesizer(44100, DefaultMIDIPalette.INSTANCE, 32);
+                    synth.setRenderThreads(threads);
+                    for (int ch = 0; ch < 16; ch++) {
+                        synth.midiChannels[ch].program = ch * 8;
+                        for (int n = 0; n < 8; n++)
+                            synth.midiChannels[ch].noteOn(36 + (ch * 3) + (n * 5), 100);
+                    }
+                }
+
+                @Override
+                public long run() {
+                    synth.render(buffer, 0, midiFrames);
+                    return (long) (buffer[0] * 1000);
+                }
+
+                @Override
+                public void teardown() {
+                    synth.close();
+                }
+            });
+        }
+        // Ops are placements.
+        for (final IAtlasStrategy strategy : AllAtlasStrategies.strategies) {
+            final int placements = 512;
+            list.add(new Benchmark("IAtlasStrategy." + strategy.getClass().getSimpleName(), placements) {
+                Size[] sizes = new Size[placements];
+                Size page = new Size(2048, 2048);
+
+                @Override
+                public void setup() {
+                    Random r = new Random(1);
+                    for (int i = 0; i < placements; i++)
+                        sizes[i] = new Size(8 + r.nextInt(56), 8 + r.nextInt(56));
+                    if (strategy.getSortingAlgorithm() != null)
+                        java.util.Arrays.sort(sizes, strategy.getSortingAlgorithm());
+                }
+
+                @Override
+                public long run() {
+                    IAtlasStrategy.Instance instance = strategy.instance(page);
+                    long placed = 0;
+                    for (Size s : sizes) {
+                        Rect rc = instance.add(s);
+                        if (rc != null)
+                            placed += rc.x;
+                    }
+                    return placed;
+                }
+            });
+        }
+        // Ops are characters of input.
+        final String text = buildText();
+        list.add(new Benchmark("TextTools.formatTextFor", text.length()) {
+            final IFixedSizeFont font = new MonospaceFont();
+
+            @Override
+            public long run() {
+                return TextTools.formatTextFor(text, font, 320).length();
+            }
+        });
+        // Ops are documents.
+        final String document = buildDatumDocument();
+        list.add(new Benchmark("DatumStruct.decode", 1) {
+            @Override
+            public long run() {
+                SampleStruct ss = new SampleStruct();
+                new DatumReaderTokenSource("bench", new StringReader(document)).visit(ss.newVisitor(null));
+                return ss.count + ss.entries.length;
+            }
+        });
+    }
+
+    private static String buildText() {
+        StringBuilder sb = new StringBuilder();
+        Random r = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            int len = 1 + r.nextInt(10);
+            for (int j = 0; j < len; j++)
+                sb.append((char) ('a' + r.nextInt(26)));
+            sb.append(r.nextInt(20) == 0 ? '\n' : ' ');
+        }
+        return sb.toString();
+    }
+
+    private static String buildDatumDocument() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("name \"benchmark\"\n");
+        sb.append("count 12345\n");
+        sb.append("scale 1.5\n");
+        sb.append("entries (");
+        for (int i = 0; i < 1000; i++)
+            sb.append(" " + (i * 0.25));
+        sb.append(")\n");
+        return sb.toString();
+    }
+
+    public static final class SampleStruct extends DatumStruct<Object> {
+        @DatumStructField("name")
+        public String name = "";
+        @DatumStructField("count")
+        public long count;
+        @DatumStructField("scale")
+        public double scale;
+        @DatumStructField("entries")
+        public Double[] entries = new Double[0];
+    }
+
+    /**
+     * Fake font, so that text layout can be measured without a backend.
+     */
+    private static final class MonospaceFont implements IFixedSizeFont {
+        @Override
+        public int getLineHeight() {
+            return 10;
+        }
+
+        @Override
+        public int getContentHeight() {
+            return 8;
+        }
+
+        @Override
+        public int measureLine(String text, boolean withLastAdvance) {
+            return text.length() * 8;
+        }
+
+        @Override
+        public int measureLine(char[] text, int index, int length, boolean withLastAdvance) {
+            return length * 8;
+        }
+
+        @Override
+        public RenderedTextChunk renderLine(String text, int r, int g, int b, int a) {
+            return new BlankChunk(text.length() * 8);
+        }
+
+        @Override
+        public RenderedTextChunk renderLine(char[] text, int index, int length, int r, int g, int b, int a) {
+            return new BlankChunk(length * 8);
+        }
+    }
+
+    /**
+     * What MonospaceFont renders: it takes up the right amount of space, but draws nothing.
+     */
+    private static final class BlankChunk extends RenderedTextChunk {
+        private final int width;
+
+        BlankChunk(int width) {
+            super(10, 8, 0);
+            this.width = width;
+        }
+
+        @Override
+        public int cursorX(int cursorXIn) {
+            return cursorXIn + width;
+        }
+
+        @Override
+        public int cursorY(int cursorYIn, int highestLineHeightIn) {
+            return cursorYIn;
+        }
+
+        @Override
+        public void renderTo(IGrDriver igd, int x, int y, int cursorXIn, int cursorYIn, int highestLineHeightIn, int r, int g, int b, int a) {
+        }
+
+        @Override
+        public void backgroundTo(IGrDriver igd, int x, int y, int cursorXIn, int cursorYIn, int highestLineHeightIn, int r, int g, int b, int a) {
+        }
+    }
+}
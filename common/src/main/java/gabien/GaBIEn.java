@@ -103,6 +103,8 @@ public final class GaBIEn {
     private static LinkedList<Runnable> callbacksToAddAfterCallbacksQueue = new LinkedList<Runnable>();
     private static NativeFontCache nativeFontCache;
     private static ImageCache imageCache;
+    private static long imageCacheWSIBudget = ImageCache.DEFAULT_WSI_BUDGET;
+    private static long imageCacheTextureBudget = ImageCache.DEFAULT_TEXTURE_BUDGET;
 
     /**
      * Additional resource load locations.
@@ -317,11 +319,20 @@ public final class GaBIEn {
      * This variant has a debug ID.
      */
     public static @NonNull IGrDriver makeOffscreenBuffer(int width, int height, @Nullable String id) {
+        return makeOffscreenBuffer(width, height, id, false);
+    }
+
+    /**
+     * Creates an offscreen RGBA buffer.
+     * This variant has a debug ID, and can opt in to direct vertices.
+     * With direct vertices, vertices are written straight into off-heap slabs which the natives read in-place (see VopeksBatchingSurface).
+     */
+    public static @NonNull IGrDriver makeOffscreenBuffer(int width, int height, @Nullable String id, boolean directVertices) {
         if (width <= 0)
             return new NullGrDriver();
         if (height <= 0)
             return new NullGrDriver();
-        return new VopeksBatchingSurface(GaBIEn.vopeks, id, width, height, null, 65536);
+        return new VopeksBatchingSurface(GaBIEn.vopeks, id, width, height, null, 65536, directVertices);
     }
 
     /**
@@ -336,11 +347,19 @@ public final class GaBIEn {
      * This variant has a debug ID.
      */
     public static @NonNull IGrDriver makeAtlasPage(int width, int height, @Nullable String id) {
+        return makeAtlasPage(width, height, id, null);
+    }
+
+    /**
+     * Creates an offscreen RGBA buffer, initialized with 0xAARRGGBB pixels (if given).
+     * This variant has a debug ID.
+     */
+    public static @NonNull IGrDriver makeAtlasPage(int width, int height, @Nullable String id, @Nullable int[] init) {
         if (width <= 0)
             return new NullGrDriver();
         if (height <= 0)
             return new NullGrDriver();
-        return new VopeksUnbatchingSurface(GaBIEn.vopeks, id, width, height, null);
+        return new VopeksUnbatchingSurface(GaBIEn.vopeks, id, width, height, init);
     }
 
     /**
@@ -385,6 +404,90 @@ public final class GaBIEn {
         return err;
     }
 
+    /**
+     * Like getImageEx, but the image is decoded (and uploaded) on the image decode pool.
+     * Completes with the error image if it couldn't be found. Also works for prefetching, as the result goes into the image cache.
+     */
+    public static @NonNull AsyncResult<IImage> getImageExAsync(@NonNull String a, boolean fs, boolean res) {
+        return getImageAsyncChain(a, fs, res, false, 0, 0, 0);
+    }
+
+    /**
+     * getImageExAsync with colour-key processing.
+     */
+    public static @NonNull AsyncResult<IImage> getImageCKExAsync(@NonNull String a, boolean fs, boolean res, int r, int g, int b) {
+        return getImageAsyncChain(a, fs, res, true, r, g, b);
+    }
+
+    /**
+     * Gets an image if it's already loaded, otherwise starts loading it (see getImageExAsync) and returns the placeholder.
+     * Meant to be called every frame until the real image turns up.
+     */
+    public static @NonNull IImage getImageExOrPlaceholder(@NonNull String a, boolean fs, boolean res, @NonNull IImage placeholder) {
+        return getNowOr(getImageExAsync(a, fs, res), placeholder);
+    }
+
+    /**
+     * getImageExOrPlaceholder with colour-key processing.
+     */
+    public static @NonNull IImage getImageCKExOrPlaceholder(@NonNull String a, boolean fs, boolean res, int r, int g, int b, @NonNull IImage placeholder) {
+        return getNowOr(getImageCKExAsync(a, fs, res, r, g, b), placeholder);
+    }
+
+    private static IImage getNowOr(AsyncResult<IImage> ar, IImage placeholder) {
+        if (!ar.isDone())
+            return placeholder;
+        try {
+            return ar.get();
+        } catch (Exception ex) {
+            return getErrorImage();
+        }
+    }
+
+    /**
+     * Tries the same locations as getImageEx in the same order, moving on to the next once a load completes with the error image.
+     */
+    private static AsyncResult<IImage> getImageAsyncChain(String a, boolean fs, boolean res, boolean ck, int r, int g, int b) {
+        LinkedList<String> paths = new LinkedList<>();
+        LinkedList<Boolean> isRes = new LinkedList<>();
+        if (fs) {
+            paths.add(a);
+            isRes.add(false);
+        }
+        if (res) {
+            for (String s : appPrefixes) {
+                paths.add(s + a);
+                isRes.add(false);
+            }
+            paths.add(a);
+            isRes.add(true);
+        }
+        AsyncResult<IImage> result = new AsyncResult<>();
+        getImageAsyncStep(result, paths, isRes, ck, r, g, b, a + " (" + fs + ", " + res + ")");
+        return result;
+    }
+
+    private static void getImageAsyncStep(AsyncResult<IImage> result, LinkedList<String> paths, LinkedList<Boolean> isRes, boolean ck, int r, int g, int b, String desc) {
+        IImage err = getErrorImage();
+        if (paths.isEmpty()) {
+            System.err.println("GaBIEn: Couldn't get: " + desc);
+            result.complete(err);
+            return;
+        }
+        String path = paths.removeFirst();
+        boolean pathRes = isRes.removeFirst();
+        AsyncResult<IImage> step = ck ? imageCache.getImageCKAsync(path, pathRes, r, g, b) : imageCache.getImageAsync(path, pathRes);
+        step.whenDone((img, ex) -> {
+            if (ex != null) {
+                ex.printStackTrace();
+            } else if (img != err) {
+                result.complete(img);
+                return;
+            }
+            getImageAsyncStep(result, paths, isRes, ck, r, g, b, desc);
+        });
+    }
+
     /**
      * Gets an image as a WSIImage.
      * You can specify if the image can be gotten from the filesystem directly or the resources.
@@ -440,22 +543,18 @@ public final class GaBIEn {
      * Colour-keys a WSIImage and puts onto the GPU.
      */
     public static IImage wsiToCK(@Nullable String name, @NonNull WSIImage img, int tr, int tg, int tb) {
-        // do the conversion on the VOPEKS thread
+        // Convert on the calling thread (which may be an image decode pool thread), not the VOPEKS thread, so drawing isn't held up.
         int colourKey = tb | (tg << 8) | (tr << 16);
-        return new VopeksImage(GaBIEn.vopeks, name, img.width, img.height, (consumer) -> {
-            GaBIEn.vopeks.putTask((instance) -> {
-                int[] data = img.getPixels();
-                for (int i = 0; i < data.length; i++) {
-                    int c = data[i];
-                    if ((c & 0xFFFFFF) != colourKey) {
-                        data[i] = c | 0xFF000000;
-                    } else {
-                        data[i] = 0;
-                    }
-                }
-                consumer.accept(instance.newTexture(img.width, img.height, BadGPU.TextureLoadFormat.ARGBI32_SA, data, 0));
-            });
-        });
+        int[] data = img.getPixels();
+        for (int i = 0; i < data.length; i++) {
+            int c = data[i];
+            if ((c & 0xFFFFFF) != colourKey) {
+                data[i] = c | 0xFF000000;
+            } else {
+                data[i] = 0;
+            }
+        }
+        return createImage(name, data, img.width, img.height);
     }
 
     /**
@@ -509,6 +608,26 @@ public final class GaBIEn {
         imageCache.hintFlushAllTheCaches();
     }
 
+    /**
+     * Sets the image cache budgets in bytes, for decoded images and uploaded images respectively.
+     * Images cost width * height * 4 bytes.
+     * Can be called before startup; the budgets are applied when the cache is created.
+     */
+    public static void setImageCacheBudgets(long wsiBytes, long textureBytes) {
+        imageCacheWSIBudget = wsiBytes;
+        imageCacheTextureBudget = textureBytes;
+        ImageCache ic = imageCache;
+        if (ic != null)
+            ic.setBudgets(wsiBytes, textureBytes);
+    }
+
+    /**
+     * Gets the image cache (for statistics).
+     */
+    public static @NonNull ImageCache getImageCache() {
+        return imageCache;
+    }
+
     /**
      * Gets the name of the default native font.
      */
@@ -845,6 +964,7 @@ public final class GaBIEn {
         // Notably, because these use engine permission keys, they MUST be refreshed.
         nativeFontCache = new NativeFontCache(internal);
         imageCache = new ImageCache(internal);
+        imageCache.setBudgets(imageCacheWSIBudget, imageCacheTextureBudget);
         // These will hold references to dead assets if not reinitialized.
         engineFonts = new EngineFonts(internal);
     }
@@ -13,6 +13,8 @@ package gabien.atlas;
 public final class AllAtlasStrategies {
     public static final IAtlasStrategy[] strategies = {
         BinaryTreeAtlasStrategy.INSTANCE,
+        MaxRectsAtlasStrategy.INSTANCE,
+        SkylineAtlasStrategy.INSTANCE,
         ExtremelyBadAtlasStrategy.INSTANCE
     };
 
@@ -16,6 +16,18 @@ import gabien.render.IGrDriver;
 public final class AtlasSet {
     public final LinkedList<IGrDriver> pages = new LinkedList<>();
 
+    /**
+     * Total area of the placed entries and of the pages, in pixels.
+     */
+    public long usedArea, pageArea;
+
+    /**
+     * Fraction of page area actually used by entries. Useful for comparing strategies.
+     */
+    public double getPackingEfficiency() {
+        return pageArea == 0 ? 1 : usedArea / (double) pageArea;
+    }
+
     public void shutdown() {
         for (IGrDriver ap : pages)
             ap.shutdown();
@@ -31,6 +31,11 @@ public final class BinaryTreeAtlasStrategy implements IAtlasStrategy {
             public Rect add(@NonNull Size size) {
                 return root.place(size);
             }
+
+            @Override
+            public boolean remove(@NonNull Rect placement) {
+                return root.free(placement.x, placement.y);
+            }
         };
     }
 
@@ -127,6 +132,31 @@ public final class BinaryTreeAtlasStrategy implements IAtlasStrategy {
             }
             return null;
         }
+        boolean free(int x, int y) {
+            if (mode == Occupancy.FULL) {
+                if (location.x != x || location.y != y)
+                    return false;
+                mode = Occupancy.NONE;
+                return true;
+            }
+            if (mode == Occupancy.SPLIT) {
+                TreeNode a = this.a;
+                TreeNode b = this.b;
+                assert a != null;
+                assert b != null;
+                boolean res = a.location.contains(x, y) ? a.free(x, y) : b.free(x, y);
+                if (res && a.mode == Occupancy.NONE && b.mode == Occupancy.NONE) {
+                    // merge back together, same as the unsplit in place
+                    mode = Occupancy.NONE;
+                    a.modWeight(-a.weight);
+                    b.modWeight(-b.weight);
+                    this.a = null;
+                    this.b = null;
+                }
+                return res;
+            }
+            return false;
+        }
     }
     private enum Occupancy {
         NONE, FULL, SPLIT
@@ -0,0 +1,308 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.atlas;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.GaBIEn;
+import gabien.render.IGrDriver;
+import gabien.render.IImage;
+import gabien.render.IImgRegion;
+import gabien.render.ITexRegion;
+import gabien.uslx.append.Rect;
+import gabien.uslx.append.Size;
+
+/**
+ * Atlas that regions can be added to and removed from at any time, unlike SimpleAtlasBuilder.
+ * Pages start small and are grown (by doubling, up to the maximum page size) before new pages are made.
+ * Growing or defragmenting a page repacks it: everything is copied to a new page and the old one is shut down.
+ * The Regions handed out stay valid through all of that, since they always point at wherever their contents currently are.
+ * Not thread-safe; use it from the thread that draws.
+ * Created 18th October, 2026.
+ */
+public final class DynamicAtlas {
+    private final IAtlasStrategy strategy;
+    private final int initialPageSize, maxPageSize;
+    private final LinkedList<Page> pages = new LinkedList<>();
+    private final @Nullable String debugId;
+    private int repackCount;
+
+    /**
+     * @param initialPageSize Width and height of new pages.
+     * @param maxPageSize Pages are grown up to this width and height.
+     */
+    public DynamicAtlas(int initialPageSize, int maxPageSize, IAtlasStrategy strategy, @Nullable String debugId) {
+        if (initialPageSize <= 0 || maxPageSize < initialPageSize)
+            throw new IllegalArgumentException("Bad page sizes " + initialPageSize + ", " + maxPageSize);
+        this.initialPageSize = initialPageSize;
+        this.maxPageSize = maxPageSize;
+        this.strategy = strategy;
+        this.debugId = debugId;
+    }
+
+    /**
+     * Adds a region, drawing the given drawable into it.
+     * Anything larger than the maximum page size gets a page of its own.
+     */
+    public Region add(AtlasDrawable src) {
+        Region r = new Region(src.width, src.height);
+        Size sz = new Size(src.width, src.height);
+        // existing pages, as-is
+        for (Page p : pages) {
+            Rect rect = p.instance.add(sz);
+            if (rect != null) {
+                p.place(r, rect, src);
+                return r;
+            }
+        }
+        // existing pages, grown
+        for (Page p : pages) {
+            int size = p.size;
+            while (size < maxPageSize) {
+                size = Math.min(size * 2, maxPageSize);
+                if (p.repack(size, r, src))
+                    return r;
+            }
+        }
+        // a new page
+        int size = initialPageSize;
+        while (size < maxPageSize && (size < src.width || size < src.height))
+            size = Math.min(size * 2, maxPageSize);
+        Page p;
+        if (size < src.width || size < src.height) {
+            // oversized, so it gets a page to itself
+            p = new Page(Math.max(src.width, src.height));
+        } else {
+            p = new Page(size);
+        }
+        pages.add(p);
+        Rect rect = p.instance.add(sz);
+        if (rect == null) {
+            // the strategy can't even place one thing on an empty page (shouldn't happen)
+            rect = new Rect(sz);
+        }
+        p.place(r, rect, src);
+        return r;
+    }
+
+    /**
+     * Removes a region. Its space is reused by later adds (if the strategy supports that) or reclaimed by defragment.
+     * Drawing the region after this draws whatever replaces it, so don't.
+     */
+    public void remove(Region r) {
+        Page p = r.page;
+        if (p == null)
+            return;
+        r.page = null;
+        p.regions.remove(r);
+        Rect rect = r.placement;
+        if (!p.instance.remove(rect))
+            p.wastedArea += rect.area();
+        if (p.regions.isEmpty()) {
+            pages.remove(p);
+            p.surface.shutdown();
+        }
+    }
+
+    /**
+     * Repacks pages where removals left space the strategy couldn't reuse.
+     * If there's nothing to reclaim, does nothing; returns the amount of pages that were repacked.
+     */
+    public int defragment() {
+        int count = 0;
+        for (Page p : pages) {
+            if (p.wastedArea > 0) {
+                if (p.repack(p.size, null, null))
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Amount of pages, and so textures, in use.
+     */
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Amount of times a page has been repacked (grown or defragmented).
+     */
+    public int getRepackCount() {
+        return repackCount;
+    }
+
+    /**
+     * Shuts down all pages. Regions are all invalid after this.
+     */
+    public void shutdown() {
+        for (Page p : pages) {
+            for (Region r : p.regions)
+                r.page = null;
+            p.surface.shutdown();
+        }
+        pages.clear();
+    }
+
+    private final class Page {
+        int size;
+        IGrDriver surface;
+        IAtlasStrategy.Instance instance;
+        final LinkedList<Region> regions = new LinkedList<>();
+        int wastedArea;
+
+        Page(int size) {
+            this.size = size;
+            surface = GaBIEn.makeAtlasPage(size, size, debugId);
+            instance = strategy.instance(new Size(size, size));
+        }
+
+        /**
+         * Draws a drawable into a placement and points the region at it.
+         */
+        void place(Region r, Rect rect, AtlasDrawable src) {
+            // space may be reused, so clear out whatever was there
+            surface.drawScaledColoured(0, 0, 0, 0, rect.x, rect.y, rect.width, rect.height, null, IGrDriver.BLEND_NONE, 0, 0, 0, 0, 0);
+            src.drawTo(surface, rect.x, rect.y);
+            r.page = this;
+            r.placement = rect;
+            r.current = surface.subRegion(rect.x, rect.y, rect.width, rect.height);
+            regions.add(r);
+        }
+
+        /**
+         * Repacks this page into a new page of the given size, adding another region while at it if one is given.
+         * Returns false (changing nothing) if it all wouldn't fit.
+         */
+        boolean repack(int newSize, @Nullable Region extra, @Nullable AtlasDrawable extraSrc) {
+            Region[] all = regions.toArray(new Region[regions.size() + (extra != null ? 1 : 0)]);
+            if (extra != null)
+                all[all.length - 1] = extra;
+            final Comparator<Size> sizeSorter = strategy.getSortingAlgorithm();
+            if (sizeSorter != null)
+                Arrays.sort(all, (a, b) -> sizeSorter.compare(a.size, b.size));
+            IAtlasStrategy.Instance newInstance = strategy.instance(new Size(newSize, newSize));
+            Rect[] rects = new Rect[all.length];
+            for (int i = 0; i < all.length; i++) {
+                Rect rect = newInstance.add(all[i].size);
+                if (rect == null)
+                    return false;
+                rects[i] = rect;
+            }
+            // it fits, commit
+            IGrDriver oldSurface = surface;
+            IGrDriver newSurface = GaBIEn.makeAtlasPage(newSize, newSize, debugId);
+            for (int i = 0; i < all.length; i++) {
+                Region r = all[i];
+                Rect rect = rects[i];
+                if (r == extra) {
+                    assert extraSrc != null;
+                    extraSrc.drawTo(newSurface, rect.x, rect.y);
+                } else {
+                    Rect old = r.placement;
+                    newSurface.blitImage(old.x, old.y, old.width, old.height, rect.x, rect.y, oldSurface, IGrDriver.BLEND_NONE, 0);
+                }
+                r.page = this;
+                r.placement = rect;
+                r.current = newSurface.subRegion(rect.x, rect.y, rect.width, rect.height);
+            }
+            if (extra != null)
+                regions.add(extra);
+            // the copies must be queued before the old page goes away
+            newSurface.batchFlush();
+            oldSurface.shutdown();
+            size = newSize;
+            surface = newSurface;
+            instance = newInstance;
+            wastedArea = 0;
+            repackCount++;
+            return true;
+        }
+    }
+
+    /**
+     * A region in the atlas. This stays valid (until removed) even as its contents are moved between pages.
+     */
+    public final class Region implements ITexRegion {
+        public final int width, height;
+        final Size size;
+        @Nullable Page page;
+        Rect placement = Rect.ZERO;
+        IImgRegion current;
+
+        private Region(int w, int h) {
+            width = w;
+            height = h;
+            size = new Size(w, h);
+            current = GaBIEn.getErrorImage();
+        }
+
+        @Override
+        public float getRegionWidth() {
+            return width;
+        }
+
+        @Override
+        public float getRegionHeight() {
+            return height;
+        }
+
+        @Override
+        public IImgRegion pickImgRegion(@Nullable IImage lastSurface) {
+            return current;
+        }
+
+        @Override
+        @NonNull
+        public ITexRegion subRegion(float x, float y, float w, float h) {
+            return new SubRegion(this, x, y, w, h);
+        }
+    }
+
+    /**
+     * Subregion of a Region, which follows it around.
+     */
+    private static final class SubRegion implements ITexRegion {
+        final Region base;
+        final float x, y, w, h;
+
+        SubRegion(Region base, float x, float y, float w, float h) {
+            this.base = base;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        public float getRegionWidth() {
+            return w;
+        }
+
+        @Override
+        public float getRegionHeight() {
+            return h;
+        }
+
+        @Override
+        public IImgRegion pickImgRegion(@Nullable IImage lastSurface) {
+            return base.current.subRegion(x, y, w, h);
+        }
+
+        @Override
+        @NonNull
+        public ITexRegion subRegion(float x, float y, float w, float h) {
+            return new SubRegion(base, this.x + x, this.y + y, w, h);
+        }
+    }
+}
@@ -52,5 +52,13 @@ public interface IAtlasStrategy {
          * @return Placement or null on failure.
          */
         @Nullable Rect add(Size size);
+
+        /**
+         * Frees a placement previously returned by add, so the space can be reused.
+         * Returns false if this strategy can't free space (DynamicAtlas then reclaims it on defragmentation).
+         */
+        default boolean remove(Rect placement) {
+            return false;
+        }
     }
 }
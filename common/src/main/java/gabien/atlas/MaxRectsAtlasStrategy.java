@@ -0,0 +1,131 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.atlas;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.uslx.append.Rect;
+import gabien.uslx.append.Size;
+
+/**
+ * MaxRects atlasing strategy (best short side fit).
+ * Keeps a list of maximal free rectangles (which may overlap each other) and puts each placement where it leaves the least spare on its tighter side.
+ * Packs tighter than BinaryTreeAtlasStrategy, at the cost of the free list growing with the amount of placements.
+ * Created 18th October, 2026.
+ */
+public final class MaxRectsAtlasStrategy implements IAtlasStrategy {
+    public final static MaxRectsAtlasStrategy INSTANCE = new MaxRectsAtlasStrategy();
+
+    private MaxRectsAtlasStrategy() {
+    }
+
+    @Override
+    @NonNull
+    public Instance instance(@NonNull Size atlasSize) {
+        ArrayList<Rect> free = new ArrayList<>();
+        free.add(new Rect(atlasSize));
+        return new Instance() {
+            @Override
+            @Nullable
+            public Rect add(@NonNull Size size) {
+                Rect best = null;
+                int bestShort = Integer.MAX_VALUE;
+                int bestLong = Integer.MAX_VALUE;
+                for (Rect f : free) {
+                    if (size.width > f.width || size.height > f.height)
+                        continue;
+                    int spareW = f.width - size.width;
+                    int spareH = f.height - size.height;
+                    int shortSide = Math.min(spareW, spareH);
+                    int longSide = Math.max(spareW, spareH);
+                    if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+                        best = f;
+                        bestShort = shortSide;
+                        bestLong = longSide;
+                    }
+                }
+                if (best == null)
+                    return null;
+                Rect placed = new Rect(best.x, best.y, size.width, size.height);
+                if (placed.width > 0 && placed.height > 0)
+                    split(placed);
+                return placed;
+            }
+
+            @Override
+            public boolean remove(@NonNull Rect placement) {
+                if (placement.width <= 0 || placement.height <= 0)
+                    return true;
+                for (Rect f : free)
+                    if (containsRect(f, placement))
+                        return true;
+                // not merged with its neighbours, but still usable
+                free.add(placement);
+                prune();
+                return true;
+            }
+
+            /**
+             * Cuts the placement out of every free rectangle it overlaps.
+             */
+            private void split(Rect placed) {
+                ArrayList<Rect> next = new ArrayList<>(free.size() + 4);
+                for (Rect f : free) {
+                    if (!f.intersects(placed)) {
+                        next.add(f);
+                        continue;
+                    }
+                    if (placed.x > f.x)
+                        next.add(new Rect(f.x, f.y, placed.x - f.x, f.height));
+                    if (placed.right < f.right)
+                        next.add(new Rect(placed.right, f.y, f.right - placed.right, f.height));
+                    if (placed.y > f.y)
+                        next.add(new Rect(f.x, f.y, f.width, placed.y - f.y));
+                    if (placed.bottom < f.bottom)
+                        next.add(new Rect(f.x, placed.bottom, f.width, f.bottom - placed.bottom));
+                }
+                free.clear();
+                free.addAll(next);
+                prune();
+            }
+
+            /**
+             * Removes free rectangles that are inside other free rectangles.
+             */
+            private void prune() {
+                for (int i = 0; i < free.size(); i++) {
+                    Rect a = free.get(i);
+                    for (int j = i + 1; j < free.size(); j++) {
+                        Rect b = free.get(j);
+                        if (containsRect(a, b)) {
+                            free.remove(j);
+                            j--;
+                        } else if (containsRect(b, a)) {
+                            free.remove(i);
+                            i--;
+                            break;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private static boolean containsRect(Rect outer, Rect inner) {
+        return inner.x >= outer.x && inner.y >= outer.y && inner.right <= outer.right && inner.bottom <= outer.bottom;
+    }
+
+    @Override
+    @Nullable
+    public Comparator<Size> getSortingAlgorithm() {
+        return SORT_HEIGHT_THEN_WIDTH;
+    }
+}
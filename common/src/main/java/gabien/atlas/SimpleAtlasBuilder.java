@@ -6,22 +6,48 @@
  */
 package gabien.atlas;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
 
 import gabien.GaBIEn;
 import gabien.render.IGrDriver;
 import gabien.render.ITexRegion;
 import gabien.uslx.append.Rect;
 import gabien.uslx.append.Size;
+import gabien.uslx.vfs.FSBackend;
 
 /**
- * 
+ * Builds a set of atlas pages from a batch of entries.
+ * Pages are filled one at a time with a single pass over the (sorted) remaining entries, so each page costs one add per remaining entry.
+ * Anything that ends up alone on a page gets a page sized just for it.
+ * compileCached saves the finished pages and layout to a file, so later runs can skip laying out and drawing entirely.
  * Created 18th July, 2023.
  */
 public final class SimpleAtlasBuilder {
+    private static final Rect[] DEDICATED = new Rect[0];
+    // "GAT1"
+    private static final int CACHE_MAGIC = 0x47415431;
+    private static final long MAX_CACHED_PAGE_PIXELS = 0x4000000;
+
     private LinkedList<Entry> entries = new LinkedList<>();
     private final Size pageSize;
     private final IAtlasStrategy pageStrategy;
@@ -32,119 +58,351 @@ public final class SimpleAtlasBuilder {
     }
 
     public void add(Consumer<ITexRegion> result, AtlasDrawable src) {
-        entries.add(new Entry(result, src));
+        entries.add(new Entry(result, src, null));
+    }
+
+    /**
+     * Adds an entry with a content key, which must change whenever what the drawable draws changes (e.g. a hash of the source file).
+     * compileCached only uses the cache if every entry has one.
+     */
+    public void add(Consumer<ITexRegion> result, AtlasDrawable src, String contentKey) {
+        entries.add(new Entry(result, src, contentKey));
     }
 
     public AtlasSet compile() {
-        // Entries are nulled as completed
+        return compile(1);
+    }
+
+    /**
+     * compileCached with a cache file in GaBIEn.mutableDataFS.
+     */
+    public AtlasSet compileCached(String cacheName, int threads) {
+        return compileCached(GaBIEn.mutableDataFS.intoPath(cacheName), threads);
+    }
+
+    /**
+     * Like compile, but tries to load the result from a cache file first, and writes it there otherwise.
+     * The cache is keyed by a hash of the entries' content keys and sizes, the page size and the strategy, so a stale cache is simply rebuilt.
+     * Loading uploads the saved pages directly; no drawables are drawn.
+     */
+    public AtlasSet compileCached(FSBackend cacheFile, int threads) {
+        byte[] hash = calcCacheHash();
+        if (hash == null)
+            return compile(threads);
+        Entry[] inAddOrder = entries.toArray(new Entry[0]);
+        try (InputStream inp = cacheFile.openRead()) {
+            AtlasSet res = readCache(new DataInputStream(new InflaterInputStream(new BufferedInputStream(inp))), hash, inAddOrder);
+            if (res != null)
+                return res;
+        } catch (Exception ex) {
+            // missing or damaged; rebuild it
+        }
+        LinkedList<PageLayout> layouts = compileLayouts(threads);
+        AtlasSet res = new AtlasSet();
+        for (PageLayout pl : layouts)
+            drawPage(res, pl);
+        try (OutputStream os = cacheFile.openWrite()) {
+            DeflaterOutputStream dos = new DeflaterOutputStream(new BufferedOutputStream(os));
+            writeCache(new DataOutputStream(dos), hash, inAddOrder, layouts, res);
+            dos.finish();
+            dos.flush();
+        } catch (Exception ex) {
+            System.err.println("SimpleAtlasBuilder: Couldn't write atlas cache " + cacheFile);
+            ex.printStackTrace();
+            cacheFile.delete();
+        }
+        return res;
+    }
+
+    /**
+     * Compiles the atlas, laying out pages on the given amount of threads.
+     * With more than one thread, the entries are dealt out between the threads (which costs a little packing efficiency).
+     * Drawing the pages always happens on the calling thread.
+     */
+    public AtlasSet compile(int threads) {
+        AtlasSet res = new AtlasSet();
+        for (PageLayout pl : compileLayouts(threads))
+            drawPage(res, pl);
+        return res;
+    }
+
+    private LinkedList<PageLayout> compileLayouts(int threads) {
         Entry[] entriesArray = entries.toArray(new Entry[0]);
         final Comparator<Size> sizeSorter = pageStrategy.getSortingAlgorithm();
         if (sizeSorter != null)
             Arrays.sort(entriesArray, (a, b) -> sizeSorter.compare(a.sz, b.sz));
-        int amountInArray = entriesArray.length;
-        AtlasSet res = new AtlasSet();
-        while (amountInArray > 0) {
-            int change = compilePage(res, entriesArray);
-            if (change == 0) {
-                // couldn't put anything further into an atlas, give up...
-                for (int i = 0; i < entriesArray.length; i++) {
-                    Entry e = entriesArray[i];
-                    if (e == null)
-                        continue;
-                    IGrDriver ap = GaBIEn.makeAtlasPage(e.sz.width, e.sz.height);
-                    e.tex.drawTo(ap, 0, 0);
-                    e.key.accept(ap);
-                    res.pages.add(ap);
-                    entriesArray[i] = null;
-                    amountInArray--;
-                }
-            } else {
-                amountInArray -= change;
-            }
+        // don't bother with threads for tiny sets
+        threads = Math.max(1, Math.min(threads, entriesArray.length / 64));
+        LinkedList<PageLayout> layouts = new LinkedList<>();
+        if (threads == 1) {
+            layoutPages(entriesArray, layouts);
+        } else {
+            layoutPagesParallel(entriesArray, threads, layouts);
         }
-        return res;
+        return layouts;
     }
 
-    private int compilePage(AtlasSet res, Entry[] entriesArray) {
-        // figure out "seed" of the page
-        for (int i = 0; i < entriesArray.length; i++) {
-            Entry eI = entriesArray[i];
-            if (eI == null)
-                continue;
-            for (int j = i + 1; j < entriesArray.length; j++) {
-                Entry eJ = entriesArray[j];
-                if (eJ == null)
-                    continue;
-                // "page seed" : eI + eJ
-                IAtlasStrategy.Instance instance = pageStrategy.instance(pageSize);
-                Rect rcI = instance.add(eI.sz);
-                if (rcI == null)
-                    continue;
-                Rect rcJ = instance.add(eJ.sz);
-                if (rcJ == null)
-                    continue;
-                // after this point, it's confirmed!
-                entriesArray[i] = null;
-                entriesArray[j] = null;
-                Rect[] seedTest = {rcI, rcJ};
-                return compilePageWithSeed(res, entriesArray, seedTest, eI, eJ, instance);
+    private void layoutPagesParallel(Entry[] entriesArray, int threads, LinkedList<PageLayout> layouts) {
+        // deal out round-robin, so each group keeps the sorted order and gets a similar mix of sizes
+        final ArrayList<LinkedList<PageLayout>> results = new ArrayList<>(threads);
+        final Throwable[] failures = new Throwable[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Entry[] group = new Entry[(entriesArray.length - t + threads - 1) / threads];
+            for (int i = 0; i < group.length; i++)
+                group[i] = entriesArray[t + (i * threads)];
+            final LinkedList<PageLayout> result = new LinkedList<>();
+            results.add(result);
+            final int idx = t;
+            workers[t] = new Thread("SimpleAtlasBuilder " + t) {
+                @Override
+                public void run() {
+                    try {
+                        layoutPages(group, result);
+                    } catch (Throwable ex) {
+                        failures[idx] = ex;
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            try {
+                workers[t].join();
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
             }
+            if (failures[t] != null)
+                throw new RuntimeException(failures[t]);
+            layouts.addAll(results.get(t));
         }
-        return 0;
-    }
-
-    private int compilePageWithSeed(AtlasSet res, Entry[] entriesArray, Rect[] currentBest, Entry eI, Entry eJ, IAtlasStrategy.Instance instance) {
-        Entry[] currentBestContents = {eI, eJ};
-        while (true) {
-            Entry[] nextContents = new Entry[currentBest.length + 1];
-            Rect[] nextRects = new Rect[currentBest.length + 1];
-            System.arraycopy(currentBestContents, 0, nextContents, 0, currentBest.length);
-            System.arraycopy(currentBest, 0, nextRects, 0, currentBest.length);
-            int foundSomething = -1;
-            for (int i = 0; i < entriesArray.length; i++) {
-                Entry e = entriesArray[i];
-                if (e == null)
-                    continue;
-                // update the last entry
-                nextContents[nextContents.length - 1] = e;
-                // and recalculate
+    }
+
+    /**
+     * Lays out entries (already sorted) into pages.
+     */
+    private void layoutPages(Entry[] remaining, LinkedList<PageLayout> layouts) {
+        int count = remaining.length;
+        Entry[] next = new Entry[count];
+        while (count > 0) {
+            IAtlasStrategy.Instance instance = pageStrategy.instance(pageSize);
+            Entry[] pageEntries = new Entry[count];
+            Rect[] pageRects = new Rect[count];
+            int placed = 0;
+            int nextCount = 0;
+            for (int i = 0; i < count; i++) {
+                Entry e = remaining[i];
                 Rect rct = instance.add(e.sz);
                 if (rct != null) {
-                    // Successfully added another element.
-                    foundSomething = i;
-                    nextRects[nextRects.length - 1] = rct;
-                    break;
+                    pageEntries[placed] = e;
+                    pageRects[placed++] = rct;
+                } else {
+                    next[nextCount++] = e;
                 }
             }
-            if (foundSomething == -1)
-                break;
-            entriesArray[foundSomething] = null;
-            currentBestContents = nextContents;
-            currentBest = nextRects;
+            if (placed == 0) {
+                // nothing fits on an empty page, so these all get their own
+                for (int i = 0; i < nextCount; i++)
+                    layouts.add(new PageLayout(next[i].sz, new Entry[] {next[i]}, DEDICATED));
+                return;
+            } else if (placed == 1) {
+                // no point in a full-sized page for one entry
+                layouts.add(new PageLayout(pageEntries[0].sz, new Entry[] {pageEntries[0]}, DEDICATED));
+            } else {
+                Entry[] fe = new Entry[placed];
+                Rect[] fr = new Rect[placed];
+                System.arraycopy(pageEntries, 0, fe, 0, placed);
+                System.arraycopy(pageRects, 0, fr, 0, placed);
+                layouts.add(new PageLayout(pageSize, fe, fr));
+            }
+            Entry[] tmp = remaining;
+            remaining = next;
+            next = tmp;
+            count = nextCount;
         }
-        return finishCompilePage(res, currentBest, currentBestContents);
     }
 
-    private int finishCompilePage(AtlasSet res, Rect[] currentBest, Entry[] currentBestContents) {
-        IGrDriver ap = GaBIEn.makeAtlasPage(pageSize.width, pageSize.height);
-        for (int i = 0; i < currentBest.length; i++) {
-            Rect r = currentBest[i];
-            Entry e = currentBestContents[i];
-            e.tex.drawTo(ap, r.x, r.y);
-            e.key.accept(ap.subRegion(r.x, r.y, e.sz.width, e.sz.height));
+    private void drawPage(AtlasSet res, PageLayout pl) {
+        IGrDriver ap = GaBIEn.makeAtlasPage(pl.size.width, pl.size.height);
+        Rect[] rects = pl.rects;
+        if (rects == DEDICATED) {
+            // dedicated page
+            Entry e = pl.contents[0];
+            e.tex.drawTo(ap, 0, 0);
+            e.key.accept(ap);
+            res.usedArea += e.sz.area();
+        } else {
+            for (int i = 0; i < rects.length; i++) {
+                Rect r = rects[i];
+                Entry e = pl.contents[i];
+                e.tex.drawTo(ap, r.x, r.y);
+                e.key.accept(ap.subRegion(r.x, r.y, e.sz.width, e.sz.height));
+                res.usedArea += e.sz.area();
+            }
         }
+        res.pageArea += pl.size.area();
         res.pages.add(ap);
-        return currentBest.length;
+    }
+
+    // -- Cache --
+
+    /**
+     * Hashes everything that affects the result, or returns null if some entry has no content key.
+     */
+    private @Nullable byte[] calcCacheHash() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            return null;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(CACHE_MAGIC);
+            dos.writeUTF(pageStrategy.getClass().getName());
+            dos.writeInt(pageSize.width);
+            dos.writeInt(pageSize.height);
+            dos.writeInt(entries.size());
+            for (Entry e : entries) {
+                String ck = e.contentKey;
+                if (ck == null)
+                    return null;
+                dos.writeUTF(ck);
+                dos.writeInt(e.sz.width);
+                dos.writeInt(e.sz.height);
+            }
+        } catch (IOException ioe) {
+            // ByteArrayOutputStream doesn't do that
+            throw new RuntimeException(ioe);
+        }
+        return md.digest(baos.toByteArray());
+    }
+
+    private static void writeCache(DataOutputStream dos, byte[] hash, Entry[] inAddOrder, LinkedList<PageLayout> layouts, AtlasSet res) throws IOException {
+        dos.writeInt(CACHE_MAGIC);
+        dos.write(hash);
+        dos.writeInt(res.pages.size());
+        IdentityHashMap<Entry, Integer> entryPages = new IdentityHashMap<>();
+        IdentityHashMap<Entry, Rect> entryRects = new IdentityHashMap<>();
+        int pageIndex = 0;
+        Iterator<IGrDriver> pages = res.pages.iterator();
+        for (PageLayout pl : layouts) {
+            IGrDriver page = pages.next();
+            for (int i = 0; i < pl.contents.length; i++) {
+                entryPages.put(pl.contents[i], pageIndex);
+                if (pl.rects != DEDICATED)
+                    entryRects.put(pl.contents[i], pl.rects[i]);
+            }
+            // read back what was drawn
+            int[] pixels = page.getPixels();
+            dos.writeInt(pl.size.width);
+            dos.writeInt(pl.size.height);
+            byte[] data = new byte[pixels.length * 4];
+            for (int i = 0; i < pixels.length; i++) {
+                int v = pixels[i];
+                data[(i * 4)] = (byte) (v >> 24);
+                data[(i * 4) + 1] = (byte) (v >> 16);
+                data[(i * 4) + 2] = (byte) (v >> 8);
+                data[(i * 4) + 3] = (byte) v;
+            }
+            dos.write(data);
+            pageIndex++;
+        }
+        dos.writeInt(inAddOrder.length);
+        for (Entry e : inAddOrder) {
+            Integer pi = entryPages.get(e);
+            Rect r = entryRects.get(e);
+            dos.writeInt(pi == null ? -1 : pi);
+            // -1 means a dedicated page
+            dos.writeInt(r == null ? -1 : r.x);
+            dos.writeInt(r == null ? -1 : r.y);
+        }
+    }
+
+    /**
+     * Reads a cache file, returning null if it's for something else.
+     */
+    private static @Nullable AtlasSet readCache(DataInputStream dis, byte[] hash, Entry[] inAddOrder) throws IOException {
+        if (dis.readInt() != CACHE_MAGIC)
+            return null;
+        byte[] fileHash = new byte[hash.length];
+        dis.readFully(fileHash);
+        if (!Arrays.equals(fileHash, hash))
+            return null;
+        int pageCount = dis.readInt();
+        if (pageCount < 0 || pageCount > inAddOrder.length)
+            return null;
+        Size[] sizes = new Size[pageCount];
+        int[][] pixels = new int[pageCount][];
+        for (int p = 0; p < pageCount; p++) {
+            int w = dis.readInt();
+            int h = dis.readInt();
+            if (w <= 0 || h <= 0 || ((long) w) * h > MAX_CACHED_PAGE_PIXELS)
+                return null;
+            byte[] data = new byte[w * h * 4];
+            dis.readFully(data);
+            int[] px = new int[w * h];
+            for (int i = 0; i < px.length; i++)
+                px[i] = ((data[i * 4] & 0xFF) << 24) | ((data[(i * 4) + 1] & 0xFF) << 16) | ((data[(i * 4) + 2] & 0xFF) << 8) | (data[(i * 4) + 3] & 0xFF);
+            sizes[p] = new Size(w, h);
+            pixels[p] = px;
+        }
+        if (dis.readInt() != inAddOrder.length)
+            return null;
+        int[] entryPage = new int[inAddOrder.length];
+        int[] entryX = new int[inAddOrder.length];
+        int[] entryY = new int[inAddOrder.length];
+        for (int i = 0; i < inAddOrder.length; i++) {
+            entryPage[i] = dis.readInt();
+            entryX[i] = dis.readInt();
+            entryY[i] = dis.readInt();
+            if (entryPage[i] < 0 || entryPage[i] >= pageCount)
+                return null;
+        }
+        // everything checks out, so upload
+        AtlasSet res = new AtlasSet();
+        IGrDriver[] pages = new IGrDriver[pageCount];
+        for (int p = 0; p < pageCount; p++) {
+            pages[p] = GaBIEn.makeAtlasPage(sizes[p].width, sizes[p].height, null, pixels[p]);
+            res.pages.add(pages[p]);
+            res.pageArea += sizes[p].area();
+        }
+        for (int i = 0; i < inAddOrder.length; i++) {
+            Entry e = inAddOrder[i];
+            IGrDriver page = pages[entryPage[i]];
+            if (entryX[i] == -1) {
+                e.key.accept(page);
+            } else {
+                e.key.accept(page.subRegion(entryX[i], entryY[i], e.sz.width, e.sz.height));
+            }
+            res.usedArea += e.sz.area();
+        }
+        return res;
     }
 
     private static class Entry {
         final Consumer<ITexRegion> key;
         final Size sz;
         final AtlasDrawable tex;
-        Entry(Consumer<ITexRegion> key, AtlasDrawable tex) {
+        final @Nullable String contentKey;
+        Entry(Consumer<ITexRegion> key, AtlasDrawable tex, @Nullable String contentKey) {
             this.key = key;
             this.tex = tex;
             this.sz = new Size(tex.width, tex.height);
+            this.contentKey = contentKey;
+        }
+    }
+
+    private static class PageLayout {
+        final Size size;
+        final Entry[] contents;
+        // DEDICATED for a dedicated page
+        final Rect[] rects;
+        PageLayout(Size size, Entry[] contents, Rect[] rects) {
+            this.size = size;
+            this.contents = contents;
+            this.rects = rects;
         }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.atlas;
+
+import java.util.Comparator;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.uslx.append.Rect;
+import gabien.uslx.append.Size;
+
+/**
+ * Skyline atlasing strategy (bottom-left).
+ * Only tracks the top edge of what's been placed, as a list of horizontal segments, and puts each placement as low (then as far left) as it can go.
+ * Space under overhangs is lost, but it's cheap: each placement costs time proportional to the amount of segments.
+ * Created 18th October, 2026.
+ */
+public final class SkylineAtlasStrategy implements IAtlasStrategy {
+    public final static SkylineAtlasStrategy INSTANCE = new SkylineAtlasStrategy();
+
+    private SkylineAtlasStrategy() {
+    }
+
+    @Override
+    @NonNull
+    public Instance instance(@NonNull Size atlasSize) {
+        return new Instance() {
+            // Segment i runs from segX[i] to segX[i + 1] (or the atlas width) with its top at segY[i].
+            int[] segX = new int[16];
+            int[] segY = new int[16];
+            int segCount = 1;
+
+            @Override
+            @Nullable
+            public Rect add(@NonNull Size size) {
+                if (size.width > atlasSize.width || size.height > atlasSize.height)
+                    return null;
+                int bestIdx = -1;
+                int bestY = Integer.MAX_VALUE;
+                int bestX = 0;
+                for (int i = 0; i < segCount; i++) {
+                    int x = segX[i];
+                    if (x + size.width > atlasSize.width)
+                        break;
+                    // the placement rests on the highest segment it spans
+                    int y = 0;
+                    for (int j = i; j < segCount && segX[j] < x + size.width; j++)
+                        y = Math.max(y, segY[j]);
+                    if (y + size.height > atlasSize.height)
+                        continue;
+                    if (y < bestY) {
+                        bestIdx = i;
+                        bestY = y;
+                        bestX = x;
+                    }
+                }
+                if (bestIdx == -1)
+                    return null;
+                if (size.width > 0)
+                    raise(bestIdx, bestX + size.width, bestY + size.height);
+                return new Rect(bestX, bestY, size.width, size.height);
+            }
+
+            /**
+             * Replaces the skyline from segment idx up to x end with a single segment at height top.
+             */
+            private void raise(int idx, int end, int top) {
+                // find the first segment starting at or after end
+                int after = idx + 1;
+                while (after < segCount && segX[after] <= end)
+                    after++;
+                // the last covered segment carries on past end, if it reached that far
+                int tailY = segY[after - 1];
+                boolean needTail = end < (after < segCount ? segX[after] : atlasSize.width);
+                int newCount = idx + 1 + (needTail ? 1 : 0) + (segCount - after);
+                if (newCount > segX.length) {
+                    int[] nx = new int[newCount * 2];
+                    int[] ny = new int[newCount * 2];
+                    System.arraycopy(segX, 0, nx, 0, segCount);
+                    System.arraycopy(segY, 0, ny, 0, segCount);
+                    segX = nx;
+                    segY = ny;
+                }
+                int dst = idx + 1 + (needTail ? 1 : 0);
+                System.arraycopy(segX, after, segX, dst, segCount - after);
+                System.arraycopy(segY, after, segY, dst, segCount - after);
+                segY[idx] = top;
+                if (needTail) {
+                    segX[idx + 1] = end;
+                    segY[idx + 1] = tailY;
+                }
+                segCount = newCount;
+                // merge with equal-height neighbours
+                if (idx > 0 && segY[idx - 1] == top) {
+                    System.arraycopy(segX, idx + 1, segX, idx, segCount - (idx + 1));
+                    System.arraycopy(segY, idx + 1, segY, idx, segCount - (idx + 1));
+                    segCount--;
+                    idx--;
+                }
+                if (idx + 1 < segCount && segY[idx + 1] == top) {
+                    System.arraycopy(segX, idx + 2, segX, idx + 1, segCount - (idx + 2));
+                    System.arraycopy(segY, idx + 2, segY, idx + 1, segCount - (idx + 2));
+                    segCount--;
+                }
+            }
+        };
+    }
+
+    @Override
+    @Nullable
+    public Comparator<Size> getSortingAlgorithm() {
+        return SORT_HEIGHT_THEN_WIDTH;
+    }
+}
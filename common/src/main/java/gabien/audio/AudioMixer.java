@@ -0,0 +1,468 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+package gabien.audio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.uslx.append.MPSCRing;
+
+/**
+ * Mixes any number of voices into a single IRawAudioSource (so 22050Hz stereo, see IRawAudioDriver).
+ * Install with GaBIEn.getRawAudio().setRawAudioSource(mixer).
+ * Voices are controlled from any thread via commands that go through a lock-free queue.
+ * The sound thread applies them at the start of each pullData, so it never waits on game code.
+ * (If the queue is full, the caller waits for the sound thread instead.)
+ * Mixing is done in float with per-voice gain, pan and pitch, and clipped once at the end.
+ * Gain changes are ramped over a callback to avoid clicks; stopping fades out over one callback.
+ * Created 18th October, 2026.
+ */
+public final class AudioMixer implements IRawAudioDriver.IRawAudioSource {
+    public static final int SAMPLE_RATE = 22050;
+    private static final int COMMAND_QUEUE_SIZE = 1024;
+
+    public final int maxVoices;
+    private final Voice[] voices;
+    private final MPSCRing<Command> commands = new MPSCRing<>(COMMAND_QUEUE_SIZE, MPSCRing.BackPressure.Block);
+    private final Command[] commandDrain = new Command[COMMAND_QUEUE_SIZE];
+    private final AtomicInteger nextHandle = new AtomicInteger(1);
+    private float[] mixBuffer = new float[0];
+    private long voiceAge;
+
+    // Controlled by the sound thread.
+    private volatile int lastAppliedPlay;
+    private volatile float masterGain = 1;
+    private volatile int statActiveVoices;
+    private volatile long statLastRenderNanos;
+    private final AtomicLong statMaxRenderNanos = new AtomicLong();
+    private final AtomicLong statTotalRenderNanos = new AtomicLong();
+    private final AtomicLong statCallbacks = new AtomicLong();
+    private final AtomicLong statVoicesStolen = new AtomicLong();
+
+    public AudioMixer(int maxVoices) {
+        this.maxVoices = maxVoices;
+        voices = new Voice[maxVoices];
+        for (int i = 0; i < maxVoices; i++)
+            voices[i] = new Voice();
+    }
+
+    /**
+     * Starts playing a sound. Returns a handle for controlling the voice.
+     * Pan is -1 (left) to 1 (right). Pitch is a playback speed multiplier, and must be positive.
+     * If there are no free voices, the voice with the lowest priority (oldest first) is stolen, unless that's higher than this.
+     */
+    public int play(@NonNull Sound sound, float gain, float pan, float pitch, boolean loop, int priority) {
+        checkPitch(pitch);
+        Command cmd = new Command(Command.PLAY, nextHandle.getAndIncrement());
+        cmd.sound = sound;
+        cmd.gain = gain;
+        cmd.pan = pan;
+        cmd.pitch = pitch;
+        cmd.loop = loop;
+        cmd.priority = priority;
+        commands.put(cmd);
+        return cmd.handle;
+    }
+
+    /**
+     * The render loop would index outside the sample with anything else, so this is checked here rather than on the sound thread.
+     */
+    private static void checkPitch(float pitch) {
+        if (!(pitch > 0) || Float.isInfinite(pitch))
+            throw new IllegalArgumentException("Pitch must be positive and finite, not " + pitch);
+    }
+
+    /**
+     * Starts playing a stream (i.e. music). Returns a handle for controlling the voice.
+     * Streams ignore pitch. See play for the other parameters.
+     */
+    public int play(@NonNull IStream stream, float gain, float pan, int priority) {
+        Command cmd = new Command(Command.PLAY, nextHandle.getAndIncrement());
+        cmd.stream = stream;
+        cmd.gain = gain;
+        cmd.pan = pan;
+        cmd.pitch = 1;
+        cmd.priority = priority;
+        commands.put(cmd);
+        return cmd.handle;
+    }
+
+    /**
+     * Changes the parameters of a voice. Does nothing if it has stopped.
+     */
+    public void setParameters(int handle, float gain, float pan, float pitch) {
+        checkPitch(pitch);
+        Command cmd = new Command(Command.SET, handle);
+        cmd.gain = gain;
+        cmd.pan = pan;
+        cmd.pitch = pitch;
+        commands.put(cmd);
+    }
+
+    /**
+     * Stops a voice. Does nothing if it has already stopped.
+     */
+    public void stop(int handle) {
+        commands.put(new Command(Command.STOP, handle));
+    }
+
+    /**
+     * Stops all voices.
+     */
+    public void stopAll() {
+        commands.put(new Command(Command.STOP_ALL, 0));
+    }
+
+    /**
+     * Returns true if the voice is playing, or is about to.
+     */
+    public boolean isPlaying(int handle) {
+        if (handle > lastAppliedPlay)
+            return true;
+        for (Voice v : voices)
+            if (v.handle == handle)
+                return true;
+        return false;
+    }
+
+    public void setMasterGain(float gain) {
+        masterGain = gain;
+    }
+
+    /**
+     * Number of voices playing as of the last callback.
+     */
+    public int getActiveVoiceCount() {
+        return statActiveVoices;
+    }
+
+    /**
+     * Time the last callback took to render, in nanoseconds.
+     */
+    public long getLastRenderNanos() {
+        return statLastRenderNanos;
+    }
+
+    /**
+     * Longest time a callback has taken to render, in nanoseconds.
+     */
+    public long getMaxRenderNanos() {
+        return statMaxRenderNanos.get();
+    }
+
+    /**
+     * Average time a callback takes to render, in nanoseconds.
+     */
+    public long getAverageRenderNanos() {
+        long cb = statCallbacks.get();
+        return cb == 0 ? 0 : statTotalRenderNanos.get() / cb;
+    }
+
+    /**
+     * Number of voices that had to be stolen to play something else.
+     */
+    public long getVoicesStolenCount() {
+        return statVoicesStolen.get();
+    }
+
+    @Override
+    public void pullData(@NonNull short[] interleaved, int ofs, int frames) {
+        long start = System.nanoTime();
+        applyCommands();
+        int samples = frames * 2;
+        float[] mix = mixBuffer;
+        if (mix.length < samples)
+            mixBuffer = mix = new float[samples];
+        for (int i = 0; i < samples; i++)
+            mix[i] = 0;
+        int active = 0;
+        for (Voice v : voices) {
+            if (v.handle == 0)
+                continue;
+            v.render(mix, frames);
+            if (v.handle != 0)
+                active++;
+        }
+        float mg = masterGain * 32767f;
+        for (int i = 0; i < samples; i++) {
+            float s = mix[i] * mg;
+            if (s > 32767f)
+                s = 32767f;
+            else if (s < -32768f)
+                s = -32768f;
+            interleaved[ofs + i] = (short) s;
+        }
+        statActiveVoices = active;
+        long time = System.nanoTime() - start;
+        statLastRenderNanos = time;
+        statTotalRenderNanos.addAndGet(time);
+        statCallbacks.incrementAndGet();
+        if (time > statMaxRenderNanos.get())
+            statMaxRenderNanos.set(time);
+    }
+
+    private void applyCommands() {
+        while (true) {
+            int count = commands.drain(commandDrain);
+            if (count == 0)
+                return;
+            for (int i = 0; i < count; i++) {
+                Command cmd = commandDrain[i];
+                commandDrain[i] = null;
+                applyCommand(cmd);
+            }
+        }
+    }
+
+    private void applyCommand(Command cmd) {
+        switch (cmd.type) {
+        case Command.PLAY:
+        {
+            Voice v = allocateVoice(cmd.priority);
+            if (v != null)
+                v.start(cmd, voiceAge++);
+            if (cmd.handle > lastAppliedPlay)
+                lastAppliedPlay = cmd.handle;
+            break;
+        }
+        case Command.SET:
+            for (Voice v : voices)
+                if (v.handle == cmd.handle && !v.stopping)
+                    v.setParameters(cmd.gain, cmd.pan, cmd.pitch);
+            break;
+        case Command.STOP:
+            for (Voice v : voices)
+                if (v.handle == cmd.handle)
+                    v.stopping = true;
+            break;
+        case Command.STOP_ALL:
+            for (Voice v : voices)
+                v.stopping = true;
+            break;
+        }
+    }
+
+    private @Nullable Voice allocateVoice(int priority) {
+        Voice best = null;
+        for (Voice v : voices) {
+            if (v.handle == 0)
+                return v;
+            if (v.priority > priority)
+                continue;
+            if (best == null || v.priority < best.priority || (v.priority == best.priority && v.age < best.age))
+                best = v;
+        }
+        if (best != null)
+            statVoicesStolen.incrementAndGet();
+        return best;
+    }
+
+    /**
+     * Immutable PCM for playing on voices. Mono or stereo, at any sample rate.
+     */
+    public static final class Sound {
+        public final float[] data;
+        public final int channels, sampleRate, frames;
+
+        public Sound(float[] data, int channels, int sampleRate) {
+            if (channels != 1 && channels != 2)
+                throw new IllegalArgumentException("Sounds must be mono or stereo");
+            this.data = data;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            frames = data.length / channels;
+        }
+    }
+
+    /**
+     * Streamed audio for playing on voices. Runs on the sound thread.
+     */
+    public interface IStream {
+        /**
+         * Writes up to the given amount of 22050Hz stereo frames (interleaved floats, -1 to 1).
+         * Returns the amount of frames written; if less than asked for, the stream is considered finished.
+         */
+        int pull(float[] interleaved, int ofs, int frames);
+    }
+
+    private static final class Command {
+        static final int PLAY = 0;
+        static final int SET = 1;
+        static final int STOP = 2;
+        static final int STOP_ALL = 3;
+
+        final int type, handle;
+        @Nullable Sound sound;
+        @Nullable IStream stream;
+        float gain, pan, pitch;
+        boolean loop;
+        int priority;
+
+        Command(int type, int handle) {
+            this.type = type;
+            this.handle = handle;
+        }
+    }
+
+    /**
+     * Voice state. Only touched by the sound thread, except handle (read by isPlaying).
+     */
+    private static final class Voice {
+        volatile int handle;
+        int priority;
+        long age;
+        @Nullable Sound sound;
+        @Nullable IStream stream;
+        boolean loop, stopping;
+        double position, step;
+        // current and target per-channel gains (ramped across a callback)
+        float gainL, gainR, targetL, targetR;
+        float[] streamBuffer = new float[0];
+
+        void start(Command cmd, long age) {
+            this.age = age;
+            priority = cmd.priority;
+            sound = cmd.sound;
+            stream = cmd.stream;
+            loop = cmd.loop;
+            stopping = false;
+            position = 0;
+            setParameters(cmd.gain, cmd.pan, cmd.pitch);
+            // start at full volume; a ramp in would soften attacks
+            gainL = targetL;
+            gainR = targetR;
+            handle = cmd.handle;
+        }
+
+        void setParameters(float gain, float pan, float pitch) {
+            // constant-power pan
+            double angle = (Math.max(-1, Math.min(1, pan)) + 1) * (Math.PI / 4);
+            targetL = (float) (gain * Math.cos(angle));
+            targetR = (float) (gain * Math.sin(angle));
+            Sound s = sound;
+            step = s != null ? (pitch * s.sampleRate) / SAMPLE_RATE : 1;
+        }
+
+        void release() {
+            handle = 0;
+            sound = null;
+            stream = null;
+        }
+
+        void render(float[] mix, int frames) {
+            if (stopping) {
+                targetL = 0;
+                targetR = 0;
+            }
+            float dL = (targetL - gainL) / frames;
+            float dR = (targetR - gainR) / frames;
+            Sound s = sound;
+            boolean ended;
+            if (s != null) {
+                if (s.channels == 1) {
+                    ended = renderMono(s, mix, frames, dL, dR);
+                } else {
+                    ended = renderStereo(s, mix, frames, dL, dR);
+                }
+            } else {
+                ended = renderStream(mix, frames, dL, dR);
+            }
+            gainL = targetL;
+            gainR = targetR;
+            if (ended || stopping)
+                release();
+        }
+
+        private boolean renderMono(Sound s, float[] mix, int frames, float dL, float dR) {
+            float[] data = s.data;
+            int len = s.frames;
+            double pos = position;
+            double st = step;
+            float gL = gainL, gR = gainR;
+            int idx = 0;
+            for (int i = 0; i < frames; i++) {
+                int p = (int) pos;
+                if (p >= len) {
+                    if (!loop || len == 0)
+                        return true;
+                    pos %= len;
+                    p = (int) pos;
+                }
+                float frac = (float) (pos - p);
+                float a = data[p];
+                int p2 = p + 1;
+                float b = p2 < len ? data[p2] : (loop ? data[0] : 0);
+                float v = a + ((b - a) * frac);
+                mix[idx++] += v * gL;
+                mix[idx++] += v * gR;
+                gL += dL;
+                gR += dR;
+                pos += st;
+            }
+            position = pos;
+            return false;
+        }
+
+        private boolean renderStereo(Sound s, float[] mix, int frames, float dL, float dR) {
+            float[] data = s.data;
+            int len = s.frames;
+            double pos = position;
+            double st = step;
+            float gL = gainL, gR = gainR;
+            int idx = 0;
+            for (int i = 0; i < frames; i++) {
+                int p = (int) pos;
+                if (p >= len) {
+                    if (!loop || len == 0)
+                        return true;
+                    pos %= len;
+                    p = (int) pos;
+                }
+                float frac = (float) (pos - p);
+                int p2 = p + 1;
+                int i1 = p * 2;
+                int i2 = p2 < len ? p2 * 2 : (loop ? 0 : -1);
+                float aL = data[i1], aR = data[i1 + 1];
+                float bL = i2 >= 0 ? data[i2] : 0;
+                float bR = i2 >= 0 ? data[i2 + 1] : 0;
+                mix[idx++] += (aL + ((bL - aL) * frac)) * gL;
+                mix[idx++] += (aR + ((bR - aR) * frac)) * gR;
+                gL += dL;
+                gR += dR;
+                pos += st;
+            }
+            position = pos;
+            return false;
+        }
+
+        private boolean renderStream(float[] mix, int frames, float dL, float dR) {
+            IStream str = stream;
+            if (str == null)
+                return true;
+            int samples = frames * 2;
+            float[] buf = streamBuffer;
+            if (buf.length < samples)
+                streamBuffer = buf = new float[samples];
+            int got = str.pull(buf, 0, frames);
+            float gL = gainL, gR = gainR;
+            int idx = 0;
+            for (int i = 0; i < got; i++) {
+                mix[idx] += buf[idx] * gL;
+                idx++;
+                mix[idx] += buf[idx] * gR;
+                idx++;
+                gL += dL;
+                gR += dR;
+            }
+            return got < frames;
+        }
+    }
+}
@@ -8,65 +8,150 @@ package gabien.backend;
 
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.eclipse.jdt.annotation.Nullable;
 
 import gabien.GaBIEn;
 import gabien.render.IImage;
 import gabien.render.WSIImage;
+import gabien.uslx.append.AsyncResult;
+import gabien.uslx.append.WorkerPool;
 
 /**
  * Getting this code put here.
+ * Decoded images (CPU side) and uploaded images (GPU side) are kept in separate LRU caches, each with a byte budget.
+ * An image costs width * height * 4 bytes. Failed loads are remembered but cost nothing.
+ * Evicting an image only drops the cache's reference; anyone still holding it can keep using it.
+ * Thread-safe. Loading happens outside the lock, so a slow decode doesn't hold up hits.
+ * The async variants do the loading on a WorkerPool (see getDefaultPool), so a level load can use every core and the caller never waits on a decode.
  * Created 16th February 2023.
  */
 public final class ImageCache {
-    private HashMap<String, WSIImage> loadedWSIImages = new HashMap<String, WSIImage>();
-    private HashMap<String, IImage> loadedImages = new HashMap<String, IImage>();
-    private final IGaBIEn backend; 
+    public static final long DEFAULT_WSI_BUDGET = 256L * 1024 * 1024;
+    public static final long DEFAULT_TEXTURE_BUDGET = 512L * 1024 * 1024;
+
+    private static @Nullable WorkerPool defaultPool;
+
+    private final Cache<WSIImage> loadedWSIImages = new Cache<>(DEFAULT_WSI_BUDGET);
+    private final Cache<IImage> loadedImages = new Cache<>(DEFAULT_TEXTURE_BUDGET);
+    private final HashMap<Key, AsyncResult<IImage>> pendingImages = new HashMap<>();
+    private final IGaBIEn backend;
+    private final WorkerPool pool;
 
     public ImageCache(IGaBIEn backend) {
+        this(backend, getDefaultPool());
+    }
+
+    public ImageCache(IGaBIEn backend, WorkerPool pool) {
         this.backend = backend;
+        this.pool = pool;
         GaBIEn.verify(backend);
     }
 
+    /**
+     * Gets the shared image decode pool, with one thread per processor.
+     * This is separate from the audio one, so a big image can't cause audio underruns.
+     */
+    public static synchronized WorkerPool getDefaultPool() {
+        WorkerPool pool = defaultPool;
+        if (pool == null)
+            defaultPool = pool = new WorkerPool("ImageDecodePool");
+        return pool;
+    }
+
+    /**
+     * Sets the byte budgets. Anything over budget is evicted immediately.
+     */
+    public void setBudgets(long wsiBytes, long textureBytes) {
+        loadedWSIImages.setBudget(wsiBytes);
+        loadedImages.setBudget(textureBytes);
+    }
+
     public @Nullable WSIImage getWSIImage(String a, boolean res) {
-        String ki = a + (res ? 'R' : 'F');
-        if (loadedWSIImages.containsKey(ki))
-            return loadedWSIImages.get(ki);
+        Key ki = new Key(a, res);
+        Entry<WSIImage> e = loadedWSIImages.get(ki);
+        if (e != null)
+            return e.value;
         InputStream ip = res ? GaBIEn.getResource(a) : GaBIEn.getInFile(a);
         WSIImage img = ip != null ? backend.decodeWSIImage(ip) : null;
-        loadedWSIImages.put(ki, img);
-        return img;
+        return loadedWSIImages.put(ki, img, img != null ? cost(img.width, img.height) : 0).value;
     }
 
     public IImage getImage(String a, boolean res) {
-        String ki = a + "_N_N_N" + (res ? 'R' : 'F');
-        if (loadedImages.containsKey(ki))
-            return loadedImages.get(ki);
-        WSIImage img = getWSIImage(a, res);
-        IImage resImg;
-        if (img == null) {
-            resImg = GaBIEn.getErrorImage();
-        } else {
-            resImg = img.upload("ImageCache:" + ki);
-        }
-        loadedImages.put(ki, resImg);
-        return resImg;
+        return getImage(new Key(a, res));
     }
 
     public IImage getImageCK(String a, boolean res, int tr, int tg, int tb) {
-        String ki = a + "_" + tr + "_" + tg + "_" + tb + (res ? 'R' : 'F');
-        if (loadedImages.containsKey(ki))
-            return loadedImages.get(ki);
-        WSIImage img = getWSIImage(a, res);
+        return getImage(new Key(a, res, tr, tg, tb));
+    }
+
+    private IImage getImage(Key ki) {
+        Entry<IImage> e = loadedImages.get(ki);
+        if (e != null)
+            return e.value;
+        return loadImage(ki);
+    }
+
+    /**
+     * Like getImage, but decoding and colour-keying happen on the decode pool.
+     * The result completes with the error image if the image couldn't be loaded.
+     * Simultaneous requests for the same image share one load.
+     */
+    public AsyncResult<IImage> getImageAsync(String a, boolean res) {
+        return getImageAsync(new Key(a, res));
+    }
+
+    /**
+     * getImageAsync with colour-key processing.
+     */
+    public AsyncResult<IImage> getImageCKAsync(String a, boolean res, int tr, int tg, int tb) {
+        return getImageAsync(new Key(a, res, tr, tg, tb));
+    }
+
+    private AsyncResult<IImage> getImageAsync(Key ki) {
+        Entry<IImage> e = loadedImages.get(ki);
+        if (e != null)
+            return AsyncResult.completed(e.value);
+        AsyncResult<IImage> ar;
+        synchronized (pendingImages) {
+            ar = pendingImages.get(ki);
+            if (ar != null)
+                return ar;
+            ar = new AsyncResult<>();
+            pendingImages.put(ki, ar);
+        }
+        final AsyncResult<IImage> result = ar;
+        pool.execute(() -> {
+            try {
+                result.complete(loadImage(ki));
+            } catch (Throwable t) {
+                result.fail(t);
+            } finally {
+                synchronized (pendingImages) {
+                    pendingImages.remove(ki);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Loads an image that wasn't in the cache. Safe to run on any thread; the texture is created by a single VOPEKS task.
+     */
+    private IImage loadImage(Key ki) {
+        WSIImage img = getWSIImage(ki.path, ki.resource);
+        if (img == null)
+            return loadedImages.put(ki, GaBIEn.getErrorImage(), 0).value;
         IImage resImg;
-        if (img == null) {
-            resImg = GaBIEn.getErrorImage();
+        if (ki.colourKeyed) {
+            resImg = GaBIEn.wsiToCK("ImageCache:" + ki, img, ki.ckR, ki.ckG, ki.ckB);
         } else {
-            resImg = GaBIEn.wsiToCK("ImageCache:" + ki, img, tr, tg, tb);
+            resImg = img.upload("ImageCache:" + ki);
         }
-        loadedImages.put(ki, resImg);
-        return resImg;
+        return loadedImages.put(ki, resImg, cost(resImg.width, resImg.height)).value;
     }
 
     public void hintFlushAllTheCaches() {
@@ -74,4 +159,189 @@ public final class ImageCache {
         loadedWSIImages.clear();
     }
 
+    /**
+     * Statistics for the decoded image cache.
+     */
+    public Stats getWSIStats() {
+        return loadedWSIImages.getStats();
+    }
+
+    /**
+     * Statistics for the uploaded image cache.
+     */
+    public Stats getTextureStats() {
+        return loadedImages.getStats();
+    }
+
+    private static long cost(int w, int h) {
+        return ((long) w) * h * 4;
+    }
+
+    /**
+     * Identifies a cached image: the path, where it comes from, and the colour key if any.
+     */
+    public static final class Key {
+        public final String path;
+        public final boolean resource;
+        public final boolean colourKeyed;
+        public final int ckR, ckG, ckB;
+
+        public Key(String path, boolean resource) {
+            this.path = path;
+            this.resource = resource;
+            colourKeyed = false;
+            ckR = ckG = ckB = 0;
+        }
+
+        public Key(String path, boolean resource, int r, int g, int b) {
+            this.path = path;
+            this.resource = resource;
+            colourKeyed = true;
+            ckR = r;
+            ckG = g;
+            ckB = b;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key k = (Key) obj;
+            return path.equals(k.path) && resource == k.resource && colourKeyed == k.colourKeyed && ckR == k.ckR && ckG == k.ckG && ckB == k.ckB;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = path.hashCode();
+            h = (h * 31) + (resource ? 1 : 0);
+            h = (h * 31) + (colourKeyed ? 1 : 0);
+            h = (h * 31) + ckR;
+            h = (h * 31) + ckG;
+            return (h * 31) + ckB;
+        }
+
+        @Override
+        public String toString() {
+            if (colourKeyed)
+                return path + "_" + ckR + "_" + ckG + "_" + ckB + (resource ? 'R' : 'F');
+            return path + "_N_N_N" + (resource ? 'R' : 'F');
+        }
+    }
+
+    /**
+     * Snapshot of a cache's counters.
+     */
+    public static final class Stats {
+        public final long hits, misses, evictions;
+        public final long residentBytes, budgetBytes;
+        public final int entries;
+
+        public Stats(long hits, long misses, long evictions, long residentBytes, long budgetBytes, int entries) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.residentBytes = residentBytes;
+            this.budgetBytes = budgetBytes;
+            this.entries = entries;
+        }
+
+        /**
+         * Fraction of lookups that were hits (0 if there have been none).
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits " + hits + ", misses " + misses + ", evictions " + evictions + ", " + entries + " entries, " + residentBytes + "/" + budgetBytes + " bytes";
+        }
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final long bytes;
+
+        Entry(T value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Byte-budgeted LRU map. All access is synchronized on the map.
+     */
+    private static final class Cache<T> {
+        private final LinkedHashMap<Key, Entry<T>> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long budget, resident;
+        private long hits, misses, evictions;
+
+        Cache(long budget) {
+            this.budget = budget;
+        }
+
+        @Nullable Entry<T> get(Key k) {
+            synchronized (map) {
+                Entry<T> e = map.get(k);
+                if (e != null) {
+                    hits++;
+                } else {
+                    misses++;
+                }
+                return e;
+            }
+        }
+
+        /**
+         * Inserts an entry, unless another thread got there first, in which case the existing entry is returned.
+         */
+        Entry<T> put(Key k, T value, long bytes) {
+            synchronized (map) {
+                Entry<T> existing = map.get(k);
+                if (existing != null)
+                    return existing;
+                Entry<T> e = new Entry<>(value, bytes);
+                map.put(k, e);
+                resident += bytes;
+                trim(e);
+                return e;
+            }
+        }
+
+        void setBudget(long bytes) {
+            synchronized (map) {
+                budget = bytes;
+                trim(null);
+            }
+        }
+
+        /**
+         * Evicts least-recently-used entries until within budget. Never evicts keep, so an oversized image still gets cached until something else comes along.
+         */
+        private void trim(@Nullable Entry<T> keep) {
+            Iterator<Map.Entry<Key, Entry<T>>> it = map.entrySet().iterator();
+            while (resident > budget && it.hasNext()) {
+                Entry<T> e = it.next().getValue();
+                if (e == keep || e.bytes == 0)
+                    continue;
+                it.remove();
+                resident -= e.bytes;
+                evictions++;
+            }
+        }
+
+        void clear() {
+            synchronized (map) {
+                map.clear();
+                resident = 0;
+            }
+        }
+
+        Stats getStats() {
+            synchronized (map) {
+                return new Stats(hits, misses, evictions, resident, budget, map.size());
+            }
+        }
+    }
 }
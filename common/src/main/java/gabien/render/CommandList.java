@@ -0,0 +1,345 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.render;
+
+import java.util.ArrayList;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.natives.BadGPU;
+
+/**
+ * Immutable recording of rawBatch calls, for static content that would otherwise be redrawn identically every frame.
+ * Record with a Recorder (which is an IGrDriver), then draw with IGrDriver.drawCommandList.
+ * Texture regions are resolved at record time, so the vertex data is final.
+ * Backends that can draw it directly (i.e. VopeksBatchingSurface) skip all per-vertex work on replay.
+ * Be aware that the list refers to the images it draws from, and doesn't notice if they are changed or shut down.
+ * Created 18th October, 2026.
+ */
+public final class CommandList {
+    /**
+     * Size of the recorder, i.e. the area the list was recorded for.
+     */
+    public final int width, height;
+
+    /**
+     * Runs of consecutive geometry with the same state.
+     */
+    public final Segment[] segments;
+
+    /**
+     * Total vertices (i.e. 3 per triangle) in the list.
+     */
+    public final int vertexCount;
+
+    private CommandList(int w, int h, Segment[] segments) {
+        width = w;
+        height = h;
+        this.segments = segments;
+        int vc = 0;
+        for (Segment s : segments)
+            vc += s.vertexCount;
+        vertexCount = vc;
+    }
+
+    /**
+     * Works out a segment's scissor at replay time.
+     * Writes L, U, R, D, and cropEssential (as 0/1) into res, and returns false if nothing would be drawn.
+     * Recorded coordinates are multiplied by sx/sy and then offset by tx/ty. scL/scU/scR/scD are the target's scissor.
+     */
+    public static boolean transformCrop(Segment seg, float tx, float ty, float sx, float sy, int scL, int scU, int scR, int scD, int[] res) {
+        int a = (int) (tx + (seg.cropL * sx));
+        int b = (int) (tx + (seg.cropR * sx));
+        int c = (int) (ty + (seg.cropU * sy));
+        int d = (int) (ty + (seg.cropD * sy));
+        int l = Math.min(a, b), r = Math.max(a, b);
+        int u = Math.min(c, d), dn = Math.max(c, d);
+        // If the target scissor cuts into the crop, the geometry isn't known to fit anymore
+        boolean essential = seg.cropEssential || l < scL || u < scU || r > scR || dn > scD;
+        l = Math.max(l, scL);
+        u = Math.max(u, scU);
+        r = Math.min(r, scR);
+        dn = Math.min(dn, scD);
+        if (r <= l || dn <= u)
+            return false;
+        res[0] = l;
+        res[1] = u;
+        res[2] = r;
+        res[3] = dn;
+        res[4] = essential ? 1 : 0;
+        return true;
+    }
+
+    /**
+     * Replays the list through the target's rawBatch calls.
+     * This is the fallback for backends that don't have a faster way; it's still cheaper than redrawing.
+     */
+    public void replayRaw(IGrDriver igd, float tx, float ty, float sx, float sy, int scL, int scU, int scR, int scD) {
+        int[] crop = new int[5];
+        for (Segment seg : segments) {
+            if (!transformCrop(seg, tx, ty, sx, sy, scL, scU, scR, scD, crop))
+                continue;
+            boolean essential = crop[4] != 0;
+            float[] data = seg.data;
+            int cBase = seg.vertexCount * 2;
+            int tBase = seg.vertexCount * 6;
+            int runStart = 0;
+            for (int run = 0; run < seg.runTex.length; run++) {
+                IImage img = seg.runTex[run];
+                int runEnd = seg.runEnd[run];
+                // STs are stored normalized, so scale them back for the image
+                float iW = img != null ? img.width : 0;
+                float iH = img != null ? img.height : 0;
+                for (int v = runStart; v < runEnd; v += 3) {
+                    int v2 = v * 2, t2 = tBase + v2;
+                    float x0 = tx + (data[v2] * sx), y0 = ty + (data[v2 + 1] * sy);
+                    float x1 = tx + (data[v2 + 2] * sx), y1 = ty + (data[v2 + 3] * sy);
+                    float x2 = tx + (data[v2 + 4] * sx), y2 = ty + (data[v2 + 5] * sy);
+                    float s0 = data[t2] * iW, t0 = data[t2 + 1] * iH;
+                    float s1 = data[t2 + 2] * iW, t1 = data[t2 + 3] * iH;
+                    float s2 = data[t2 + 4] * iW, t2v = data[t2 + 5] * iH;
+                    if (seg.hasColours) {
+                        int c4 = cBase + (v * 4);
+                        igd.rawBatchXYSTRGBA(essential, crop[0], crop[1], crop[2], crop[3], seg.blendMode, seg.drawFlagsEx, img,
+                                x0, y0, s0, t0, data[c4], data[c4 + 1], data[c4 + 2], data[c4 + 3],
+                                x1, y1, s1, t1, data[c4 + 4], data[c4 + 5], data[c4 + 6], data[c4 + 7],
+                                x2, y2, s2, t2v, data[c4 + 8], data[c4 + 9], data[c4 + 10], data[c4 + 11]);
+                    } else {
+                        igd.rawBatchXYST(essential, crop[0], crop[1], crop[2], crop[3], seg.blendMode, seg.drawFlagsEx, img,
+                                x0, y0, s0, t0,
+                                x1, y1, s1, t1,
+                                x2, y2, s2, t2v);
+                    }
+                }
+                runStart = runEnd;
+            }
+        }
+    }
+
+    /**
+     * Geometry with one set of state, split into runs by texture.
+     * Vertex data is planar, like a VOPEKS megabuffer: XY (pixels) at 0, RGBA at vertexCount * 2, ST (normalized) at vertexCount * 6.
+     * Run i uses texture runTex[i] and ends at vertex runEnd[i].
+     * None of the arrays are to be modified.
+     */
+    public static final class Segment {
+        public final boolean cropEssential;
+        public final int cropL, cropU, cropR, cropD;
+        public final int blendMode, drawFlagsEx;
+        public final boolean hasColours;
+        public final int vertexCount;
+        public final float[] data;
+        public final @Nullable IImage[] runTex;
+        public final int[] runEnd;
+
+        private Segment(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, boolean hasColours, int vertexCount, float[] data, @Nullable IImage[] runTex, int[] runEnd) {
+            this.cropEssential = cropEssential;
+            this.cropL = cropL;
+            this.cropU = cropU;
+            this.cropR = cropR;
+            this.cropD = cropD;
+            this.blendMode = blendMode;
+            this.drawFlagsEx = drawFlagsEx;
+            this.hasColours = hasColours;
+            this.vertexCount = vertexCount;
+            this.data = data;
+            this.runTex = runTex;
+            this.runEnd = runEnd;
+        }
+    }
+
+    /**
+     * Records rawBatch calls into a CommandList.
+     * The usual IGrDriver drawing functions work, as does TRS/scissor, but there's no texture behind this.
+     * Once finish is called, the recorder is reset and can be used again.
+     */
+    public static final class Recorder extends IGrDriver {
+        private final ArrayList<Segment> segments = new ArrayList<>();
+
+        // Current segment.
+        private boolean segActive;
+        private boolean segCropEssential;
+        private int segCropL, segCropU, segCropR, segCropD, segBlendMode, segDrawFlagsEx;
+        private boolean segHasColours;
+        private int segVertices;
+        private float[] segXY = new float[64], segRGBA = new float[128], segST = new float[64];
+        private final ArrayList<IImage> segRunTex = new ArrayList<>();
+        private int[] segRunEnd = new int[8];
+
+        // Texture region picked for the current group.
+        private @Nullable IImgRegion groupTex;
+
+        public Recorder(int w, int h) {
+            super("CommandList.Recorder", w, h);
+        }
+
+        /**
+         * Finishes recording, returning the list and resetting the recorder.
+         */
+        public synchronized CommandList finish() {
+            endSegment();
+            CommandList res = new CommandList(width, height, segments.toArray(new Segment[0]));
+            segments.clear();
+            return res;
+        }
+
+        private void endSegment() {
+            if (!segActive)
+                return;
+            segActive = false;
+            if (segVertices == 0)
+                return;
+            int vc = segVertices;
+            float[] data = new float[vc * 8];
+            System.arraycopy(segXY, 0, data, 0, vc * 2);
+            if (segHasColours)
+                System.arraycopy(segRGBA, 0, data, vc * 2, vc * 4);
+            System.arraycopy(segST, 0, data, vc * 6, vc * 2);
+            int runs = segRunTex.size();
+            IImage[] runTex = segRunTex.toArray(new IImage[0]);
+            int[] runEnd = new int[runs];
+            System.arraycopy(segRunEnd, 0, runEnd, 0, runs - 1);
+            runEnd[runs - 1] = vc;
+            segments.add(new Segment(segCropEssential, segCropL, segCropU, segCropR, segCropD, segBlendMode, segDrawFlagsEx, segHasColours, vc, data, runTex, runEnd));
+            segRunTex.clear();
+        }
+
+        private void startGroup(int vertices, boolean hasColours, boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU) {
+            if (segActive && (segCropEssential != cropEssential || segCropL != cropL || segCropU != cropU || segCropR != cropR || segCropD != cropD || segBlendMode != blendMode || segDrawFlagsEx != drawFlagsEx))
+                endSegment();
+            IImage lastSurface = segActive ? segRunTex.get(segRunTex.size() - 1) : null;
+            IImgRegion tex = iU != null ? iU.pickImgRegion(lastSurface) : null;
+            IImage srf = tex != null ? tex.getSurface() : null;
+            groupTex = tex;
+            if (!segActive) {
+                segActive = true;
+                segCropEssential = cropEssential;
+                segCropL = cropL;
+                segCropU = cropU;
+                segCropR = cropR;
+                segCropD = cropD;
+                segBlendMode = blendMode;
+                segDrawFlagsEx = drawFlagsEx;
+                segHasColours = false;
+                segVertices = 0;
+                segRunTex.add(srf);
+            } else if (srf != lastSurface) {
+                int idx = segRunTex.size() - 1;
+                if (idx == segRunEnd.length) {
+                    int[] nre = new int[segRunEnd.length * 2];
+                    System.arraycopy(segRunEnd, 0, nre, 0, idx);
+                    segRunEnd = nre;
+                }
+                segRunEnd[idx] = segVertices;
+                segRunTex.add(srf);
+            }
+            int needed = segVertices + vertices;
+            if (needed * 2 > segXY.length) {
+                int cap = Math.max(needed, segVertices * 2);
+                float[] nXY = new float[cap * 2];
+                float[] nRGBA = new float[cap * 4];
+                float[] nST = new float[cap * 2];
+                System.arraycopy(segXY, 0, nXY, 0, segVertices * 2);
+                System.arraycopy(segRGBA, 0, nRGBA, 0, segVertices * 4);
+                System.arraycopy(segST, 0, nST, 0, segVertices * 2);
+                segXY = nXY;
+                segRGBA = nRGBA;
+                segST = nST;
+            }
+            if (hasColours && !segHasColours) {
+                for (int i = 0; i < segVertices * 4; i++)
+                    segRGBA[i] = 1.0f;
+                segHasColours = true;
+            }
+        }
+
+        private void write(float x, float y, float s, float t, float r, float g, float b, float a) {
+            IImgRegion tex = groupTex;
+            int v2 = segVertices * 2;
+            segXY[v2] = x;
+            segXY[v2 + 1] = y;
+            if (tex != null) {
+                segST[v2] = tex.getS(s, t);
+                segST[v2 + 1] = tex.getT(s, t);
+            }
+            if (segHasColours) {
+                int v4 = segVertices * 4;
+                segRGBA[v4] = r;
+                segRGBA[v4 + 1] = g;
+                segRGBA[v4 + 2] = b;
+                segRGBA[v4 + 3] = a;
+            }
+            segVertices++;
+        }
+
+        @Override
+        public synchronized void rawBatchXYST(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float x1, float y1, float s1, float t1, float x2, float y2, float s2, float t2) {
+            startGroup(3, false, cropEssential, cropL, cropU, cropR, cropD, blendMode, drawFlagsEx, iU);
+            write(x0, y0, s0, t0, 1, 1, 1, 1);
+            write(x1, y1, s1, t1, 1, 1, 1, 1);
+            write(x2, y2, s2, t2, 1, 1, 1, 1);
+        }
+
+        @Override
+        public synchronized void rawBatchXYST(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float x1, float y1, float s1, float t1, float x2, float y2, float s2, float t2, float x3, float y3, float s3, float t3) {
+            startGroup(6, false, cropEssential, cropL, cropU, cropR, cropD, blendMode, drawFlagsEx, iU);
+            write(x0, y0, s0, t0, 1, 1, 1, 1);
+            write(x1, y1, s1, t1, 1, 1, 1, 1);
+            write(x2, y2, s2, t2, 1, 1, 1, 1);
+            write(x0, y0, s0, t0, 1, 1, 1, 1);
+            write(x2, y2, s2, t2, 1, 1, 1, 1);
+            write(x3, y3, s3, t3, 1, 1, 1, 1);
+        }
+
+        @Override
+        public synchronized void rawBatchXYSTRGBA(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float r0, float g0, float b0, float a0, float x1, float y1, float s1, float t1, float r1, float g1, float b1, float a1, float x2, float y2, float s2, float t2, float r2, float g2, float b2, float a2) {
+            startGroup(3, true, cropEssential, cropL, cropU, cropR, cropD, blendMode, drawFlagsEx, iU);
+            write(x0, y0, s0, t0, r0, g0, b0, a0);
+            write(x1, y1, s1, t1, r1, g1, b1, a1);
+            write(x2, y2, s2, t2, r2, g2, b2, a2);
+        }
+
+        @Override
+        public synchronized void rawBatchXYSTRGBA(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float r0, float g0, float b0, float a0, float x1, float y1, float s1, float t1, float r1, float g1, float b1, float a1, float x2, float y2, float s2, float t2, float r2, float g2, float b2, float a2, float x3, float y3, float s3, float t3, float r3, float g3, float b3, float a3) {
+            startGroup(6, true, cropEssential, cropL, cropU, cropR, cropD, blendMode, drawFlagsEx, iU);
+            write(x0, y0, s0, t0, r0, g0, b0, a0);
+            write(x1, y1, s1, t1, r1, g1, b1, a1);
+            write(x2, y2, s2, t2, r2, g2, b2, a2);
+            write(x0, y0, s0, t0, r0, g0, b0, a0);
+            write(x2, y2, s2, t2, r2, g2, b2, a2);
+            write(x3, y3, s3, t3, r3, g3, b3, a3);
+        }
+
+        @Override
+        public void clearAll(int r, int g, int b, int a) {
+            throw new RuntimeException("CommandList.Recorder can't record clearAll; use clearRect");
+        }
+
+        @Override
+        public void getPixelsAsync(int x, int y, int w, int h, BadGPU.TextureLoadFormat format, @NonNull int[] data, int dataOfs, @NonNull Runnable onDone) {
+            throw new RuntimeException("CommandList.Recorder has no pixels");
+        }
+
+        @Override
+        public void getPixelsAsync(int x, int y, int w, int h, BadGPU.TextureLoadFormat format, @NonNull byte[] data, int dataOfs, @NonNull Runnable onDone) {
+            throw new RuntimeException("CommandList.Recorder has no pixels");
+        }
+
+        @Override
+        public void generateMipmap() {
+        }
+
+        @Override
+        public void batchFlush() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.render;
+
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Dirty-tracking holder for a CommandList.
+ * The list is re-recorded when it's been marked dirty, or when the size it's drawn at changes.
+ * Otherwise, drawing it is just a replay.
+ * Created 18th October, 2026.
+ */
+public final class CommandListCache {
+    private @Nullable CommandList list;
+    private boolean dirty = true;
+    private int recordCount;
+
+    /**
+     * Marks the content as changed, so it'll be re-recorded on the next draw.
+     */
+    public synchronized void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Returns true if the next draw will re-record.
+     */
+    public synchronized boolean isDirty() {
+        return dirty || list == null;
+    }
+
+    /**
+     * Number of times the list has been recorded. Useful to check a panel isn't re-recording every frame.
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Draws the list at the given position (subject to the target's TRS and scissor).
+     * If needed, it's first re-recorded by running painter on a recorder of the given size.
+     */
+    public synchronized void draw(IGrDriver igd, float x, float y, int w, int h, Consumer<IGrDriver> painter) {
+        CommandList cl = list;
+        if (dirty || cl == null || cl.width != w || cl.height != h) {
+            CommandList.Recorder rec = new CommandList.Recorder(w, h);
+            painter.accept(rec);
+            cl = list = rec.finish();
+            dirty = false;
+            recordCount++;
+        }
+        igd.drawCommandList(cl, x, y);
+    }
+}
@@ -190,6 +190,22 @@ public abstract class IGrDriver extends RenderTarget {
         rawBatchXYSTRGBA(true, scissor[0], scissor[1], scissor[2], scissor[3], blendMode, drawFlagsEx, tex, x0, y0, s0, t0, r0, g0, b0, a0, x1, y1, s1, t1, r1, g1, b1, a1, x2, y2, s2, t2, r2, g2, b2, a2, x3, y3, s3, t3, r3, g3, b3, a3);
     }
 
+    /**
+     * Draws a recorded CommandList at the given position, applying translation, scaling, and scissoring.
+     */
+    public final synchronized void drawCommandList(CommandList list, float x, float y) {
+        rawDrawCommandList(list, trsX(x), trsY(y), trs[2], trs[3], scissor[0], scissor[1], scissor[2], scissor[3]);
+    }
+
+    /**
+     * Replays a CommandList. Recorded coordinates are multiplied by sx/sy and then offset by tx/ty.
+     * scL/scU/scR/scD is the scissor to apply on top of the recorded crops.
+     * Backends that can do this without per-vertex work should override this; by default it goes through rawBatch.
+     */
+    public void rawDrawCommandList(CommandList list, float tx, float ty, float sx, float sy, int scL, int scU, int scR, int scD) {
+        list.replayRaw(this, tx, ty, sx, sy, scL, scU, scR, scD);
+    }
+
     /**
      * Clears the buffer.
      */
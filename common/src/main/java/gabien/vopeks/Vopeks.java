@@ -8,12 +8,14 @@ package gabien.vopeks;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jdt.annotation.Nullable;
 
 import gabien.natives.BadGPU;
 import gabien.uslx.append.EmptyLambdas;
+import gabien.uslx.append.MPSCRing;
 import gabien.uslx.append.TimeLogger;
 
 /**
@@ -25,6 +27,10 @@ import gabien.uslx.append.TimeLogger;
  */
 public final class Vopeks {
     private final int TASK_QUEUE_SIZE = 65536;
+    /**
+     * Maximum amount of tasks the VOPEKS thread takes from the ring at once.
+     */
+    private final int TASK_DRAIN_SIZE = 256;
     private int tasksBetweenFlushes = 0;
 
     public final @Nullable TimeLogger timeLogger;
@@ -33,15 +39,34 @@ public final class Vopeks {
     public final @Nullable TimeLogger.Source timeLoggerFinishTask;
     public final Thread vopeksThread;
     public final CallbackRunner vopeksCBThread;
-    private final ArrayBlockingQueue<ITask> taskQueue = new ArrayBlockingQueue<>(TASK_QUEUE_SIZE);
+    private final MPSCRing<ITask> taskQueue;
     private final ArrayBlockingQueue<Runnable> cbQueue = new ArrayBlockingQueue<>(TASK_QUEUE_SIZE);
     public final VopeksFloatPool floatPool = new VopeksFloatPool();
+    public final VopeksReadback readback = new VopeksReadback(this);
     private volatile boolean shutdownPrimary;
     public final AtomicReference<Throwable> initFailure = new AtomicReference<Throwable>();
     public final AtomicBoolean initComplete = new AtomicBoolean();
+    /**
+     * Cleared if the natives turn out to be missing BadGPUUnsafe.drawGeomNoDSDirect.
+     * Surfaces check this before using the direct vertex path.
+     */
+    volatile boolean directVertexDraw = true;
+    /**
+     * Batches that deferred batching avoided, summed across all surfaces.
+     */
+    private final AtomicLong statDeferredBatchesSaved = new AtomicLong();
 
     public Vopeks(final int newInstanceFlags, @Nullable TimeLogger timeLogger, boolean isCrashingVopeks) {
+        this(newInstanceFlags, timeLogger, isCrashingVopeks, MPSCRing.BackPressure.Block);
+    }
+
+    /**
+     * The back-pressure policy decides what putTask does when the task queue is full.
+     * Be aware that Drop means dropping *any* task, including texture creation, so it's only for the brave.
+     */
+    public Vopeks(final int newInstanceFlags, @Nullable TimeLogger timeLogger, boolean isCrashingVopeks, MPSCRing.BackPressure backPressure) {
         this.timeLogger = timeLogger;
+        taskQueue = new MPSCRing<>(TASK_QUEUE_SIZE, backPressure);
         timeLoggerReadPixelsTask = TimeLogger.optSource(timeLogger, "readPixelsTask");
         timeLoggerFlushTask = TimeLogger.optSource(timeLogger, "flushTask");
         timeLoggerFinishTask = TimeLogger.optSource(timeLogger, "finishTask");
@@ -59,28 +84,37 @@ public final class Vopeks {
                 } finally {
                     initComplete.set(true);
                 }
+                // Tasks are taken from the ring in bulk, and then run in order.
+                ITask[] tasks = new ITask[TASK_DRAIN_SIZE];
                 if (timeLogger != null) {
                     TimeLogger.Source vs = timeLogger.newSource("vopeks_main");
                     while (!shutdownPrimary) {
-                        try {
-                            ITask task = taskQueue.take();
+                        int count = taskQueue.take(tasks);
+                        for (int i = 0; i < count; i++) {
+                            ITask task = tasks[i];
+                            tasks[i] = null;
                             // intentionally limited to this path
                             tasksBetweenFlushes++;
                             try (TimeLogger.Source vs2 = TimeLogger.open(vs)) {
                                 task.run(instance);
+                            } catch (Throwable t) {
+                                System.err.println("Exception in VOPEKS:");
+                                t.printStackTrace();
                             }
-                        } catch (Throwable t) {
-                            System.err.println("Exception in VOPEKS:");
-                            t.printStackTrace();
                         }
                     }
                 } else {
                     while (!shutdownPrimary) {
-                        try {
-                            taskQueue.take().run(instance);
-                        } catch (Throwable t) {
-                            System.err.println("Exception in VOPEKS:");
-                            t.printStackTrace();
+                        int count = taskQueue.take(tasks);
+                        for (int i = 0; i < count; i++) {
+                            ITask task = tasks[i];
+                            tasks[i] = null;
+                            try {
+                                task.run(instance);
+                            } catch (Throwable t) {
+                                System.err.println("Exception in VOPEKS:");
+                                t.printStackTrace();
+                            }
                         }
                     }
                 }
@@ -95,11 +129,58 @@ public final class Vopeks {
     public void putTask(ITask object) {
         if (shutdownPrimary)
             return;
-        try {
-            taskQueue.put(object);
-        } catch (InterruptedException ie) {
-            ie.printStackTrace();
+        boolean interrupted = false;
+        while (!taskQueue.put(object)) {
+            if (taskQueue.backPressure == MPSCRing.BackPressure.Drop) {
+                // that's what was asked for; it's counted in getTaskQueueDropCount
+                break;
+            }
+            // Interrupted while waiting for room. Losing the task (which may be creating a texture) would be worse than finishing the wait.
+            interrupted |= Thread.interrupted();
+            if (shutdownPrimary)
+                break;
         }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Approximate amount of tasks waiting for the VOPEKS thread.
+     */
+    public int getTaskQueueDepth() {
+        return taskQueue.size();
+    }
+
+    /**
+     * Number of times putTask had to wait because the task queue was full.
+     */
+    public long getTaskQueueStallCount() {
+        return taskQueue.getStallCount();
+    }
+
+    /**
+     * Total time spent by putTask waiting for the task queue, in nanoseconds.
+     */
+    public long getTaskQueueStallNanos() {
+        return taskQueue.getStallNanos();
+    }
+
+    /**
+     * Number of tasks that putTask dropped (only happens with the Drop policy).
+     */
+    public long getTaskQueueDropCount() {
+        return taskQueue.getDropCount();
+    }
+
+    /**
+     * Number of batches that deferred batching managed to avoid, summed across all surfaces.
+     */
+    public long getDeferredBatchesSaved() {
+        return statDeferredBatchesSaved.get();
+    }
+
+    void addDeferredBatchesSaved(long count) {
+        statDeferredBatchesSaved.addAndGet(count);
     }
 
     public void putCallback(Runnable object) {
@@ -118,6 +199,9 @@ public final class Vopeks {
                 // this task also counts as a task
                 tasksBetweenFlushes--;
                 System.out.println("VOPEKS: Tasks between flushes: " + tasksBetweenFlushes);
+                System.out.println("VOPEKS: Queue depth " + taskQueue.size() + ", stalls " + taskQueue.getStallCount() + " (" + (taskQueue.getStallNanos() / 1000000) + "ms), dropped " + taskQueue.getDropCount());
+                System.out.println("VOPEKS: Batches saved by deferred batching: " + statDeferredBatchesSaved.get());
+                System.out.println("VOPEKS: Readback rects " + readback.getRectCount() + " in " + readback.getReadCount() + " reads");
                 tasksBetweenFlushes = 0;
             });
         }
@@ -155,14 +239,17 @@ public final class Vopeks {
         // Start shutdown, then wake up the thread.
         shutdownPrimary = true;
         vopeksCBThread.shutdown = true;
+        // This can't be dropped (unlike putTask), as the thread would never wake up.
+        while (!taskQueue.offer((instance) -> {}))
+            Thread.yield();
         try {
-            taskQueue.put((instance) -> {});
             vopeksThread.join();
         } catch (InterruptedException ie) {}
         try {
             cbQueue.put(EmptyLambdas.emptyRunnable);
             vopeksCBThread.join();
         } catch (InterruptedException ie) {}
+        readback.shutdown();
     }
 
     public static interface ITask {
@@ -43,14 +43,42 @@ class VopeksBatch implements ITask {
     @SuppressWarnings("null")
     @NonNull float[] megabuffer;
     int verticesOfs, coloursOfs, texCoordsOfs;
+    /**
+     * If not null, the vertex data is in this slab rather than the megabuffer.
+     * In this case directStart is the first vertex in the slab.
+     */
+    @Nullable VopeksVertexSlab directSlab;
+    int directStart;
     boolean hasColours;
     boolean cropEssential;
+    /**
+     * Deferred batches (see VopeksBatchingSurface.setDeferredBatching) own their megabuffer while being built.
+     * It's laid out planar with room for deferredCapacity vertices.
+     * The bounds are the union of the (cropped) bounding boxes of every group in the batch, in pixels.
+     */
+    boolean deferred;
+    int deferredCapacity;
+    float boundL, boundU, boundR, boundD;
+    /**
+     * Set for CommandList replays, where the megabuffer belongs to the list (and is in pixel coordinates).
+     * The megabuffer isn't returned to the pool, and the matrix converts to normalized coordinates.
+     */
+    boolean sharedMegabuffer;
+    @Nullable float[] matrix;
+
+    /**
+     * Returns true if the deferred bounds overlap the given rectangle.
+     */
+    boolean boundsOverlap(float l, float u, float r, float d) {
+        return l < boundR && r > boundL && u < boundD && d > boundU;
+    }
 
     @Override
     public void run(Instance instance) {
         BadGPU.Texture screen = parent.getTextureFromTask();
         if (screen == null) {
             System.err.println("VopeksBatchingSurface: Texture disappeared from " + parent + ". Someone try something silly?");
+            release();
             return;
         }
 
@@ -66,18 +94,71 @@ class VopeksBatch implements ITask {
 
         drawFlags |= drawFlagsEx;
 
+        if (directSlab != null && !vopeks.directVertexDraw)
+            convertFromSlab();
+
+        VopeksVertexSlab slab = directSlab;
+        if (slab != null) {
+            try {
+                BadGPUUnsafe.drawGeomNoDSDirect(screen.pointer, BadGPU.SessionFlags.MaskRGBA | BadGPU.SessionFlags.Scissor,
+                        cropL, cropU, cropR - cropL, cropD - cropU,
+                        drawFlags,
+                        2, slab.buffer, verticesOfs, hasColours ? slab.buffer : null, coloursOfs, 2, tx == null ? null : slab.buffer, texCoordsOfs,
+                        BadGPU.PrimitiveType.Triangles.value, 1,
+                        0, vertexCount, null, 0,
+                        matrix, 0,
+                        0, 0, parent.width, parent.height,
+                        tx2, null, 0,
+                        null, 0, alphaComp, 0,
+                        blendMode);
+                release();
+                return;
+            } catch (UnsatisfiedLinkError ule) {
+                System.err.println("VopeksBatch: Natives don't have drawGeomNoDSDirect, falling back to copying");
+                vopeks.directVertexDraw = false;
+                convertFromSlab();
+            }
+        }
         BadGPUUnsafe.drawGeomNoDS(screen.pointer, BadGPU.SessionFlags.MaskRGBA | BadGPU.SessionFlags.Scissor,
                 cropL, cropU, cropR - cropL, cropD - cropU,
                 drawFlags,
                 2, megabuffer, verticesOfs, hasColours ? megabuffer : null, coloursOfs, 2, tx == null ? null : megabuffer, texCoordsOfs,
                 BadGPU.PrimitiveType.Triangles.value, 1,
                 0, vertexCount, null, 0,
-                null, 0,
+                matrix, 0,
                 0, 0, parent.width, parent.height,
                 tx2, null, 0,
                 null, 0, alphaComp, 0,
                 blendMode);
-        vopeks.floatPool.finish(megabuffer);
+        release();
+    }
+
+    /**
+     * Fallback: turns a slab batch into a megabuffer batch.
+     */
+    private void convertFromSlab() {
+        VopeksVertexSlab slab = directSlab;
+        if (slab == null)
+            return;
+        megabuffer = vopeks.floatPool.get(vertexCount * 8);
+        slab.copyOut(megabuffer, directStart, vertexCount, hasColours, tex != null);
+        slab.unref();
+        directSlab = null;
+        verticesOfs = 0;
+        coloursOfs = vertexCount * 2;
+        texCoordsOfs = vertexCount * 6;
+    }
+
+    /**
+     * Returns vertex storage and the batch itself to their pools.
+     */
+    private void release() {
+        VopeksVertexSlab slab = directSlab;
+        if (slab != null) {
+            slab.unref();
+        } else if (megabuffer != null && !sharedMegabuffer) {
+            vopeks.floatPool.finish(megabuffer);
+        }
         if (srcPool != null)
             srcPool.finish(this);
     }
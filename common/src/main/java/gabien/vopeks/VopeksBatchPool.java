@@ -48,6 +48,16 @@ class VopeksBatchPool extends ObjectPool<VopeksBatch> {
         element.verticesOfs = 0;
         element.coloursOfs = 0;
         element.texCoordsOfs = 0;
+        element.directSlab = null;
+        element.directStart = 0;
         element.hasColours = false;
+        element.deferred = false;
+        element.deferredCapacity = 0;
+        element.boundL = 0;
+        element.boundU = 0;
+        element.boundR = 0;
+        element.boundD = 0;
+        element.sharedMegabuffer = false;
+        element.matrix = null;
     }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@
  */
 package gabien.vopeks;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 import org.eclipse.jdt.annotation.NonNull;
@@ -14,6 +15,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import gabien.natives.BadGPU;
 import gabien.natives.BadGPU.Texture;
 import gabien.natives.BadGPUUnsafe;
+import gabien.render.CommandList;
 import gabien.render.IGrDriver;
 import gabien.render.IImage;
 import gabien.render.ITexRegion;
@@ -37,30 +39,76 @@ public final class VopeksBatchingSurface extends IGrDriver {
     private final VopeksBatchPool batchPool;
     private @Nullable VopeksBatch currentBatch = null;
     private final int maxVerticesInBatch;
-    private final float[] stagingV;
-    private final float[] stagingC;
-    private final float[] stagingT;
+    // Staging is allocated lazily, as the direct vertex path doesn't use it.
+    private float[] stagingV = new float[0];
+    private float[] stagingC = new float[0];
+    private float[] stagingT = new float[0];
     private final float halfWF, halfHF;
 
+    /**
+     * Direct vertex path state. If the pool is null, the direct path is disabled.
+     * The current slab is written to at slabCursor (in vertices).
+     */
+    private final @Nullable VopeksVertexSlab.Pool slabPool;
+    private @Nullable VopeksVertexSlab currentSlab;
+    private int slabCursor;
+
     /**
      * State of the crop registers for the group that is being prepared right now.
      * Use only in sync.
      */
     private int upcomingCropL, upcomingCropU, upcomingCropR, upcomingCropD;
+    private boolean upcomingCropEssential;
+
+    /**
+     * Scratch space for rawDrawCommandList.
+     */
+    private final int[] replayCrop = new int[5];
+
+    /**
+     * Deferred batching state. If deferredBatches is null, deferred batching is off.
+     * Otherwise, the first deferredCount entries are the open batches, in submission order.
+     */
+    private @Nullable VopeksBatch[] deferredBatches;
+    private int deferredCount;
+    private long deferredBatchesSaved;
+
+    /**
+     * Bounding box (in pixels) of the group that is being prepared right now. Only calculated in deferred mode.
+     */
+    private float upcomingBoundL, upcomingBoundU, upcomingBoundR, upcomingBoundD;
+
+    /**
+     * Maximum open batches in deferred mode. Past this, everything is flushed.
+     * This also bounds how far back a group will search for a batch to join.
+     */
+    private static final int MAX_DEFERRED_BATCHES = 32;
+    /**
+     * Initial vertex capacity of a deferred batch's megabuffer (128 * 8 floats fits the 1024 pool).
+     */
+    private static final int DEFERRED_INITIAL_VERTICES = 128;
 
     /**
      * Creates a new texture for rendering, and possibly initializes it.
      */
     public VopeksBatchingSurface(Vopeks vopeks, @Nullable String id, int w, int h, @Nullable int[] init, int maxVerticesInBatch) {
+        this(vopeks, id, w, h, init, maxVerticesInBatch, false);
+    }
+
+    /**
+     * Creates a new texture for rendering, and possibly initializes it.
+     * If directVertices is set, vertices are written straight into off-heap slabs, which BadGPU reads in-place.
+     * This skips the staging copy and means the GC isn't held up by pinned arrays during the draw.
+     * (If the natives don't support this, it quietly falls back to the usual path.)
+     */
+    public VopeksBatchingSurface(Vopeks vopeks, @Nullable String id, int w, int h, @Nullable int[] init, int maxVerticesInBatch, boolean directVertices) {
         super(id, w, h);
         this.vopeks = vopeks;
         batchPool = new VopeksBatchPool(vopeks, this, 1);
         if (maxVerticesInBatch < 6)
             throw new RuntimeException("To function properly, there must be at least 6 vertices supported per batch.");
         this.maxVerticesInBatch = maxVerticesInBatch;
-        stagingV = new float[maxVerticesInBatch * 4];
-        stagingC = new float[maxVerticesInBatch * 4];
-        stagingT = new float[maxVerticesInBatch * 4];
+        slabPool = directVertices ? new VopeksVertexSlab.Pool(maxVerticesInBatch) : null;
         vopeks.putTask((instance) -> {
             texture = instance.newTexture(w, h, BadGPU.TextureLoadFormat.ARGBI32_SA, init, 0);
         });
@@ -68,6 +116,26 @@ public final class VopeksBatchingSurface extends IGrDriver {
         halfHF = h / 2.0f;
     }
 
+    /**
+     * Enables or disables deferred batching.
+     * Normally, a group can only join the batch that's currently open, so A-B-A-B state ping-pong is four batches.
+     * In deferred mode, a group can join any open batch with matching state,
+     *  as long as its bounding box doesn't overlap any of the batches it would be moved in front of.
+     * All open batches are then submitted together in order at batchFlush, so the output is the same.
+     * Deferred batches don't use the direct vertex path.
+     */
+    public synchronized void setDeferredBatching(boolean deferred) {
+        batchFlush();
+        deferredBatches = deferred ? new VopeksBatch[MAX_DEFERRED_BATCHES] : null;
+    }
+
+    /**
+     * Returns the number of batches deferred batching has avoided on this surface.
+     */
+    public synchronized long getDeferredBatchesSaved() {
+        return deferredBatchesSaved;
+    }
+
     @Override
     public void getPixelsAsync(int x, int y, int w, int h, BadGPU.TextureLoadFormat format, @NonNull int[] data, int dataOfs, @NonNull Runnable onDone) {
         VopeksImage.getPixelsAsync(vopeks, this, x, y, w, h, format, data, dataOfs, onDone);
@@ -78,6 +146,58 @@ public final class VopeksBatchingSurface extends IGrDriver {
         VopeksImage.getPixelsAsync(vopeks, this, x, y, w, h, format, data, dataOfs, onDone);
     }
 
+    /**
+     * Replays a CommandList by handing its vertex data straight to BadGPU, one task per texture run.
+     * The translation/scale and conversion to normalized coordinates are done by the matrix.
+     */
+    @Override
+    public synchronized void rawDrawCommandList(CommandList list, float tx, float ty, float sx, float sy, int scL, int scU, int scR, int scD) {
+        // Anything already batched goes first, as does anything that depends on us.
+        batchFlush();
+        batchReferenceBarrier();
+        float[] matrix = null;
+        int[] crop = replayCrop;
+        for (CommandList.Segment seg : list.segments) {
+            if (!CommandList.transformCrop(seg, tx, ty, sx, sy, scL, scU, scR, scD, crop))
+                continue;
+            if (matrix == null) {
+                matrix = new float[] {
+                    sx / halfWF, 0, 0, 0,
+                    0, sy / halfHF, 0, 0,
+                    0, 0, 1, 0,
+                    (tx - halfWF) / halfWF, (ty - halfHF) / halfHF, 0, 1
+                };
+            }
+            int runStart = 0;
+            for (int i = 0; i < seg.runTex.length; i++) {
+                int runEnd = seg.runEnd[i];
+                IImage img = seg.runTex[i];
+                // Changes to the texture have to be submitted before we draw from it.
+                if (img != null)
+                    img.batchFlush();
+                VopeksBatch batch = batchPool.get();
+                batch.cropEssential = crop[4] != 0;
+                batch.cropL = crop[0];
+                batch.cropU = crop[1];
+                batch.cropR = crop[2];
+                batch.cropD = crop[3];
+                batch.blendMode = seg.blendMode;
+                batch.drawFlagsEx = seg.drawFlagsEx;
+                batch.tex = img;
+                batch.hasColours = seg.hasColours;
+                batch.vertexCount = runEnd - runStart;
+                batch.megabuffer = seg.data;
+                batch.sharedMegabuffer = true;
+                batch.matrix = matrix;
+                batch.verticesOfs = runStart * 2;
+                batch.coloursOfs = (seg.vertexCount * 2) + (runStart * 4);
+                batch.texCoordsOfs = (seg.vertexCount * 6) + (runStart * 2);
+                vopeks.putTask(batch);
+                runStart = runEnd;
+            }
+        }
+    }
+
     @Override
     public synchronized void clearAll(int r, int g, int b, int a) {
         batchFlush();
@@ -113,6 +233,10 @@ public final class VopeksBatchingSurface extends IGrDriver {
             batchReferenceBarrier();
             // This is important! Otherwise, we leak batch resources.
             batchFlush();
+            VopeksVertexSlab slab = currentSlab;
+            currentSlab = null;
+            if (slab != null)
+                slab.unref();
             vopeks.putTask((instance) -> {
                 if (texture != null) {
                     texture.dispose();
@@ -137,6 +261,7 @@ public final class VopeksBatchingSurface extends IGrDriver {
         cropD = cropD < 0 ? 0 : (cropD > height ? height : cropD);
         if (cropEssential && (cropR <= cropL || cropD <= cropU))
             return true;
+        upcomingCropEssential = cropEssential;
         upcomingCropL = cropL;
         upcomingCropU = cropU;
         upcomingCropR = cropR;
@@ -144,6 +269,38 @@ public final class VopeksBatchingSurface extends IGrDriver {
         return false;
     }
 
+    /**
+     * Sets the upcoming bounding box from a triangle. Only needed in deferred mode.
+     */
+    private void setupBounds(float x0, float y0, float x1, float y1, float x2, float y2) {
+        setupBounds(Math.min(x0, Math.min(x1, x2)), Math.min(y0, Math.min(y1, y2)), Math.max(x0, Math.max(x1, x2)), Math.max(y0, Math.max(y1, y2)));
+    }
+
+    /**
+     * Sets the upcoming bounding box from a quad. Only needed in deferred mode.
+     */
+    private void setupBounds(float x0, float y0, float x1, float y1, float x2, float y2, float x3, float y3) {
+        setupBounds(Math.min(Math.min(x0, x1), Math.min(x2, x3)), Math.min(Math.min(y0, y1), Math.min(y2, y3)), Math.max(Math.max(x0, x1), Math.max(x2, x3)), Math.max(Math.max(y0, y1), Math.max(y2, y3)));
+    }
+
+    /**
+     * Clips the upcoming bounding box to what can actually be drawn.
+     * Only an essential crop is used here; a non-essential crop may end up looser than given.
+     */
+    private void setupBounds(float l, float u, float r, float d) {
+        float cL = 0, cU = 0, cR = width, cD = height;
+        if (upcomingCropEssential) {
+            cL = upcomingCropL;
+            cU = upcomingCropU;
+            cR = upcomingCropR;
+            cD = upcomingCropD;
+        }
+        upcomingBoundL = Math.max(l, cL);
+        upcomingBoundU = Math.max(u, cU);
+        upcomingBoundR = Math.min(r, cR);
+        upcomingBoundD = Math.min(d, cD);
+    }
+
     /**
      * Batches an uncoloured, textured triangle.
      * cropEssential being false implies that the scissor bounds can't be more cropped than what is given, but can be less.
@@ -152,6 +309,8 @@ public final class VopeksBatchingSurface extends IGrDriver {
     public final synchronized void rawBatchXYST(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float x1, float y1, float s1, float t1, float x2, float y2, float s2, float t2) {
         if (setupAndCheckCrop(cropEssential, cropL, cropU, cropR, cropD))
             return;
+        if (deferredBatches != null)
+            setupBounds(x0, y0, x1, y1, x2, y2);
         IImgRegion tex = batchStartGroup(3, false, cropEssential, blendMode, drawFlagsEx, iU);
         batchWriteXYSTRGBA(x0, y0, s0, t0, 1, 1, 1, 1, tex);
         batchWriteXYSTRGBA(x1, y1, s1, t1, 1, 1, 1, 1, tex);
@@ -166,6 +325,8 @@ public final class VopeksBatchingSurface extends IGrDriver {
     public final synchronized void rawBatchXYST(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float x1, float y1, float s1, float t1, float x2, float y2, float s2, float t2, float x3, float y3, float s3, float t3) {
         if (setupAndCheckCrop(cropEssential, cropL, cropU, cropR, cropD))
             return;
+        if (deferredBatches != null)
+            setupBounds(x0, y0, x1, y1, x2, y2, x3, y3);
         IImgRegion tex = batchStartGroup(6, false, cropEssential, blendMode, drawFlagsEx, iU);
         batchWriteXYSTRGBA(x0, y0, s0, t0, 1, 1, 1, 1, tex);
         batchWriteXYSTRGBA(x1, y1, s1, t1, 1, 1, 1, 1, tex);
@@ -183,6 +344,8 @@ public final class VopeksBatchingSurface extends IGrDriver {
     public final synchronized void rawBatchXYSTRGBA(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float r0, float g0, float b0, float a0, float x1, float y1, float s1, float t1, float r1, float g1, float b1, float a1, float x2, float y2, float s2, float t2, float r2, float g2, float b2, float a2) {
         if (setupAndCheckCrop(cropEssential, cropL, cropU, cropR, cropD))
             return;
+        if (deferredBatches != null)
+            setupBounds(x0, y0, x1, y1, x2, y2);
         IImgRegion tex = batchStartGroup(3, true, cropEssential, blendMode, drawFlagsEx, iU);
         batchWriteXYSTRGBA(x0, y0, s0, t0, r0, g0, b0, a0, tex);
         batchWriteXYSTRGBA(x1, y1, s1, t1, r1, g1, b1, a1, tex);
@@ -197,6 +360,8 @@ public final class VopeksBatchingSurface extends IGrDriver {
     public final synchronized void rawBatchXYSTRGBA(boolean cropEssential, int cropL, int cropU, int cropR, int cropD, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU, float x0, float y0, float s0, float t0, float r0, float g0, float b0, float a0, float x1, float y1, float s1, float t1, float r1, float g1, float b1, float a1, float x2, float y2, float s2, float t2, float r2, float g2, float b2, float a2, float x3, float y3, float s3, float t3, float r3, float g3, float b3, float a3) {
         if (setupAndCheckCrop(cropEssential, cropL, cropU, cropR, cropD))
             return;
+        if (deferredBatches != null)
+            setupBounds(x0, y0, x1, y1, x2, y2, x3, y3);
         IImgRegion tex = batchStartGroup(6, true, cropEssential, blendMode, drawFlagsEx, iU);
         batchWriteXYSTRGBA(x0, y0, s0, t0, r0, g0, b0, a0, tex);
         batchWriteXYSTRGBA(x1, y1, s1, t1, r1, g1, b1, a1, tex);
@@ -224,12 +389,26 @@ public final class VopeksBatchingSurface extends IGrDriver {
         // If we delayed until the flush, then surface-A-flush would be the point where surface-B-group-A is notified,
         //  and by that point it's too late to split the two groups.
         batchReferenceBarrier();
+        VopeksBatch[] open = deferredBatches;
+        if (open != null)
+            return batchStartGroupDeferred(open, vertices, hasColours, cropEssential, blendMode, drawFlagsEx, iU);
         VopeksBatch batch = currentBatch;
         if (batch != null)
             if ((batch.vertexCount + vertices) > maxVerticesInBatch) {
                 batchFlush();
                 batch = null;
             }
+        VopeksVertexSlab slab = currentSlab;
+        int slabUsed = slabCursor;
+        if (batch != null && batch.directSlab == slab)
+            slabUsed += batch.vertexCount;
+        if (slab != null && (slabUsed + vertices) > slab.vertices) {
+            // Out of slab; the batch can't continue in it, so move to a fresh one.
+            batchFlush();
+            batch = null;
+            currentSlab = null;
+            slab.unref();
+        }
         // ok, so now that the current batch is dealt with, do the pick here
         IImgRegion tex = null;
         IImage srf = null;
@@ -248,40 +427,193 @@ public final class VopeksBatchingSurface extends IGrDriver {
             // If something happens, it'll reference-barrier, which will flush us, so we'll re-reference next group.
             if (srf != null)
                 srf.batchReference(this);
-            batch = currentBatch = batchPool.get();
-            batch.hasColours = hasColours;
-            batch.cropEssential = cropEssential;
-            if (cropEssential) {
-                batch.cropL = upcomingCropL;
-                batch.cropU = upcomingCropU;
-                batch.cropR = upcomingCropR;
-                batch.cropD = upcomingCropD;
+            batch = currentBatch = batchNew(hasColours, cropEssential, blendMode, drawFlagsEx, srf);
+            batchSetupStorage(batch);
+        }
+        if (hasColours && !batch.hasColours) {
+            // upgrade batch to having colours
+            VopeksVertexSlab batchSlab = batch.directSlab;
+            if (batchSlab != null) {
+                FloatBuffer fb = batchSlab.buffer;
+                int end = batch.coloursOfs + (batch.vertexCount * 4);
+                for (int i = batch.coloursOfs; i < end; i++)
+                    fb.put(i, 1.0f);
             } else {
-                batch.cropL = 0;
-                batch.cropU = 0;
-                batch.cropR = width;
-                batch.cropD = height;
+                Arrays.fill(stagingC, 0, batch.vertexCount * 4, 1.0f);
+            }
+            batch.hasColours = true;
+        }
+        return tex;
+    }
+
+    /**
+     * Deferred-mode equivalent of batchStartGroup (which has already done the reference barrier).
+     * Searches back through the open batches for one to join.
+     * Moving a group back past a batch is only allowed if they don't overlap, so that stops the search.
+     */
+    private @Nullable IImgRegion batchStartGroupDeferred(@Nullable VopeksBatch[] open, int vertices, boolean hasColours, boolean cropEssential, int blendMode, int drawFlagsEx, @Nullable ITexRegion iU) {
+        VopeksBatch batch = null;
+        IImgRegion tex = null;
+        IImage srf = null;
+        int batchIndex = -1;
+        for (int i = deferredCount - 1; i >= 0; i--) {
+            VopeksBatch candidate = open[i];
+            if ((candidate.vertexCount + vertices) <= maxVerticesInBatch) {
+                // pick per-candidate, so replicated textures can follow whichever batch they join
+                IImgRegion candidateTex = iU != null ? iU.pickImgRegion(candidate.tex) : null;
+                IImage candidateSrf = candidateTex != null ? candidateTex.getSurface() : null;
+                if (candidate.matchesState(cropEssential, upcomingCropL, upcomingCropU, upcomingCropR, upcomingCropD, blendMode, drawFlagsEx, candidateSrf)) {
+                    batch = candidate;
+                    tex = candidateTex;
+                    srf = candidateSrf;
+                    batchIndex = i;
+                    break;
+                }
+            }
+            if (candidate.boundsOverlap(upcomingBoundL, upcomingBoundU, upcomingBoundR, upcomingBoundD))
+                break;
+        }
+        if (batch == null) {
+            if (deferredCount == open.length)
+                batchFlush();
+            if (iU != null)
+                tex = iU.pickImgRegion(deferredCount != 0 ? open[deferredCount - 1].tex : null);
+            if (tex != null)
+                srf = tex.getSurface();
+            if (srf != null)
+                srf.batchReference(this);
+            batch = batchNew(hasColours, cropEssential, blendMode, drawFlagsEx, srf);
+            batch.deferred = true;
+            float[] megabuffer = vopeks.floatPool.get(DEFERRED_INITIAL_VERTICES * 8);
+            batchSetupDeferredStorage(batch, megabuffer);
+            batch.boundL = upcomingBoundL;
+            batch.boundU = upcomingBoundU;
+            batch.boundR = upcomingBoundR;
+            batch.boundD = upcomingBoundD;
+            open[deferredCount++] = batch;
+        } else {
+            if (batchIndex != deferredCount - 1) {
+                // Without reordering, this group would have needed a new batch.
+                deferredBatchesSaved++;
+                vopeks.addDeferredBatchesSaved(1);
+            }
+            batch.boundL = Math.min(batch.boundL, upcomingBoundL);
+            batch.boundU = Math.min(batch.boundU, upcomingBoundU);
+            batch.boundR = Math.max(batch.boundR, upcomingBoundR);
+            batch.boundD = Math.max(batch.boundD, upcomingBoundD);
+            int needed = batch.vertexCount + vertices;
+            if (needed > batch.deferredCapacity) {
+                // Grow, and move the existing regions to their new places.
+                float[] old = batch.megabuffer;
+                int oldV = batch.verticesOfs, oldC = batch.coloursOfs, oldT = batch.texCoordsOfs;
+                batchSetupDeferredStorage(batch, vopeks.floatPool.get(Math.max(needed, batch.deferredCapacity * 2) * 8));
+                System.arraycopy(old, oldV, batch.megabuffer, batch.verticesOfs, batch.vertexCount * 2);
+                if (batch.hasColours)
+                    System.arraycopy(old, oldC, batch.megabuffer, batch.coloursOfs, batch.vertexCount * 4);
+                System.arraycopy(old, oldT, batch.megabuffer, batch.texCoordsOfs, batch.vertexCount * 2);
+                vopeks.floatPool.finish(old);
             }
-            batch.blendMode = blendMode;
-            batch.drawFlagsEx = drawFlagsEx;
-            batch.tex = srf;
         }
         if (hasColours && !batch.hasColours) {
-            // upgrade batch to having colours
-            Arrays.fill(stagingC, 0, batch.vertexCount * 4, 1.0f);
+            Arrays.fill(batch.megabuffer, batch.coloursOfs, batch.coloursOfs + (batch.vertexCount * 4), 1.0f);
             batch.hasColours = true;
         }
+        currentBatch = batch;
         return tex;
     }
 
+    /**
+     * Lays out a deferred batch's megabuffer in planar form, using all of it.
+     */
+    private void batchSetupDeferredStorage(VopeksBatch batch, float[] megabuffer) {
+        int capacity = megabuffer.length / 8;
+        batch.megabuffer = megabuffer;
+        batch.deferredCapacity = capacity;
+        batch.verticesOfs = 0;
+        batch.coloursOfs = capacity * 2;
+        batch.texCoordsOfs = capacity * 6;
+    }
+
+    /**
+     * Gets a batch from the pool and sets up its state (but not vertex storage).
+     */
+    private VopeksBatch batchNew(boolean hasColours, boolean cropEssential, int blendMode, int drawFlagsEx, @Nullable IImage srf) {
+        VopeksBatch batch = batchPool.get();
+        batch.hasColours = hasColours;
+        batch.cropEssential = cropEssential;
+        if (cropEssential) {
+            batch.cropL = upcomingCropL;
+            batch.cropU = upcomingCropU;
+            batch.cropR = upcomingCropR;
+            batch.cropD = upcomingCropD;
+        } else {
+            batch.cropL = 0;
+            batch.cropU = 0;
+            batch.cropR = width;
+            batch.cropD = height;
+        }
+        batch.blendMode = blendMode;
+        batch.drawFlagsEx = drawFlagsEx;
+        batch.tex = srf;
+        return batch;
+    }
+
+    /**
+     * Decides where a new batch's vertices go: a slab (direct path) or staging.
+     */
+    private void batchSetupStorage(VopeksBatch batch) {
+        if (slabPool != null && vopeks.directVertexDraw) {
+            VopeksVertexSlab slab = currentSlab;
+            if (slab == null) {
+                slab = currentSlab = slabPool.get();
+                slab.ref();
+                slabCursor = 0;
+            }
+            slab.ref();
+            batch.directSlab = slab;
+            batch.directStart = slabCursor;
+            batch.verticesOfs = slabCursor * 2;
+            batch.coloursOfs = slab.coloursBase + (slabCursor * 4);
+            batch.texCoordsOfs = slab.texCoordsBase + (slabCursor * 2);
+        } else if (stagingV.length == 0) {
+            stagingV = new float[maxVerticesInBatch * 4];
+            stagingC = new float[maxVerticesInBatch * 4];
+            stagingT = new float[maxVerticesInBatch * 4];
+        }
+    }
+
     @Override
     public synchronized void batchFlush() {
+        VopeksBatch[] open = deferredBatches;
+        if (open != null) {
+            // Deferred batches already have their own megabuffers, so just submit them in order
+            int count = deferredCount;
+            deferredCount = 0;
+            currentBatch = null;
+            for (int i = 0; i < count; i++) {
+                VopeksBatch batch = open[i];
+                open[i] = null;
+                IImage batchTex = batch.tex;
+                vopeks.putTask(batch);
+                if (batchTex != null)
+                    batchTex.batchUnreference(this);
+            }
+            return;
+        }
         // Now actually do the batching thing
         VopeksBatch batch = currentBatch;
         currentBatch = null;
         if (batch == null)
             return;
         IImage batchTex = batch.tex;
+        if (batch.directSlab != null) {
+            // Vertices are already in place; claim them
+            slabCursor += batch.vertexCount;
+            vopeks.putTask(batch);
+            if (batchTex != null)
+                batchTex.batchUnreference(this);
+            return;
+        }
         // Sizes
         int groupVLen = batch.vertexCount * 2;
         int groupCLen = batch.vertexCount * 4;
@@ -321,6 +653,47 @@ public final class VopeksBatchingSurface extends IGrDriver {
     private void batchWriteXYSTRGBA(float x, float y, float s, float t, float r, float g, float b, float a, @Nullable IImgRegion tf) {
         @SuppressWarnings("null")
         @NonNull VopeksBatch batch = currentBatch;
+        if (batch.deferred) {
+            float[] mb = batch.megabuffer;
+            int vertexBase2 = batch.verticesOfs + (batch.vertexCount * 2);
+            mb[vertexBase2] = (x - halfWF) / halfWF;
+            mb[vertexBase2 + 1] = (y - halfHF) / halfHF;
+            if (tf != null) {
+                int texBase2 = batch.texCoordsOfs + (batch.vertexCount * 2);
+                mb[texBase2] = tf.getS(s, t);
+                mb[texBase2 + 1] = tf.getT(s, t);
+            }
+            if (batch.hasColours) {
+                int colBase4 = batch.coloursOfs + (batch.vertexCount * 4);
+                mb[colBase4] = r;
+                mb[colBase4 + 1] = g;
+                mb[colBase4 + 2] = b;
+                mb[colBase4 + 3] = a;
+            }
+            batch.vertexCount++;
+            return;
+        }
+        VopeksVertexSlab slab = batch.directSlab;
+        if (slab != null) {
+            FloatBuffer fb = slab.buffer;
+            int vertexBase2 = batch.verticesOfs + (batch.vertexCount * 2);
+            fb.put(vertexBase2, (x - halfWF) / halfWF);
+            fb.put(vertexBase2 + 1, (y - halfHF) / halfHF);
+            if (tf != null) {
+                int texBase2 = batch.texCoordsOfs + (batch.vertexCount * 2);
+                fb.put(texBase2, tf.getS(s, t));
+                fb.put(texBase2 + 1, tf.getT(s, t));
+            }
+            if (batch.hasColours) {
+                int colBase4 = batch.coloursOfs + (batch.vertexCount * 4);
+                fb.put(colBase4, r);
+                fb.put(colBase4 + 1, g);
+                fb.put(colBase4 + 2, b);
+                fb.put(colBase4 + 3, a);
+            }
+            batch.vertexCount++;
+            return;
+        }
         int vertexBase2 = batch.vertexCount * 2;
         int vertexBase4 = batch.vertexCount * 4;
         stagingV[vertexBase2] = (x - halfWF) / halfWF;
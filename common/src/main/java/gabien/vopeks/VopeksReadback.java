@@ -0,0 +1,389 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.vopeks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.natives.BadGPU;
+import gabien.natives.BadGPUUnsafe;
+import gabien.render.IImage;
+import gabien.uslx.append.AsyncResult;
+import gabien.uslx.append.ObjectPool;
+import gabien.uslx.append.Rect;
+import gabien.uslx.append.TimeLogger;
+
+/**
+ * Pooled asynchronous pixel readback.
+ * Several rectangles of one image are read in a single VOPEKS task.
+ * Rectangles that are close together are coalesced into one readPixels over their bounding box.
+ * The pixels land in pooled staging buffers (int arrays, or direct ByteBuffers) that are returned on Result.close.
+ * Each pool only keeps a bounded amount of idle buffers, and they're all dropped when VOPEKS shuts down.
+ * Results are delivered on the VOPEKS callback thread, same as IImage.getPixelsAsync.
+ * Created 18th October, 2026.
+ */
+public final class VopeksReadback {
+    /**
+     * Coalescing is allowed as long as the bounding box isn't more than this many times the pixels actually wanted.
+     */
+    private static final int COALESCE_WASTE = 2;
+    /**
+     * Staging buffers are pooled in power-of-two sizes (in bytes) from 1 << MIN_SHIFT to 1 << MAX_SHIFT.
+     * Anything bigger is allocated on demand and dropped afterwards.
+     */
+    private static final int MIN_SHIFT = 12, MAX_SHIFT = 24;
+    /**
+     * Each pool keeps at most this many bytes of idle staging buffers (but always at least one buffer).
+     */
+    private static final int RETAIN_BYTES = 1 << 22;
+
+    public final Vopeks vopeks;
+
+    private final StagingPool[] arrayPools = new StagingPool[MAX_SHIFT + 1];
+    private final StagingPool[] directPools = new StagingPool[MAX_SHIFT + 1];
+    /**
+     * Cleared if the natives turn out to be missing BadGPUUnsafe.readPixelsDirect.
+     */
+    private volatile boolean directReadPixels = true;
+
+    private final AtomicLong statRequests = new AtomicLong();
+    private final AtomicLong statRects = new AtomicLong();
+    private final AtomicLong statReads = new AtomicLong();
+
+    VopeksReadback(Vopeks vopeks) {
+        this.vopeks = vopeks;
+        for (int i = MIN_SHIFT; i <= MAX_SHIFT; i++) {
+            arrayPools[i] = new StagingPool(1 << i, false);
+            directPools[i] = new StagingPool(1 << i, true);
+        }
+    }
+
+    /**
+     * Reads the given rectangles of an image.
+     * If direct is set, pixels are delivered in direct ByteBuffers (read in-place if the natives support it).
+     * Otherwise, they're delivered in int arrays, which requires a 4-byte format.
+     */
+    public AsyncResult<Result> read(IImage image, BadGPU.TextureLoadFormat format, boolean direct, Rect... rects) {
+        int bpp = (int) BadGPUUnsafe.pixelsSize(format.value, 1, 1);
+        if (!direct && bpp != 4)
+            throw new IllegalArgumentException("Readback to int arrays needs a 4-byte format, not " + format);
+        for (Rect r : rects)
+            if (r.x < 0 || r.y < 0 || r.right > image.width || r.bottom > image.height || r.width <= 0 || r.height <= 0)
+                throw new IllegalArgumentException("Readback rectangle " + r + " not within " + image);
+        statRequests.incrementAndGet();
+        statRects.addAndGet(rects.length);
+        // Work out the reads.
+        ArrayList<Cluster> clusters = new ArrayList<>();
+        int[] rectCluster = new int[rects.length];
+        for (int i = 0; i < rects.length; i++) {
+            Rect r = rects[i];
+            long area = (long) r.width * r.height;
+            int found = -1;
+            for (int j = 0; j < clusters.size(); j++) {
+                Cluster c = clusters.get(j);
+                int l = Math.min(c.l, r.x), u = Math.min(c.u, r.y);
+                int rr = Math.max(c.r, r.right), d = Math.max(c.d, r.bottom);
+                long mergedArea = ((long) (rr - l)) * (d - u);
+                if (mergedArea <= (c.wanted + area) * COALESCE_WASTE) {
+                    c.l = l;
+                    c.u = u;
+                    c.r = rr;
+                    c.d = d;
+                    c.wanted += area;
+                    found = j;
+                    break;
+                }
+            }
+            if (found == -1) {
+                Cluster c = new Cluster();
+                c.l = r.x;
+                c.u = r.y;
+                c.r = r.right;
+                c.d = r.bottom;
+                c.wanted = area;
+                found = clusters.size();
+                clusters.add(c);
+            }
+            rectCluster[i] = found;
+        }
+        final Cluster[] clusterArray = clusters.toArray(new Cluster[0]);
+        for (Cluster c : clusterArray) {
+            int bytes = (int) BadGPUUnsafe.pixelsSize(format.value, c.r - c.l, c.d - c.u);
+            c.staging = getStaging(bytes, direct);
+        }
+        final Result res = new Result(image, format, bpp, rects, rectCluster, clusterArray);
+        final AsyncResult<Result> future = new AsyncResult<>();
+        // Anything pending on the image has to be submitted first.
+        image.batchFlush();
+        vopeks.putTask((instance) -> {
+            try {
+                boolean ok = true;
+                try (TimeLogger.Source src = TimeLogger.open(vopeks.timeLoggerReadPixelsTask)) {
+                    BadGPU.Texture texture = image.getTextureFromTask();
+                    if (texture == null) {
+                        ok = false;
+                    } else {
+                        for (Cluster c : clusterArray) {
+                            readCluster(texture, format, c);
+                            statReads.incrementAndGet();
+                        }
+                    }
+                }
+                if (ok) {
+                    vopeks.putCallback(() -> {
+                        // if the caller cancelled, nobody else will close it
+                        if (!future.complete(res))
+                            res.close();
+                    });
+                } else {
+                    res.close();
+                    vopeks.putCallback(() -> future.fail(new IllegalStateException("Readback of " + image + ": no texture")));
+                }
+            } catch (Throwable t) {
+                res.close();
+                vopeks.putCallback(() -> future.fail(t));
+            }
+        });
+        return future;
+    }
+
+    private void readCluster(BadGPU.Texture texture, BadGPU.TextureLoadFormat format, Cluster c) {
+        int w = c.r - c.l, h = c.d - c.u;
+        Staging st = c.staging;
+        ByteBuffer bb = st.direct;
+        if (bb == null) {
+            texture.readPixels(c.l, c.u, w, h, format, st.array, 0);
+            return;
+        }
+        if (directReadPixels) {
+            try {
+                texture.readPixels(c.l, c.u, w, h, format, bb, 0);
+                return;
+            } catch (UnsatisfiedLinkError ule) {
+                System.err.println("VopeksReadback: Natives don't have readPixelsDirect, falling back to copying");
+                directReadPixels = false;
+            }
+        }
+        byte[] tmp = new byte[(int) BadGPUUnsafe.pixelsSize(format.value, w, h)];
+        texture.readPixels(c.l, c.u, w, h, format, tmp, 0);
+        ByteBuffer dup = bb.duplicate();
+        dup.clear();
+        dup.put(tmp);
+    }
+
+    private Staging getStaging(int bytes, boolean direct) {
+        int shift = MIN_SHIFT;
+        while ((1 << shift) < bytes && shift <= MAX_SHIFT)
+            shift++;
+        if (shift > MAX_SHIFT)
+            return new Staging(null, bytes, direct);
+        StagingPool[] pools = direct ? directPools : arrayPools;
+        return pools[shift].get();
+    }
+
+    /**
+     * Drops all idle staging buffers, and stops buffers being kept when returned. Called by Vopeks.shutdown.
+     */
+    void shutdown() {
+        for (int i = MIN_SHIFT; i <= MAX_SHIFT; i++) {
+            arrayPools[i].setCapacity(0);
+            directPools[i].setCapacity(0);
+        }
+    }
+
+    /**
+     * Number of read calls so far.
+     */
+    public long getRequestCount() {
+        return statRequests.get();
+    }
+
+    /**
+     * Number of rectangles requested so far.
+     */
+    public long getRectCount() {
+        return statRects.get();
+    }
+
+    /**
+     * Number of actual readPixels calls so far. Compare to getRectCount to see how well coalescing is doing.
+     */
+    public long getReadCount() {
+        return statReads.get();
+    }
+
+    private static final class Cluster {
+        int l, u, r, d;
+        long wanted;
+        @SuppressWarnings("null")
+        @NonNull Staging staging;
+    }
+
+    private static final class Staging {
+        final @Nullable StagingPool pool;
+        final int[] array;
+        final @Nullable ByteBuffer direct;
+
+        Staging(@Nullable StagingPool pool, int bytes, boolean isDirect) {
+            this.pool = pool;
+            if (isDirect) {
+                array = new int[0];
+                direct = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            } else {
+                array = new int[(bytes + 3) / 4];
+                direct = null;
+            }
+        }
+
+        void release() {
+            StagingPool p = pool;
+            if (p != null)
+                p.finish(this);
+        }
+    }
+
+    private static final class StagingPool extends ObjectPool<Staging> {
+        final int bytes;
+        final boolean direct;
+
+        StagingPool(int bytes, boolean direct) {
+            // no expansion, so anything returned past the capacity is dropped
+            super(0);
+            this.bytes = bytes;
+            this.direct = direct;
+            setCapacity(Math.max(1, RETAIN_BYTES / bytes));
+        }
+
+        @Override
+        protected @NonNull Staging gen() {
+            return new Staging(this, bytes, direct);
+        }
+
+        @Override
+        public void reset(@NonNull Staging element) {
+        }
+    }
+
+    /**
+     * Pixels of a readback. Close it once done to return the staging buffers.
+     * For rectangle i, pixel (x, y) (relative to the rectangle) is at getOffset(i) + (y * getStride(i)) + x * (1 or bytesPerPixel).
+     * Offsets and strides are in ints for getArray, and in bytes for getBuffer.
+     */
+    public static final class Result implements AutoCloseable {
+        public final IImage image;
+        public final BadGPU.TextureLoadFormat format;
+        public final int bytesPerPixel;
+        private final Rect[] rects;
+        private final int[] rectCluster;
+        private final Cluster[] clusters;
+        private boolean closed;
+
+        private Result(IImage image, BadGPU.TextureLoadFormat format, int bytesPerPixel, Rect[] rects, int[] rectCluster, Cluster[] clusters) {
+            this.image = image;
+            this.format = format;
+            this.bytesPerPixel = bytesPerPixel;
+            this.rects = rects;
+            this.rectCluster = rectCluster;
+            this.clusters = clusters;
+        }
+
+        /**
+         * Number of rectangles.
+         */
+        public int getRectCount() {
+            return rects.length;
+        }
+
+        public Rect getRect(int i) {
+            return rects[i];
+        }
+
+        /**
+         * Number of readPixels calls this took.
+         */
+        public int getReadCount() {
+            return clusters.length;
+        }
+
+        /**
+         * Int array holding rectangle i, or null if this was a direct readback.
+         */
+        public @Nullable int[] getArray(int i) {
+            Staging st = check(i);
+            return st.direct != null ? null : st.array;
+        }
+
+        /**
+         * Direct buffer holding rectangle i, or null if this wasn't a direct readback.
+         * Don't rely on the position/limit; use the offset and stride.
+         */
+        public @Nullable ByteBuffer getBuffer(int i) {
+            return check(i).direct;
+        }
+
+        /**
+         * Offset of rectangle i's first pixel.
+         */
+        public int getOffset(int i) {
+            Staging st = check(i);
+            Cluster c = clusters[rectCluster[i]];
+            Rect r = rects[i];
+            int px = ((r.y - c.u) * (c.r - c.l)) + (r.x - c.l);
+            return st.direct != null ? px * bytesPerPixel : px;
+        }
+
+        /**
+         * Distance between rows of rectangle i.
+         */
+        public int getStride(int i) {
+            Staging st = check(i);
+            Cluster c = clusters[rectCluster[i]];
+            int w = c.r - c.l;
+            return st.direct != null ? w * bytesPerPixel : w;
+        }
+
+        /**
+         * Copies rectangle i into a packed int array (i.e. for handing to something that wants a plain image).
+         */
+        public void copyTo(int i, int[] target, int targetOfs) {
+            int[] arr = getArray(i);
+            if (arr == null)
+                throw new IllegalStateException("copyTo is only for int readbacks");
+            Rect r = rects[i];
+            int ofs = getOffset(i);
+            int stride = getStride(i);
+            for (int y = 0; y < r.height; y++) {
+                System.arraycopy(arr, ofs, target, targetOfs, r.width);
+                ofs += stride;
+                targetOfs += r.width;
+            }
+        }
+
+        private Staging check(int i) {
+            if (closed)
+                throw new IllegalStateException("Readback result already closed");
+            return clusters[rectCluster[i]].staging;
+        }
+
+        /**
+         * Returns the staging buffers to the pool. The arrays/buffers must not be used afterwards.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed)
+                return;
+            closed = true;
+            for (Cluster c : clusters)
+                c.staging.release();
+        }
+    }
+}
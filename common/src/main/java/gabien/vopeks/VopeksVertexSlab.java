@@ -0,0 +1,91 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.vopeks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import gabien.uslx.append.ObjectPool;
+
+/**
+ * Off-heap vertex storage for the direct vertex path of VopeksBatchingSurface.
+ * Batches are written straight into this, and handed to BadGPU without a copy.
+ * The slab is split into three planar regions (XY, RGBA, ST) that all advance together per vertex.
+ * That way, consecutive batches each get a contiguous run in every region from one vertex cursor.
+ * (BadGPU has no vertex stride, so properly interleaved data isn't an option.)
+ * Slabs are reference-counted: one reference for the surface writing to it, and one per batch in flight.
+ * Created 18th October, 2026.
+ */
+final class VopeksVertexSlab {
+    final int vertices;
+    final FloatBuffer buffer;
+    final int coloursBase, texCoordsBase;
+    private final AtomicInteger refs = new AtomicInteger();
+    private final Pool pool;
+
+    private VopeksVertexSlab(Pool pool, int vertices) {
+        this.pool = pool;
+        this.vertices = vertices;
+        buffer = ByteBuffer.allocateDirect(vertices * 8 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        coloursBase = vertices * 2;
+        texCoordsBase = vertices * 6;
+    }
+
+    void ref() {
+        refs.incrementAndGet();
+    }
+
+    void unref() {
+        if (refs.decrementAndGet() == 0)
+            pool.finish(this);
+    }
+
+    /**
+     * Copies a batch out of the slab into a regular megabuffer (same layout as VopeksBatchingSurface.batchFlush).
+     * Used if the natives turn out not to have the direct draw function.
+     */
+    void copyOut(float[] megabuffer, int vertexStart, int vertexCount, boolean hasColours, boolean hasTexCoords) {
+        int vLen = vertexCount * 2;
+        int cLen = vertexCount * 4;
+        FloatBuffer dup = buffer.duplicate();
+        dup.position(vertexStart * 2);
+        dup.get(megabuffer, 0, vLen);
+        if (hasColours) {
+            dup.position(coloursBase + (vertexStart * 4));
+            dup.get(megabuffer, vLen, cLen);
+        }
+        if (hasTexCoords) {
+            dup.position(texCoordsBase + (vertexStart * 2));
+            dup.get(megabuffer, vLen + cLen, vLen);
+        }
+    }
+
+    /**
+     * Slab pool. All slabs from a pool have the same capacity.
+     */
+    static final class Pool extends ObjectPool<VopeksVertexSlab> {
+        final int vertices;
+
+        Pool(int vertices) {
+            super(1);
+            this.vertices = vertices;
+        }
+
+        @Override
+        protected @NonNull VopeksVertexSlab gen() {
+            return new VopeksVertexSlab(this, vertices);
+        }
+
+        @Override
+        public void reset(@NonNull VopeksVertexSlab element) {
+        }
+    }
+}
@@ -32,8 +32,8 @@ public abstract class AudioIOFormat {
     public static final AudioIOFormat F_U8 = new PCM(false, 0, 8, 1);
 
     // non-linear PCM
-    public static final AudioIOFormat F_AL8 = new NoConv(FC_ALAW, REQ_FACT, 8, 1);
-    public static final AudioIOFormat F_UL8 = new NoConv(FC_ULAW, REQ_FACT, 8, 1);
+    public static final AudioIOFormat F_AL8 = new G711(false);
+    public static final AudioIOFormat F_UL8 = new G711(true);
 
     // signed PCM
     public static final AudioIOFormat F_S16 = new PCM(true, 0, 16, 2);
@@ -104,6 +104,68 @@ public abstract class AudioIOFormat {
      */
     public abstract void ofF64(byte[] to, int at, double val);
 
+    // Block conversions. These default to going sample-by-sample, but are overridden with tight loops where it matters.
+
+    /**
+     * Retrieves samples from the byte array as 32-bit floating-point values.
+     */
+    public void asF32(byte[] from, int at, float[] to, int toOfs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            to[toOfs + i] = (float) asF64(from, at);
+            at += bytesPerSample;
+        }
+    }
+
+    /**
+     * Retrieves samples from the byte array as signed 32-bit PCM values.
+     */
+    public void asS32(byte[] from, int at, int[] to, int toOfs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            to[toOfs + i] = asS32(from, at);
+            at += bytesPerSample;
+        }
+    }
+
+    /**
+     * Retrieves samples from the byte array as 64-bit floating-point values.
+     */
+    public void asF64(byte[] from, int at, double[] to, int toOfs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            to[toOfs + i] = asF64(from, at);
+            at += bytesPerSample;
+        }
+    }
+
+    /**
+     * Writes 32-bit floating-point values to the byte array in this format.
+     */
+    public void ofF32(byte[] to, int at, float[] from, int fromOfs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            ofF64(to, at, from[fromOfs + i]);
+            at += bytesPerSample;
+        }
+    }
+
+    /**
+     * Writes signed 32-bit PCM values to the byte array in this format.
+     */
+    public void ofS32(byte[] to, int at, int[] from, int fromOfs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            ofS32(to, at, from[fromOfs + i]);
+            at += bytesPerSample;
+        }
+    }
+
+    /**
+     * Writes 64-bit floating-point values to the byte array in this format.
+     */
+    public void ofF64(byte[] to, int at, double[] from, int fromOfs, int samples) {
+        for (int i = 0; i < samples; i++) {
+            ofF64(to, at, from[fromOfs + i]);
+            at += bytesPerSample;
+        }
+    }
+
     public static class NoConv extends AudioIOFormat {
         public NoConv(int fmt, int req, int bitsPS, int bytesPS) {
             super(fmt, req, bitsPS, bytesPS);
@@ -127,12 +189,8 @@ public abstract class AudioIOFormat {
     }
 
     public static double cS32toF64(int valI) {
-        double val = valI;
-        if (val < 0) {
-            return val / 2147483648d;
-        } else {
-            return val / 2147483647d;
-        }
+        // multiplies by the same reciprocals as PCMConversions, so the block conversions give exactly the same results
+        return valI * PCMConversions.SCALE_S32_TO_F64[valI >>> 31];
     }
     public static int cF64toS32(double val) {
         if (val < 0) {
@@ -167,8 +225,8 @@ public abstract class AudioIOFormat {
                 val |= val << 16;
                 val ^= signed ? 0x00008000 : 0x80000000;
             } else if (bytesPerSample == 3) {
-                val = from[at] & 0xFF;
-                val |= (from[at + 1] & 0xFF) << 8;
+                val = (from[at] & 0xFF) << 8;
+                val |= (from[at + 1] & 0xFF) << 16;
                 int hb = from[at + 2] & 0xFF;
                 val |= hb << 24;
                 val |= hb;
@@ -214,6 +272,62 @@ public abstract class AudioIOFormat {
         public void ofF64(@NonNull byte[] to, int at, double val) {
             ofS32(to, at, cF64toS32(val));
         }
+        @Override
+        public void asF32(@NonNull byte[] from, int at, @NonNull float[] to, int toOfs, int samples) {
+            if (bytesPerSample == 1 && !signed) {
+                PCMConversions.bytesU8ToF32(from, at, to, toOfs, samples);
+            } else if (bytesPerSample == 2 && signed) {
+                PCMConversions.bytesS16ToF32(from, at, to, toOfs, samples);
+            } else if (bytesPerSample == 3 && signed) {
+                PCMConversions.bytesS24ToF32(from, at, to, toOfs, samples);
+            } else if (bytesPerSample == 4 && signed) {
+                PCMConversions.bytesS32ToF32(from, at, to, toOfs, samples);
+            } else {
+                super.asF32(from, at, to, toOfs, samples);
+            }
+        }
+        @Override
+        public void asS32(@NonNull byte[] from, int at, @NonNull int[] to, int toOfs, int samples) {
+            if (bytesPerSample == 1 && !signed) {
+                PCMConversions.bytesU8ToS32(from, at, to, toOfs, samples);
+            } else if (bytesPerSample == 2 && signed) {
+                PCMConversions.bytesS16ToS32(from, at, to, toOfs, samples);
+            } else if (bytesPerSample == 3 && signed) {
+                PCMConversions.bytesS24ToS32(from, at, to, toOfs, samples);
+            } else if (bytesPerSample == 4 && signed) {
+                PCMConversions.bytesS32ToS32(from, at, to, toOfs, samples);
+            } else {
+                super.asS32(from, at, to, toOfs, samples);
+            }
+        }
+        @Override
+        public void ofF32(@NonNull byte[] to, int at, @NonNull float[] from, int fromOfs, int samples) {
+            if (bytesPerSample == 1 && !signed) {
+                PCMConversions.f32ToBytesU8(from, fromOfs, to, at, samples);
+            } else if (bytesPerSample == 2 && signed) {
+                PCMConversions.f32ToBytesS16(from, fromOfs, to, at, samples);
+            } else if (bytesPerSample == 3 && signed) {
+                PCMConversions.f32ToBytesS24(from, fromOfs, to, at, samples);
+            } else if (bytesPerSample == 4 && signed) {
+                PCMConversions.f32ToBytesS32(from, fromOfs, to, at, samples);
+            } else {
+                super.ofF32(to, at, from, fromOfs, samples);
+            }
+        }
+        @Override
+        public void ofS32(@NonNull byte[] to, int at, @NonNull int[] from, int fromOfs, int samples) {
+            if (bytesPerSample == 1 && !signed) {
+                PCMConversions.s32ToBytesU8(from, fromOfs, to, at, samples);
+            } else if (bytesPerSample == 2 && signed) {
+                PCMConversions.s32ToBytesS16(from, fromOfs, to, at, samples);
+            } else if (bytesPerSample == 3 && signed) {
+                PCMConversions.s32ToBytesS24(from, fromOfs, to, at, samples);
+            } else if (bytesPerSample == 4 && signed) {
+                PCMConversions.s32ToBytesS32(from, fromOfs, to, at, samples);
+            } else {
+                super.ofS32(to, at, from, fromOfs, samples);
+            }
+        }
     }
 
     public static class FP extends AudioIOFormat {
@@ -270,5 +384,98 @@ public abstract class AudioIOFormat {
                 to[at + 3] = (byte) (val2 >> 24);
             }
         }
+        @Override
+        public void asF32(@NonNull byte[] from, int at, @NonNull float[] to, int toOfs, int samples) {
+            if (dbl) {
+                PCMConversions.bytesF64ToF32(from, at, to, toOfs, samples);
+            } else {
+                PCMConversions.bytesF32ToF32(from, at, to, toOfs, samples);
+            }
+        }
+        @Override
+        public void asS32(@NonNull byte[] from, int at, @NonNull int[] to, int toOfs, int samples) {
+            if (dbl) {
+                PCMConversions.bytesF64ToS32(from, at, to, toOfs, samples);
+            } else {
+                PCMConversions.bytesF32ToS32(from, at, to, toOfs, samples);
+            }
+        }
+        @Override
+        public void ofF32(@NonNull byte[] to, int at, @NonNull float[] from, int fromOfs, int samples) {
+            if (dbl) {
+                PCMConversions.f32ToBytesF64(from, fromOfs, to, at, samples);
+            } else {
+                PCMConversions.f32ToBytesF32(from, fromOfs, to, at, samples);
+            }
+        }
+        @Override
+        public void ofS32(@NonNull byte[] to, int at, @NonNull int[] from, int fromOfs, int samples) {
+            if (dbl) {
+                PCMConversions.s32ToBytesF64(from, fromOfs, to, at, samples);
+            } else {
+                PCMConversions.s32ToBytesF32(from, fromOfs, to, at, samples);
+            }
+        }
+    }
+
+    /**
+     * G.711 A-law/u-law.
+     */
+    public static class G711 extends AudioIOFormat {
+        public final boolean ulaw;
+        public G711(boolean u) {
+            super(u ? FC_ULAW : FC_ALAW, REQ_FACT, 8, 1);
+            ulaw = u;
+        }
+        @Override
+        public int asS32(@NonNull byte[] from, int at) {
+            int v = (ulaw ? PCMConversions.uLawToS16(from[at]) : PCMConversions.aLawToS16(from[at])) & 0xFFFF;
+            return (v ^ 0x8000) | (v << 16);
+        }
+        @Override
+        public double asF64(@NonNull byte[] from, int at) {
+            return cS32toF64(asS32(from, at));
+        }
+        @Override
+        public void ofS32(@NonNull byte[] to, int at, int val) {
+            val >>= 16;
+            to[at] = (byte) (ulaw ? PCMConversions.s16ToULaw(val) : PCMConversions.s16ToALaw(val));
+        }
+        @Override
+        public void ofF64(@NonNull byte[] to, int at, double val) {
+            ofS32(to, at, cF64toS32(val));
+        }
+        @Override
+        public void asF32(@NonNull byte[] from, int at, @NonNull float[] to, int toOfs, int samples) {
+            if (ulaw) {
+                PCMConversions.bytesULawToF32(from, at, to, toOfs, samples);
+            } else {
+                PCMConversions.bytesALawToF32(from, at, to, toOfs, samples);
+            }
+        }
+        @Override
+        public void asS32(@NonNull byte[] from, int at, @NonNull int[] to, int toOfs, int samples) {
+            if (ulaw) {
+                PCMConversions.bytesULawToS32(from, at, to, toOfs, samples);
+            } else {
+                PCMConversions.bytesALawToS32(from, at, to, toOfs, samples);
+            }
+        }
+        @Override
+        public void ofF32(@NonNull byte[] to, int at, @NonNull float[] from, int fromOfs, int samples) {
+            if (ulaw) {
+                PCMConversions.f32ToBytesULaw(from, fromOfs, to, at, samples);
+            } else {
+                PCMConversions.f32ToBytesALaw(from, fromOfs, to, at, samples);
+            }
+        }
+        @Override
+        public void ofS32(@NonNull byte[] to, int at, @NonNull int[] from, int fromOfs, int samples) {
+            if (ulaw) {
+                PCMConversions.s32ToBytesULaw(from, fromOfs, to, at, samples);
+            } else {
+                PCMConversions.s32ToBytesALaw(from, fromOfs, to, at, samples);
+            }
+        }
     }
 }
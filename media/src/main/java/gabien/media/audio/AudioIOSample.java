@@ -38,8 +38,9 @@ public final class AudioIOSample extends DiscreteSample {
 
             @Override
             public void nextFrames(@NonNull byte[] frame, int at, int frames) throws IOException {
-                System.arraycopy(data, ptr, frame, at, bytesPerFrame);
-                ptr += bytesPerFrame;
+                int len = bytesPerFrame * frames;
+                System.arraycopy(data, ptr, frame, at, len);
+                ptr += len;
             }
 
             @Override
@@ -58,6 +59,11 @@ public final class AudioIOSample extends DiscreteSample {
         }
     }
 
+    @Override
+    public final void getF32(int frame, int frames, float[] buffer, int ofs) {
+        format.asF32(data, frame * bytesPerFrame, buffer, ofs, frames * channels);
+    }
+
     @Override
     public final void getS32(int frame, int[] buffer) {
         int at = frame * bytesPerFrame;
@@ -75,6 +81,10 @@ public final class AudioIOSample extends DiscreteSample {
         }
     }
 
+    public final void setF32(int frame, int frames, float[] buffer, int ofs) {
+        format.ofF32(data, frame * bytesPerFrame, buffer, ofs, frames * channels);
+    }
+
     public final void setS32(int frame, int[] buffer) {
         int at = frame * bytesPerFrame;
         for (int i = 0; i < channels; i++) {
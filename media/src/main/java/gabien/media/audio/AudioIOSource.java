@@ -25,6 +25,11 @@ public abstract class AudioIOSource implements Closeable {
     // Format hint for copying.
     public final @Nullable AudioIOFormat formatHint;
 
+    /**
+     * Frames converted at a time by the format-converting adapters.
+     */
+    public static final int BLOCK_FRAMES = 1024;
+
     public AudioIOSource(AudioIOCRSet cr, @Nullable AudioIOFormat hint) {
         crSet = cr;
         formatHint = hint;
@@ -56,14 +61,39 @@ public abstract class AudioIOSource implements Closeable {
 
     /**
      * Retrieves the next frames into the given byte array in the given format at the given position.
-     * Very inefficient (goes through F64 for everything AND usually allocs!).
+     * Converts in blocks, through S32 for S32 output, F64 for F64 output, and F32 otherwise (allocs a block buffer).
      */
     public void nextFramesInFormat(AudioIOFormat fmt, byte[] frame, int at, int frames) throws IOException {
-        double[] tmp = new double[frames * crSet.channels];
-        nextFrames(tmp, 0, frames);
-        for (int i = 0; i < tmp.length; i++) {
-            fmt.ofF64(frame, at, tmp[i]);
-            at += fmt.bytesPerSample;
+        int channels = crSet.channels;
+        int block = Math.min(frames, BLOCK_FRAMES);
+        int bytesPerFrame = fmt.bytesPerSample * channels;
+        if (fmt == AudioIOFormat.F_S32) {
+            int[] tmp = new int[block * channels];
+            while (frames > 0) {
+                int am = Math.min(frames, block);
+                nextFrames(tmp, 0, am);
+                fmt.ofS32(frame, at, tmp, 0, am * channels);
+                at += am * bytesPerFrame;
+                frames -= am;
+            }
+        } else if (fmt == AudioIOFormat.F_F64) {
+            double[] tmp = new double[block * channels];
+            while (frames > 0) {
+                int am = Math.min(frames, block);
+                nextFrames(tmp, 0, am);
+                fmt.ofF64(frame, at, tmp, 0, am * channels);
+                at += am * bytesPerFrame;
+                frames -= am;
+            }
+        } else {
+            float[] tmp = new float[block * channels];
+            while (frames > 0) {
+                int am = Math.min(frames, block);
+                nextFrames(tmp, 0, am);
+                fmt.ofF32(frame, at, tmp, 0, am * channels);
+                at += am * bytesPerFrame;
+                frames -= am;
+            }
         }
     }
 
@@ -107,6 +137,22 @@ public abstract class AudioIOSource implements Closeable {
         // nothing to do here!
     }
 
+    /**
+     * Implemented by sources that can seek.
+     */
+    public interface ISeekable {
+        /**
+         * The current position, i.e. the index of the frame nextFrames would return next.
+         */
+        int framePosition();
+
+        /**
+         * Seeks to the given frame (0 to frameCount inclusive).
+         * @throws IndexOutOfBoundsException if the frame is out of range
+         */
+        void seekToFrame(int frame) throws IOException;
+    }
+
     /**
      * Implements conversion from byte-based sources.
      */
@@ -116,41 +162,50 @@ public abstract class AudioIOSource implements Closeable {
 
         public SourceBytes(AudioIOCRSet crSet, AudioIOFormat format) {
             super(crSet, format);
-            tmpBuf = new byte[crSet.channels * format.bytesPerSample];
+            tmpBuf = new byte[crSet.channels * format.bytesPerSample * BLOCK_FRAMES];
             this.format = format;
         }
 
         /**
-         * Retrieves the next frame into the given byte buffer at the given position.
-         * Length is channels * format.bytesPerSample bytes.
+         * Retrieves the next frames into the given byte buffer at the given position.
+         * Length is channels * format.bytesPerSample bytes per frame.
          * Order is of course little-endian.
          */
         public abstract void nextFrames(byte[] frame, int at, int frames) throws IOException;
 
         @Override
         public final void nextFrames(double[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                for (int j = 0; j < crSet.channels; j++)
-                    frame[at++] = format.asF64(tmpBuf, j * format.bytesPerSample);
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                format.asF64(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public final void nextFrames(float[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                for (int j = 0; j < crSet.channels; j++)
-                    frame[at++] = (float) format.asF64(tmpBuf, j * format.bytesPerSample);
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                format.asF32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public final void nextFrames(int[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                for (int j = 0; j < crSet.channels; j++)
-                    frame[at++] = format.asS32(tmpBuf, j * format.bytesPerSample);
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                format.asS32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
@@ -173,35 +228,44 @@ public abstract class AudioIOSource implements Closeable {
 
         public SourceS16(AudioIOCRSet crSet) {
             super(crSet, AudioIOFormat.F_S16);
-            tmpBuf = new short[crSet.channels];
+            tmpBuf = new short[crSet.channels * BLOCK_FRAMES];
         }
 
         public abstract void nextFrames(short[] buffer, int at, int frames);
 
         @Override
         public void nextFrames(@NonNull double[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmS16ToF64(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmS16ToF64(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public void nextFrames(@NonNull float[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmS16ToF32(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmS16ToF32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public void nextFrames(@NonNull int[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmS16ToS32(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmS16ToS32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
     }
@@ -215,24 +279,30 @@ public abstract class AudioIOSource implements Closeable {
 
         public SourceS32(AudioIOCRSet crSet) {
             super(crSet, AudioIOFormat.F_S32);
-            tmpBuf = new int[crSet.channels];
+            tmpBuf = new int[crSet.channels * BLOCK_FRAMES];
         }
 
         @Override
         public void nextFrames(@NonNull double[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmS32ToF64(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmS32ToF64(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public void nextFrames(@NonNull float[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmS32ToF32(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmS32ToF32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
     }
@@ -246,24 +316,30 @@ public abstract class AudioIOSource implements Closeable {
 
         public SourceF32(AudioIOCRSet crSet) {
             super(crSet, AudioIOFormat.F_F32);
-            tmpBuf = new float[crSet.channels];
+            tmpBuf = new float[crSet.channels * BLOCK_FRAMES];
         }
 
         @Override
         public void nextFrames(@NonNull double[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                ArrayConversions.castF32ToF64(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                ArrayConversions.castF32ToF64(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public void nextFrames(@NonNull int[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmF32ToS32(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmF32ToS32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
     }
@@ -276,24 +352,30 @@ public abstract class AudioIOSource implements Closeable {
 
         public SourceF64(AudioIOCRSet crSet) {
             super(crSet, AudioIOFormat.F_F64);
-            tmpBuf = new double[crSet.channels];
+            tmpBuf = new double[crSet.channels * BLOCK_FRAMES];
         }
 
         @Override
         public void nextFrames(@NonNull float[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                ArrayConversions.castF64ToF32(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                ArrayConversions.castF64ToF32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
 
         @Override
         public void nextFrames(@NonNull int[] frame, int at, int frames) throws IOException {
-            for (int i = 0; i < frames; i++) {
-                nextFrames(tmpBuf, 0, 1);
-                PCMConversions.pcmF64ToS32(tmpBuf, 0, frame, at, crSet.channels);
-                at += crSet.channels;
+            int channels = crSet.channels;
+            while (frames > 0) {
+                int am = Math.min(frames, BLOCK_FRAMES);
+                nextFrames(tmpBuf, 0, am);
+                PCMConversions.pcmF64ToS32(tmpBuf, 0, frame, at, am * channels);
+                at += am * channels;
+                frames -= am;
             }
         }
     }
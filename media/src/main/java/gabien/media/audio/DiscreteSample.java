@@ -73,28 +73,47 @@ public abstract class DiscreteSample extends AudioIOCRSet {
     }
 
     /**
-     * A (bad, but usable) resampler.
+     * Writes the contents of each channel on the given frames into the buffer (interleaved).
+     */
+    public void getF32(int frame, int frames, float[] buffer, int ofs) {
+        float[] tmp = tmpFloats.get();
+        for (int i = 0; i < frames; i++) {
+            getF32(frame + i, tmp);
+            System.arraycopy(tmp, 0, buffer, ofs, channels);
+            ofs += channels;
+        }
+    }
+
+    /**
+     * Resamples with the high-quality resampler.
      */
     public final AudioIOSample resample(AudioIOCRSet set, boolean loop) {
-        float[] tmp = new float[channels];
-        float[] tmp2 = new float[set.channels];
-        AudioIOSample res = new AudioIOSample(set, AudioIOFormat.F_F32, (int) ((set.sampleRate * (long) length) / sampleRate));
-        double cvt = sampleRate / (double) set.sampleRate;
-        if (set.channels != 0) {
-            for (int i = 0; i < res.length; i++) {
-                getInterpolatedF32(i * cvt, tmp, loop);
-                if (channels > 1) {
-                    tmp2[0] = tmp[0];
-                    if (tmp2.length > 1)
-                        tmp2[1] = tmp[1];
-                } else if (channels > 0) {
-                    tmp2[0] = tmp[0];
-                    if (tmp2.length > 1)
-                        tmp2[1] = tmp[0];
-                }
-                res.setF32(i, tmp2);
-            }
+        return resample(set, loop, true);
+    }
+
+    /**
+     * Resamples (see Resampler). The first two channels are kept; mono is duplicated if stereo is wanted.
+     */
+    public final AudioIOSample resample(AudioIOCRSet set, boolean loop, boolean highQuality) {
+        int outLength = (int) ((set.sampleRate * (long) length) / sampleRate);
+        AudioIOSample res = new AudioIOSample(set, AudioIOFormat.F_F32, outLength);
+        if (set.channels == 0 || channels == 0)
+            return res;
+        float[] src = new float[length * channels];
+        getF32(0, length, src, 0);
+        // map channels before resampling, so no work is wasted on channels that get dropped
+        float[] mapped = new float[length * set.channels];
+        int copy = Math.min(Math.min(channels, set.channels), 2);
+        for (int i = 0; i < length; i++) {
+            int s = i * channels;
+            int d = i * set.channels;
+            for (int c = 0; c < copy; c++)
+                mapped[d + c] = src[s + c];
+            if (channels == 1 && set.channels > 1)
+                mapped[d + 1] = src[s];
         }
+        float[] out = Resampler.resample(mapped, set.channels, length, sampleRate, set.sampleRate, outLength, highQuality, loop);
+        res.setF32(0, outLength, out, 0);
         return res;
     }
 }
@@ -15,6 +15,12 @@ public final class PCMConversions {
     private PCMConversions() {
     }
 
+    // Negative values are over 2^(n-1), positive over 2^(n-1) - 1.
+    // The scale is picked by indexing with the sign bit, as a branch here mispredicts on half of all samples.
+    private static final float[] SCALE_S16_TO_F32 = {1f / 32767f, 1f / 32768f};
+    static final double[] SCALE_S32_TO_F64 = {1d / 2147483647d, 1d / 2147483648d};
+    private static final double[] SCALE_F64_TO_S32 = {2147483647d, 2147483648d};
+
     // Upward PCM conversions
     public static void pcmS16ToS32(short[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
         for (int i = 0; i < sourceLen; i++) {
@@ -87,9 +93,8 @@ public final class PCMConversions {
     }
     public static void pcmS16ToF64(short[] source, int sourceOfs, double[] dest, int destOfs, int sourceLen) {
         for (int i = 0; i < sourceLen; i++) {
-            double flt = source[sourceOfs++];
-            flt /= flt < 0 ? 32768d : 32767d;
-            dest[destOfs++] = flt;
+            int v = source[sourceOfs++];
+            dest[destOfs++] = v * (double) SCALE_S16_TO_F32[v >>> 31];
         }
     }
     public static void pcmS16ToF64(short[] source, double[] dest) {
@@ -110,9 +115,8 @@ public final class PCMConversions {
     }
     public static void pcmS32ToF64(int[] source, int sourceOfs, double[] dest, int destOfs, int sourceLen) {
         for (int i = 0; i < sourceLen; i++) {
-            double flt = source[sourceOfs++];
-            flt /= flt < 0 ? 2147483648d : 2147483647d;
-            dest[destOfs++] = (int) flt;
+            int v = source[sourceOfs++];
+            dest[destOfs++] = v * SCALE_S32_TO_F64[v >>> 31];
         }
     }
     public static void pcmS32ToF64(int[] source, double[] dest) {
@@ -133,9 +137,8 @@ public final class PCMConversions {
     }
     public static void pcmS16ToF32(short[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
         for (int i = 0; i < sourceLen; i++) {
-            float flt = source[sourceOfs++];
-            flt /= flt < 0 ? 32768f : 32767f;
-            dest[destOfs++] = flt;
+            int v = source[sourceOfs++];
+            dest[destOfs++] = v * SCALE_S16_TO_F32[v >>> 31];
         }
     }
     public static void pcmS16ToF32(short[] source, float[] dest) {
@@ -148,7 +151,7 @@ public final class PCMConversions {
             float flt = source[sourceOfs++];
             flt *= flt < 0 ? 2147483648d : 2147483647d;
             flt = MathsX.clamp(flt, -2147483648, 2147483647);
-            dest[destOfs++] = (short) flt;
+            dest[destOfs++] = (int) flt;
         }
     }
     public static void pcmF32ToS32(float[] source, int[] dest) {
@@ -156,15 +159,333 @@ public final class PCMConversions {
     }
     public static void pcmS32ToF32(int[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
         for (int i = 0; i < sourceLen; i++) {
-            float flt = source[sourceOfs++];
-            flt /= flt < 0 ? 2147483648d : 2147483647d;
-            dest[destOfs++] = flt;
+            int v = source[sourceOfs++];
+            dest[destOfs++] = (float) (v * SCALE_S32_TO_F64[v >>> 31]);
         }
     }
     public static void pcmS32ToF32(int[] source, float[] dest) {
         pcmS32ToF32(source, 0, dest, 0, source.length);
     }
 
+    // Packed little-endian formats (as stored in WAV files), in blocks.
+    // These are written as plain loops over whole buffers so the JIT can do its thing.
+    // Results must match AudioIOFormat's per-sample methods exactly.
+    // So integer formats are widened to S32 the same way (by repeating bits) and go through s32ToF32/f32ToS32.
+
+    /**
+     * Same as (float) AudioIOFormat.cS32toF64(v).
+     */
+    private static float s32ToF32(int v) {
+        return (float) (v * SCALE_S32_TO_F64[v >>> 31]);
+    }
+
+    /**
+     * Same as AudioIOFormat.cF64toS32(v).
+     */
+    private static int f32ToS32(float v) {
+        v = MathsX.clamp(v, -1, 1);
+        return (int) (v * SCALE_F64_TO_S32[Float.floatToRawIntBits(v) >>> 31]);
+    }
+
+    public static void bytesU8ToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = source[sourceOfs + i] & 0xFF;
+            int vX = v ^ 0x80;
+            dest[destOfs + i] = s32ToF32(v | (v << 8) | (v << 16) | (vX << 24));
+        }
+    }
+    public static void bytesS16ToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 2);
+            int v = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8);
+            dest[destOfs + i] = s32ToF32((v ^ 0x8000) | (v << 16));
+        }
+    }
+    public static void bytesS24ToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 3);
+            int hb = source[at + 2] & 0xFF;
+            int v = ((source[at] & 0xFF) << 8) | ((source[at + 1] & 0xFF) << 16) | (hb << 24);
+            dest[destOfs + i] = s32ToF32(v | (hb ^ 0x80));
+        }
+    }
+    public static void bytesS32ToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 4);
+            int v = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8) | ((source[at + 2] & 0xFF) << 16) | (source[at + 3] << 24);
+            dest[destOfs + i] = s32ToF32(v);
+        }
+    }
+    public static void bytesF32ToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 4);
+            int v = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8) | ((source[at + 2] & 0xFF) << 16) | (source[at + 3] << 24);
+            dest[destOfs + i] = Float.intBitsToFloat(v);
+        }
+    }
+    public static void bytesF64ToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (float) Double.longBitsToDouble(readLE64(source, sourceOfs + (i * 8)));
+    }
+
+    public static void bytesU8ToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = source[sourceOfs + i] & 0xFF;
+            int vX = v ^ 0x80;
+            dest[destOfs + i] = v | (v << 8) | (v << 16) | (vX << 24);
+        }
+    }
+    public static void bytesS16ToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 2);
+            int v = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8);
+            dest[destOfs + i] = (v ^ 0x8000) | (v << 16);
+        }
+    }
+    public static void bytesS24ToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 3);
+            int hb = source[at + 2] & 0xFF;
+            int v = ((source[at] & 0xFF) << 8) | ((source[at + 1] & 0xFF) << 16) | (hb << 24);
+            dest[destOfs + i] = v | (hb ^ 0x80);
+        }
+    }
+    public static void bytesS32ToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 4);
+            dest[destOfs + i] = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8) | ((source[at + 2] & 0xFF) << 16) | (source[at + 3] << 24);
+        }
+    }
+    public static void bytesF32ToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int at = sourceOfs + (i * 4);
+            int v = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8) | ((source[at + 2] & 0xFF) << 16) | (source[at + 3] << 24);
+            dest[destOfs + i] = f32ToS32(Float.intBitsToFloat(v));
+        }
+    }
+    public static void bytesF64ToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            long v = readLE64(source, sourceOfs + (i * 8));
+            dest[destOfs + i] = (int) (Double.longBitsToDouble(v) * SCALE_F64_TO_S32[(int) (v >>> 63)]);
+        }
+    }
+
+    public static void f32ToBytesU8(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (byte) ((f32ToS32(source[sourceOfs + i]) >> 24) ^ 0x80);
+    }
+    public static void f32ToBytesS16(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = f32ToS32(source[sourceOfs + i]);
+            int at = destOfs + (i * 2);
+            dest[at] = (byte) (v >> 16);
+            dest[at + 1] = (byte) (v >> 24);
+        }
+    }
+    public static void f32ToBytesS24(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = f32ToS32(source[sourceOfs + i]);
+            int at = destOfs + (i * 3);
+            dest[at] = (byte) (v >> 8);
+            dest[at + 1] = (byte) (v >> 16);
+            dest[at + 2] = (byte) (v >> 24);
+        }
+    }
+    public static void f32ToBytesS32(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            writeLE32(dest, destOfs + (i * 4), f32ToS32(source[sourceOfs + i]));
+    }
+    public static void f32ToBytesF32(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            writeLE32(dest, destOfs + (i * 4), Float.floatToRawIntBits(source[sourceOfs + i]));
+    }
+    public static void f32ToBytesF64(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            writeLE64(dest, destOfs + (i * 8), Double.doubleToRawLongBits(source[sourceOfs + i]));
+    }
+
+    public static void s32ToBytesU8(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (byte) ((source[sourceOfs + i] >> 24) ^ 0x80);
+    }
+    public static void s32ToBytesS16(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = source[sourceOfs + i];
+            int at = destOfs + (i * 2);
+            dest[at] = (byte) (v >> 16);
+            dest[at + 1] = (byte) (v >> 24);
+        }
+    }
+    public static void s32ToBytesS24(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = source[sourceOfs + i];
+            int at = destOfs + (i * 3);
+            dest[at] = (byte) (v >> 8);
+            dest[at + 1] = (byte) (v >> 16);
+            dest[at + 2] = (byte) (v >> 24);
+        }
+    }
+    public static void s32ToBytesS32(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            writeLE32(dest, destOfs + (i * 4), source[sourceOfs + i]);
+    }
+    public static void s32ToBytesF32(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            writeLE32(dest, destOfs + (i * 4), Float.floatToRawIntBits(s32ToF32(source[sourceOfs + i])));
+        }
+    }
+    public static void s32ToBytesF64(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = source[sourceOfs + i];
+            double flt = v * SCALE_S32_TO_F64[v >>> 31];
+            writeLE64(dest, destOfs + (i * 8), Double.doubleToRawLongBits(flt));
+        }
+    }
+
+    private static long readLE64(byte[] source, int at) {
+        int lo = (source[at] & 0xFF) | ((source[at + 1] & 0xFF) << 8) | ((source[at + 2] & 0xFF) << 16) | (source[at + 3] << 24);
+        int hi = (source[at + 4] & 0xFF) | ((source[at + 5] & 0xFF) << 8) | ((source[at + 6] & 0xFF) << 16) | (source[at + 7] << 24);
+        return (lo & 0xFFFFFFFFL) | (((long) hi) << 32);
+    }
+    private static void writeLE32(byte[] dest, int at, int v) {
+        dest[at] = (byte) v;
+        dest[at + 1] = (byte) (v >> 8);
+        dest[at + 2] = (byte) (v >> 16);
+        dest[at + 3] = (byte) (v >> 24);
+    }
+    private static void writeLE64(byte[] dest, int at, long v) {
+        writeLE32(dest, at, (int) v);
+        writeLE32(dest, at + 4, (int) (v >> 32));
+    }
+
+    // G.711 A-law/u-law. Decoding is by table (to S16), encoding is computed.
+
+    private static final short[] ALAW_TO_S16 = new short[256];
+    private static final short[] ULAW_TO_S16 = new short[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            ALAW_TO_S16[i] = (short) computeALawToS16(i);
+            ULAW_TO_S16[i] = (short) computeULawToS16(i);
+        }
+    }
+
+    private static int computeALawToS16(int v) {
+        v ^= 0x55;
+        int t = (v & 0x0F) << 4;
+        int seg = (v & 0x70) >> 4;
+        if (seg == 0) {
+            t += 8;
+        } else {
+            t += 0x108;
+            t <<= seg - 1;
+        }
+        return (v & 0x80) != 0 ? t : -t;
+    }
+
+    private static int computeULawToS16(int v) {
+        v = ~v & 0xFF;
+        int t = (((v & 0x0F) << 3) + 0x84) << ((v & 0x70) >> 4);
+        return (v & 0x80) != 0 ? (0x84 - t) : (t - 0x84);
+    }
+
+    /**
+     * Decodes an A-law byte to a signed 16-bit value.
+     */
+    public static int aLawToS16(int v) {
+        return ALAW_TO_S16[v & 0xFF];
+    }
+
+    /**
+     * Decodes a u-law byte to a signed 16-bit value.
+     */
+    public static int uLawToS16(int v) {
+        return ULAW_TO_S16[v & 0xFF];
+    }
+
+    /**
+     * Encodes a signed 16-bit value as A-law.
+     */
+    public static int s16ToALaw(int v) {
+        int mask;
+        v >>= 3;
+        if (v >= 0) {
+            mask = 0xD5;
+        } else {
+            mask = 0x55;
+            v = -v - 1;
+        }
+        int seg = 0;
+        while (seg < 8 && v > ((0x20 << seg) - 1))
+            seg++;
+        if (seg >= 8)
+            return 0x7F ^ mask;
+        int aval = seg << 4;
+        aval |= (v >> (seg < 2 ? 1 : seg)) & 0x0F;
+        return aval ^ mask;
+    }
+
+    /**
+     * Encodes a signed 16-bit value as u-law.
+     */
+    public static int s16ToULaw(int v) {
+        int sign = 0;
+        if (v < 0) {
+            v = -v;
+            sign = 0x80;
+        }
+        if (v > 32635)
+            v = 32635;
+        v += 0x84;
+        int exp = 7;
+        for (int mask = 0x4000; (v & mask) == 0 && exp > 0; mask >>= 1)
+            exp--;
+        int mant = (v >> (exp + 3)) & 0x0F;
+        return ~(sign | (exp << 4) | mant) & 0xFF;
+    }
+
+    public static void bytesALawToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        g711ToF32(ALAW_TO_S16, source, sourceOfs, dest, destOfs, sourceLen);
+    }
+    public static void bytesULawToF32(byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        g711ToF32(ULAW_TO_S16, source, sourceOfs, dest, destOfs, sourceLen);
+    }
+    private static void g711ToF32(short[] table, byte[] source, int sourceOfs, float[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = table[source[sourceOfs + i] & 0xFF] & 0xFFFF;
+            dest[destOfs + i] = s32ToF32((v ^ 0x8000) | (v << 16));
+        }
+    }
+
+    public static void bytesALawToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        g711ToS32(ALAW_TO_S16, source, sourceOfs, dest, destOfs, sourceLen);
+    }
+    public static void bytesULawToS32(byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        g711ToS32(ULAW_TO_S16, source, sourceOfs, dest, destOfs, sourceLen);
+    }
+    private static void g711ToS32(short[] table, byte[] source, int sourceOfs, int[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++) {
+            int v = table[source[sourceOfs + i] & 0xFF] & 0xFFFF;
+            dest[destOfs + i] = (v ^ 0x8000) | (v << 16);
+        }
+    }
+
+    public static void f32ToBytesALaw(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (byte) s16ToALaw(f32ToS32(source[sourceOfs + i]) >> 16);
+    }
+    public static void f32ToBytesULaw(float[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (byte) s16ToULaw(f32ToS32(source[sourceOfs + i]) >> 16);
+    }
+    public static void s32ToBytesALaw(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (byte) s16ToALaw(source[sourceOfs + i] >> 16);
+    }
+    public static void s32ToBytesULaw(int[] source, int sourceOfs, byte[] dest, int destOfs, int sourceLen) {
+        for (int i = 0; i < sourceLen; i++)
+            dest[destOfs + i] = (byte) s16ToULaw(source[sourceOfs + i] >> 16);
+    }
+
     /**
      * Flips the sign of a byte array. NOT negation, that works differently! May be done in-place (source == dest)
      */
@@ -0,0 +1,242 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+package gabien.media.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.uslx.append.AsyncResult;
+import gabien.uslx.append.WorkerPool;
+
+/**
+ * Decodes another source ahead of the consumer on a WorkerPool.
+ * Decode jobs are kept short (one block) and requeue themselves, so many sources share the threads fairly.
+ * Decoded frames go into a single-producer single-consumer ring, so reading never waits on the decoder.
+ * The decoder stops when the ring is full (back-pressure) and is requeued as the consumer makes room.
+ * If the consumer gets ahead of the decoder, it gets silence (unless blocking is enabled), and the decoder skips what was missed so it stays in sync.
+ * Closing this closes the source.
+ * Created 18th October, 2026.
+ */
+public final class PrefetchingAudioSource extends AudioIOSource.SourceF32 {
+    /**
+     * Default prefetch amount in frames.
+     */
+    public static final int DEFAULT_AHEAD_FRAMES = 0x10000;
+
+    private static @Nullable WorkerPool defaultPool;
+
+    private final AudioIOSource source;
+    private final WorkerPool pool;
+    private final int frameCount;
+    private final int capacity;
+    private final float[] ring;
+    private final float[] block;
+    private final boolean blocking;
+
+    // Positions in frames. Only the decoder writes writePos and only the consumer writes readPos.
+    // readPos may pass writePos if the consumer underruns, in which case the decoder discards until it catches up.
+    private volatile int writePos, readPos;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable fillJob = this::fill;
+    private volatile boolean closed;
+    private volatile @Nullable IOException failure;
+    private @Nullable AsyncResult<PrefetchingAudioSource> primed;
+    private volatile int underrunFrames;
+
+    /**
+     * Starts prefetching immediately.
+     * If blocking is true, reads wait for the decoder rather than underrunning; don't use that on an audio or render thread.
+     */
+    public PrefetchingAudioSource(AudioIOSource source, WorkerPool pool, int aheadFrames, boolean blocking) {
+        this(source, pool, aheadFrames, blocking, null);
+    }
+
+    private PrefetchingAudioSource(AudioIOSource source, WorkerPool pool, int aheadFrames, boolean blocking, @Nullable AsyncResult<PrefetchingAudioSource> primed) {
+        super(source.crSet);
+        if (aheadFrames <= 0)
+            throw new IllegalArgumentException("aheadFrames must be positive");
+        this.source = source;
+        this.pool = pool;
+        this.blocking = blocking;
+        this.primed = primed;
+        frameCount = source.frameCount();
+        capacity = Math.max(1, Math.min(aheadFrames, frameCount));
+        ring = new float[capacity * crSet.channels];
+        block = new float[AudioIOSource.BLOCK_FRAMES * crSet.channels];
+        requestFill();
+    }
+
+    /**
+     * Gets the shared audio decode pool, with one thread per processor.
+     */
+    public static synchronized WorkerPool getDefaultPool() {
+        WorkerPool pool = defaultPool;
+        if (pool == null)
+            defaultPool = pool = new WorkerPool("AudioDecodePool");
+        return pool;
+    }
+
+    /**
+     * Wraps a source, completing the result once the prefetch buffer has been filled (or the source is used up).
+     * Fails the result if decoding fails before then.
+     */
+    public static AsyncResult<PrefetchingAudioSource> prime(AudioIOSource source, WorkerPool pool, int aheadFrames, boolean blocking) {
+        AsyncResult<PrefetchingAudioSource> res = new AsyncResult<>();
+        PrefetchingAudioSource pas = new PrefetchingAudioSource(source, pool, aheadFrames, blocking, res);
+        // nothing to decode, so the decoder never runs
+        if (pas.frameCount == 0)
+            res.complete(pas);
+        return res;
+    }
+
+    @Override
+    public int frameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Frames decoded and waiting to be read.
+     */
+    public int getBufferedFrames() {
+        return Math.max(0, writePos - readPos);
+    }
+
+    /**
+     * Total frames replaced with silence because the decoder fell behind.
+     */
+    public int getUnderrunFrames() {
+        return underrunFrames;
+    }
+
+    /**
+     * If decoding failed, the failure. The rest of the stream is silence.
+     */
+    public @Nullable IOException getFailure() {
+        return failure;
+    }
+
+    private void requestFill() {
+        if (closed || failure != null || writePos >= frameCount)
+            return;
+        if (scheduled.compareAndSet(false, true))
+            pool.execute(fillJob);
+    }
+
+    /**
+     * Decoder job: decodes one block, then requeues itself if there's still room.
+     */
+    private void fill() {
+        try {
+            synchronized (source) {
+                if (closed)
+                    return;
+                int w = writePos;
+                int r = readPos;
+                int room = capacity - (w - r);
+                int am = Math.min(Math.min(room, AudioIOSource.BLOCK_FRAMES), frameCount - w);
+                if (am > 0) {
+                    source.nextFrames(block, 0, am);
+                    int channels = crSet.channels;
+                    // anything before r has already been given up on
+                    int skip = Math.max(0, r - w);
+                    for (int i = skip; i < am; i++) {
+                        int slot = ((w + i) % capacity) * channels;
+                        System.arraycopy(block, i * channels, ring, slot, channels);
+                    }
+                    writePos = w + am;
+                }
+            }
+        } catch (IOException ioe) {
+            failure = ioe;
+        } catch (RuntimeException re) {
+            failure = new IOException(re);
+        } finally {
+            scheduled.set(false);
+        }
+        if (blocking) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        int room = capacity - (writePos - readPos);
+        boolean done = failure != null || writePos >= frameCount || closed;
+        AsyncResult<PrefetchingAudioSource> p = primed;
+        if (p != null && (done || room <= 0)) {
+            primed = null;
+            IOException f = failure;
+            if (f != null) {
+                p.fail(f);
+            } else {
+                p.complete(this);
+            }
+        }
+        if (!done && room > 0)
+            requestFill();
+    }
+
+    @Override
+    public void nextFrames(float[] frame, int at, int frames) throws IOException {
+        if (frames > frameCount - readPos)
+            throw new EOFException("Out of frames!");
+        // in blocking mode, waiting for more than the ring holds would never finish
+        while (frames > 0) {
+            int am = Math.min(frames, capacity);
+            nextFramesChunk(frame, at, am);
+            at += am * crSet.channels;
+            frames -= am;
+        }
+    }
+
+    private void nextFramesChunk(float[] frame, int at, int frames) {
+        int r = readPos;
+        int channels = crSet.channels;
+        if (blocking) {
+            synchronized (this) {
+                while (writePos - r < frames && failure == null && !closed) {
+                    requestFill();
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        int avail = Math.max(0, Math.min(frames, writePos - r));
+        int done = 0;
+        while (done < avail) {
+            int slot = (r + done) % capacity;
+            int am = Math.min(avail - done, capacity - slot);
+            System.arraycopy(ring, slot * channels, frame, at + (done * channels), am * channels);
+            done += am;
+        }
+        if (avail < frames) {
+            for (int i = avail * channels; i < frames * channels; i++)
+                frame[at + i] = 0;
+            underrunFrames += frames - avail;
+        }
+        readPos = r + frames;
+        requestFill();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (source) {
+            source.close();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+package gabien.media.audio;
+
+/**
+ * Block resampler for interleaved float audio.
+ * High quality mode is a polyphase windowed-sinc (Kaiser) filter, with the cutoff lowered when downsampling.
+ * Linear mode is plain linear interpolation, for when speed matters more.
+ * Positions are stepped as an exact fraction of the two rates, so there's no drift over long streams.
+ * Input is written in and output read out in blocks; output frame 0 lines up with input frame 0.
+ * Created 18th October, 2026.
+ */
+public final class Resampler {
+    /**
+     * Filter phases in the table; in-between phases are linearly interpolated.
+     */
+    private static final int PHASES = 256;
+    /**
+     * Zero crossings of the sinc on each side (at the cutoff frequency).
+     */
+    private static final int ZERO_CROSSINGS = 16;
+    private static final double KAISER_BETA = 8.0;
+    /**
+     * Cutoff relative to the lower of the two Nyquist frequencies, leaving room for the transition band.
+     */
+    private static final double CUTOFF = 0.95;
+    /**
+     * Input frames buffered at a time (besides the filter history).
+     */
+    public static final int BLOCK = 1024;
+
+    public final int channels, sourceRate, targetRate;
+    public final boolean highQuality;
+
+    // Step per output frame is stepInt + (stepFrac / den) input frames.
+    private final int stepInt, stepFrac, den;
+    private final int halfWidth, taps;
+    private final float[] table;
+    private final float[] coefs;
+
+    // Input buffer (interleaved), holding frames [0, inCount).
+    private final float[] inBuf;
+    private int inCount;
+    // Position of the next output frame within the input buffer: ipos + (fnum / den).
+    private int ipos, fnum;
+    // Once finished, the input buffer position of the end of the real input.
+    private boolean finished;
+    private int realEnd;
+
+    public Resampler(int channels, int sourceRate, int targetRate, boolean highQuality) {
+        if (channels <= 0 || sourceRate <= 0 || targetRate <= 0)
+            throw new IllegalArgumentException("Bad resampler parameters");
+        this.channels = channels;
+        this.sourceRate = sourceRate;
+        this.targetRate = targetRate;
+        this.highQuality = highQuality;
+        int g = gcd(sourceRate, targetRate);
+        int num = sourceRate / g;
+        den = targetRate / g;
+        stepInt = num / den;
+        stepFrac = num % den;
+        if (highQuality) {
+            double cutoff = CUTOFF * Math.min(1, targetRate / (double) sourceRate);
+            halfWidth = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+            taps = halfWidth * 2;
+            table = buildTable(halfWidth, cutoff);
+        } else {
+            halfWidth = 1;
+            taps = 2;
+            table = new float[0];
+        }
+        coefs = new float[taps];
+        inBuf = new float[(BLOCK + taps) * channels];
+        reset();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Zeroth-order modified Bessel function of the first kind, for the Kaiser window.
+     */
+    private static double besselI0(double x) {
+        double sum = 1, term = 1;
+        double hx = x / 2;
+        for (int k = 1; k < 64; k++) {
+            term *= hx / k;
+            double t2 = term * term;
+            sum += t2;
+            if (t2 < sum * 1e-12)
+                break;
+        }
+        return sum;
+    }
+
+    /**
+     * Row p (of PHASES + 1) holds the taps for a fractional position of p / PHASES.
+     * Tap j applies to input frame (position - (halfWidth - 1) + j).
+     */
+    private static float[] buildTable(int halfWidth, double cutoff) {
+        int taps = halfWidth * 2;
+        float[] table = new float[(PHASES + 1) * taps];
+        double i0b = besselI0(KAISER_BETA);
+        for (int p = 0; p <= PHASES; p++) {
+            double frac = p / (double) PHASES;
+            double sum = 0;
+            int base = p * taps;
+            for (int j = 0; j < taps; j++) {
+                double x = (j - (halfWidth - 1)) - frac;
+                double sx = x * cutoff;
+                double sinc = sx == 0 ? 1 : Math.sin(Math.PI * sx) / (Math.PI * sx);
+                double wx = x / halfWidth;
+                double w = wx <= -1 || wx >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - (wx * wx))) / i0b;
+                double v = sinc * w;
+                table[base + j] = (float) v;
+                sum += v;
+            }
+            // unity gain at DC
+            for (int j = 0; j < taps; j++)
+                table[base + j] /= sum;
+        }
+        return table;
+    }
+
+    /**
+     * Resets to the initial state (nothing written yet).
+     */
+    public void reset() {
+        // history of silence, so that output 0 lines up with input 0
+        inCount = halfWidth - 1;
+        for (int i = 0; i < inCount * channels; i++)
+            inBuf[i] = 0;
+        ipos = halfWidth - 1;
+        fnum = 0;
+        finished = false;
+        realEnd = 0;
+    }
+
+    /**
+     * Makes room for more input and returns how many frames write would currently accept.
+     */
+    public int getInputRoom() {
+        compact();
+        if (finished)
+            return 0;
+        return (inBuf.length / channels) - inCount;
+    }
+
+    /**
+     * Writes input frames. Returns how many were accepted (see getInputRoom).
+     */
+    public int write(float[] in, int ofs, int frames) {
+        frames = Math.min(frames, getInputRoom());
+        System.arraycopy(in, ofs, inBuf, inCount * channels, frames * channels);
+        inCount += frames;
+        return frames;
+    }
+
+    /**
+     * Marks the end of the input. The remaining output can then be read (the filter sees silence past the end).
+     */
+    public void finish() {
+        if (!finished) {
+            finished = true;
+            realEnd = inCount;
+        }
+    }
+
+    /**
+     * Reads output frames. Returns how many were produced.
+     * If this is less than asked for, more input is needed, or the end was reached (if finished).
+     */
+    public int read(float[] out, int ofs, int frames) {
+        int produced = 0;
+        int ch = channels;
+        while (produced < frames) {
+            if (ipos + halfWidth >= inCount) {
+                if (!finished || ipos >= realEnd)
+                    break;
+                padWithSilence();
+                continue;
+            }
+            // render as many frames as the buffered input allows in one go
+            int limit = inCount - halfWidth;
+            while (produced < frames && ipos < limit) {
+                int first = ipos - (halfWidth - 1);
+                if (finished && ipos >= realEnd)
+                    return produced;
+                if (highQuality) {
+                    renderSinc(inBuf, first, fnum, out, ofs);
+                } else {
+                    renderLinear(inBuf, ipos, fnum, out, ofs);
+                }
+                ofs += ch;
+                produced++;
+                ipos += stepInt;
+                fnum += stepFrac;
+                if (fnum >= den) {
+                    fnum -= den;
+                    ipos++;
+                }
+            }
+        }
+        return produced;
+    }
+
+    private void padWithSilence() {
+        compact();
+        int room = (inBuf.length / channels) - inCount;
+        int needed = (ipos + halfWidth + 1) - inCount;
+        int am = Math.min(room, Math.max(needed, BLOCK));
+        int base = inCount * channels;
+        for (int i = 0; i < am * channels; i++)
+            inBuf[base + i] = 0;
+        inCount += am;
+    }
+
+    /**
+     * Drops input that's no longer needed.
+     */
+    private void compact() {
+        int keep = ipos - (halfWidth - 1);
+        if (keep <= 0)
+            return;
+        keep = Math.min(keep, inCount);
+        System.arraycopy(inBuf, keep * channels, inBuf, 0, (inCount - keep) * channels);
+        inCount -= keep;
+        ipos -= keep;
+        realEnd -= keep;
+    }
+
+    private void renderLinear(float[] src, int pos, int fn, float[] out, int ofs) {
+        float f = fn / (float) den;
+        int a = pos * channels;
+        int b = a + channels;
+        for (int c = 0; c < channels; c++) {
+            float va = src[a + c];
+            out[ofs + c] = va + ((src[b + c] - va) * f);
+        }
+    }
+
+    private void renderSinc(float[] src, int first, int fn, float[] out, int ofs) {
+        // work out the taps for this exact position
+        double pf = (fn * (double) PHASES) / den;
+        int p = (int) pf;
+        float t = (float) (pf - p);
+        float[] tab = table;
+        float[] cf = coefs;
+        int r0 = p * taps;
+        int r1 = r0 + taps;
+        for (int j = 0; j < taps; j++) {
+            float c0 = tab[r0 + j];
+            cf[j] = c0 + ((tab[r1 + j] - c0) * t);
+        }
+        int ch = channels;
+        if (ch == 1) {
+            float acc = 0;
+            for (int j = 0; j < taps; j++)
+                acc += src[first + j] * cf[j];
+            out[ofs] = acc;
+        } else if (ch == 2) {
+            float accL = 0, accR = 0;
+            int at = first * 2;
+            for (int j = 0; j < taps; j++) {
+                float c = cf[j];
+                accL += src[at++] * c;
+                accR += src[at++] * c;
+            }
+            out[ofs] = accL;
+            out[ofs + 1] = accR;
+        } else {
+            for (int c = 0; c < ch; c++) {
+                float acc = 0;
+                int at = (first * ch) + c;
+                for (int j = 0; j < taps; j++) {
+                    acc += src[at] * cf[j];
+                    at += ch;
+                }
+                out[ofs + c] = acc;
+            }
+        }
+    }
+
+    /**
+     * Resamples a whole block of interleaved audio at once.
+     * The result has outFrames frames (normally frames * targetRate / sourceRate).
+     * If loop is set, the filter wraps around the ends (for looping samples), otherwise it sees silence.
+     */
+    public static float[] resample(float[] data, int channels, int frames, int sourceRate, int targetRate, int outFrames, boolean highQuality, boolean loop) {
+        Resampler rs = new Resampler(channels, sourceRate, targetRate, highQuality);
+        int hw = rs.halfWidth;
+        // input with history and lookahead attached, so this can run straight through
+        int pre = hw - 1;
+        int post = hw + 1 + rs.stepInt + 1;
+        float[] padded = new float[(pre + frames + post) * channels];
+        System.arraycopy(data, 0, padded, pre * channels, frames * channels);
+        if (loop && frames > 0) {
+            for (int i = 0; i < pre; i++) {
+                int srcFrame = (((i - pre) % frames) + frames) % frames;
+                System.arraycopy(data, srcFrame * channels, padded, i * channels, channels);
+            }
+            for (int i = 0; i < post; i++) {
+                int srcFrame = i % frames;
+                System.arraycopy(data, srcFrame * channels, padded, (pre + frames + i) * channels, channels);
+            }
+        }
+        float[] out = new float[outFrames * channels];
+        int ipos = 0, fnum = 0;
+        int ofs = 0;
+        for (int i = 0; i < outFrames; i++) {
+            if (ipos >= frames)
+                break;
+            if (highQuality) {
+                rs.renderSinc(padded, ipos, fnum, out, ofs);
+            } else {
+                rs.renderLinear(padded, ipos + pre, fnum, out, ofs);
+            }
+            ofs += channels;
+            ipos += rs.stepInt;
+            fnum += rs.stepFrac;
+            if (fnum >= rs.den) {
+                fnum -= rs.den;
+                ipos++;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+package gabien.media.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Resamples another source on the fly (see Resampler).
+ * The source is pulled in blocks as needed, so this doesn't hold the whole thing in memory.
+ * Closing this closes the source.
+ * Created 18th October, 2026.
+ */
+public final class ResamplingAudioSource extends AudioIOSource.SourceF32 {
+    private final AudioIOSource source;
+    private final Resampler resampler;
+    private final float[] block;
+    private final int frameCount;
+    private int sourceRemaining, framesDelivered;
+    private boolean sourceFinished;
+
+    public ResamplingAudioSource(AudioIOSource source, int sampleRate, boolean highQuality) {
+        super(new AudioIOCRSet(source.crSet.channels, sampleRate));
+        this.source = source;
+        resampler = new Resampler(source.crSet.channels, source.crSet.sampleRate, sampleRate, highQuality);
+        block = new float[Resampler.BLOCK * source.crSet.channels];
+        sourceRemaining = source.frameCount();
+        frameCount = (int) ((sampleRate * (long) sourceRemaining) / source.crSet.sampleRate);
+    }
+
+    @Override
+    public int frameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void nextFrames(float[] frame, int at, int frames) throws IOException {
+        if (frames > frameCount - framesDelivered)
+            throw new EOFException("Read past end of resampled source");
+        framesDelivered += frames;
+        int channels = crSet.channels;
+        while (frames > 0) {
+            int got = resampler.read(frame, at, frames);
+            at += got * channels;
+            frames -= got;
+            if (frames == 0)
+                return;
+            if (sourceRemaining > 0) {
+                int am = Math.min(Math.min(sourceRemaining, Resampler.BLOCK), resampler.getInputRoom());
+                source.nextFrames(block, 0, am);
+                resampler.write(block, 0, am);
+                sourceRemaining -= am;
+            } else if (!sourceFinished) {
+                resampler.finish();
+                sourceFinished = true;
+            } else {
+                // rounding at the very end; fill out with silence
+                for (int i = 0; i < frames * channels; i++)
+                    frame[at + i] = 0;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
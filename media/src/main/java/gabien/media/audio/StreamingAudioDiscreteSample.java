@@ -7,88 +7,196 @@
 
 package gabien.media.audio;
 
-import java.util.LinkedList;
+import org.eclipse.jdt.annotation.Nullable;
 
 /**
  * Audio player memory usage and such optimization
  * Created on 2nd August 2022.
  * Migrated to gabien-media on the 11th August 2022.
+ * Chunk table and LRU eviction added 18th October, 2026.
  */
 public class StreamingAudioDiscreteSample extends DiscreteSample {
     public final AudioIOSource baseSource;
     private final AudioIOFormat storageFormat;
+    private final @Nullable AudioIOSource.ISeekable seekableSource;
 
     /**
-     * List of chunk byte buffers.
-     * All chunks except the last must contain CHUNK_SIZE frames.
+     * Chunk byte buffers, indexed by chunk; null if not resident.
+     * All chunks except the last contain chunkSize frames.
      * All chunks are little-endian.
-     * The positions are used to track frames being read in.
      */
-    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+    private final byte[][] chunks;
     private final int frameSize;
     private final int chunkSize;
-    private int framesCached;
-    private int remainingFramesToCache;
+    /**
+     * Frame the base source will return next.
+     */
+    private int sourceFrame;
+
+    /**
+     * Memory budget for resident chunks in bytes, or 0 for no limit.
+     * Only enforced if the source can seek (otherwise evicted chunks couldn't be decoded again).
+     * Evicted chunks are the only reason the source is ever seeked.
+     */
+    private final long memoryBudget;
+    private long residentBytes;
+    /**
+     * LRU list of resident chunks (by index), most recently used at the head.
+     */
+    private final int[] lruPrev, lruNext;
+    private int lruHead = -1, lruTail = -1;
 
     public StreamingAudioDiscreteSample(AudioIOSource source, AudioIOFormat fmt) {
         this(source, fmt, 0x1000);
     }
 
     public StreamingAudioDiscreteSample(AudioIOSource source, AudioIOFormat fmt, int cs) {
+        this(source, fmt, cs, 0);
+    }
+
+    /**
+     * The memory budget is only applied if the source is an AudioIOSource.ISeekable.
+     */
+    public StreamingAudioDiscreteSample(AudioIOSource source, AudioIOFormat fmt, int cs, long memoryBudget) {
         super(source.crSet, source.frameCount());
         storageFormat = fmt;
         chunkSize = cs;
         frameSize = channels * fmt.bytesPerSample;
         baseSource = source;
-        framesCached = 0;
-        remainingFramesToCache = length;
+        seekableSource = source instanceof AudioIOSource.ISeekable ? (AudioIOSource.ISeekable) source : null;
+        this.memoryBudget = seekableSource != null ? memoryBudget : 0;
+        int chunkCount = (int) ((length + (long) chunkSize - 1) / chunkSize);
+        chunks = new byte[chunkCount][];
+        lruPrev = new int[chunkCount];
+        lruNext = new int[chunkCount];
+    }
+
+    /**
+     * Bytes currently held in decoded chunks.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
     }
 
-    private boolean addChunk() {
-        int framesInThisChunk = chunkSize;
-        if (remainingFramesToCache < framesInThisChunk)
-            framesInThisChunk = remainingFramesToCache;
-        if (framesInThisChunk <= 0)
-            return false;
-        byte[] chunkContent = new byte[framesInThisChunk * frameSize];
+    private void lruUnlink(int idx) {
+        int p = lruPrev[idx];
+        int n = lruNext[idx];
+        if (p != -1) {
+            lruNext[p] = n;
+        } else {
+            lruHead = n;
+        }
+        if (n != -1) {
+            lruPrev[n] = p;
+        } else {
+            lruTail = p;
+        }
+    }
+
+    private void lruPushHead(int idx) {
+        lruPrev[idx] = -1;
+        lruNext[idx] = lruHead;
+        if (lruHead != -1) {
+            lruPrev[lruHead] = idx;
+        } else {
+            lruTail = idx;
+        }
+        lruHead = idx;
+    }
+
+    private int chunkFrames(int idx) {
+        return Math.min(chunkSize, length - (idx * chunkSize));
+    }
+
+    /**
+     * Decodes a chunk into the given buffer.
+     * The source is only seeked if the chunk is behind it, which only happens when re-decoding an evicted chunk.
+     * Otherwise chunks are decoded in order, as seeking loses state in some sources (i.e. held notes in MIDISynthesizerSource).
+     */
+    private void decodeChunk(int idx, byte[] chunkContent) {
+        int start = idx * chunkSize;
+        int frames = chunkFrames(idx);
         try {
-            baseSource.nextFramesInFormat(storageFormat, chunkContent, 0, framesInThisChunk);
+            AudioIOSource.ISeekable seekable = seekableSource;
+            if (sourceFrame != start && seekable != null) {
+                seekable.seekToFrame(start);
+                sourceFrame = start;
+            }
+            baseSource.nextFramesInFormat(storageFormat, chunkContent, 0, frames);
         } catch (Exception ioe) {
             // well, we tried
             // ioe.printStackTrace();
         }
-        chunks.add(chunkContent);
-        remainingFramesToCache -= framesInThisChunk;
-        framesCached += framesInThisChunk;
-        return true;
+        sourceFrame = start + frames;
     }
 
-    private void locateFrame(int frame, Object buffer, boolean wantsF32) {
-        while (frame >= framesCached) {
-            if (!addChunk())
-                return;
+    /**
+     * Gets a buffer for a chunk of the given size, evicting chunks to stay in budget (and reusing one if possible).
+     */
+    private byte[] allocChunk(int bytes) {
+        byte[] recycled = null;
+        if (memoryBudget > 0) {
+            while (lruTail != -1 && residentBytes + bytes > memoryBudget) {
+                int victim = lruTail;
+                byte[] victimData = chunks[victim];
+                lruUnlink(victim);
+                chunks[victim] = null;
+                residentBytes -= victimData.length;
+                if (victimData.length == bytes)
+                    recycled = victimData;
+            }
         }
-        int chunkIdx = frame / chunkSize;
-        if ((chunkIdx < 0) || (chunkIdx >= chunks.size()))
-            return;
-        byte[] chk = chunks.get(chunkIdx);
-        frame -= chunkIdx * chunkSize;
-        int chunkFrames = chk.length / frameSize;
-        if (frame >= chunkFrames)
+        return recycled != null ? recycled : new byte[bytes];
+    }
+
+    private void makeResident(int idx, byte[] chunkContent) {
+        chunks[idx] = chunkContent;
+        residentBytes += chunkContent.length;
+        lruPushHead(idx);
+    }
+
+    /**
+     * Gets a chunk, decoding it (and anything needed before it) if necessary.
+     */
+    private byte[] getChunk(int idx) {
+        byte[] chk = chunks[idx];
+        if (chk != null) {
+            if (lruHead != idx) {
+                lruUnlink(idx);
+                lruPushHead(idx);
+            }
+            return chk;
+        }
+        // Not decoded yet, so everything up to this point is read in order (and kept, budget permitting).
+        // If the chunk is behind the source, it was evicted, and decodeChunk seeks back to it.
+        while (sourceFrame < idx * chunkSize) {
+            int pending = sourceFrame / chunkSize;
+            byte[] skipped = chunks[pending];
+            if (skipped != null) {
+                // already resident (the source was seeked back before it); decoding it again keeps the source in order
+                decodeChunk(pending, skipped);
+                continue;
+            }
+            skipped = allocChunk(chunkFrames(pending) * frameSize);
+            decodeChunk(pending, skipped);
+            makeResident(pending, skipped);
+        }
+        chk = allocChunk(chunkFrames(idx) * frameSize);
+        decodeChunk(idx, chk);
+        makeResident(idx, chk);
+        return chk;
+    }
+
+    private void locateFrame(int frame, Object buffer, boolean wantsF32) {
+        if ((frame < 0) || (frame >= length))
             return;
-        int chkOfs = frame * frameSize;
+        int chunkIdx = frame / chunkSize;
+        byte[] chk = getChunk(chunkIdx);
+        int chkOfs = (frame - (chunkIdx * chunkSize)) * frameSize;
         if (wantsF32) {
-            float[] buf = (float[]) buffer;
-            for (int i = 0; i < channels; i++) {
-                buf[i] = (float) storageFormat.asF64(chk, chkOfs);
-                chkOfs += storageFormat.bytesPerSample;
-            }
+            storageFormat.asF32(chk, chkOfs, (float[]) buffer, 0, channels);
         } else {
-            int[] buf = (int[]) buffer;
-            for (int i = 0; i < channels; i++) {
-                buf[i] = storageFormat.asS32(chk, chkOfs);
-                chkOfs += storageFormat.bytesPerSample;
-            }
+            storageFormat.asS32(chk, chkOfs, (int[]) buffer, 0, channels);
         }
     }
 
@@ -105,4 +213,33 @@ public class StreamingAudioDiscreteSample extends DiscreteSample {
             locateFrame(frame, buffer, false);
         }
     }
+
+    /**
+     * Bulk version of getF32. Frames outside of the sample are written as silence.
+     */
+    @Override
+    public void getF32(int frame, int frames, float[] buffer, int ofs) {
+        synchronized (this) {
+            while (frames > 0) {
+                if ((frame < 0) || (frame >= length)) {
+                    // silence up to the start of the sample or to the end of the request
+                    int am = frame < 0 ? (int) Math.min(frames, -(long) frame) : frames;
+                    for (int i = 0; i < am * channels; i++)
+                        buffer[ofs + i] = 0;
+                    ofs += am * channels;
+                    frame += am;
+                    frames -= am;
+                    continue;
+                }
+                int chunkIdx = frame / chunkSize;
+                int inChunk = frame - (chunkIdx * chunkSize);
+                int am = Math.min(frames, chunkFrames(chunkIdx) - inChunk);
+                byte[] chk = getChunk(chunkIdx);
+                storageFormat.asF32(chk, inChunk * frameSize, buffer, ofs, am * channels);
+                ofs += am * channels;
+                frame += am;
+                frames -= am;
+            }
+        }
+    }
 }
@@ -8,42 +8,85 @@
 package gabien.media.audio.fileio;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 import gabien.media.audio.AudioIOCRSet;
+import gabien.media.audio.AudioIOFormat;
 import gabien.media.audio.AudioIOSource;
+import gabien.media.midi.MIDIEventCursor;
+import gabien.media.midi.MIDIEventTable;
 import gabien.media.midi.MIDISequence;
 import gabien.media.midi.MIDISynthesizer;
 import gabien.media.midi.MIDITimer;
-import gabien.media.midi.MIDITracker;
 
 /**
+ * Renders a sequence. This runs as fast as the synthesizer allows, so it doubles as an offline renderer (see renderWAV).
+ * The sequence is compiled into a MIDIEventTable, so seeking is a binary search plus a replay of controller events.
  * Created 14th February 2024.
  */
-public class MIDISynthesizerSource extends AudioIOSource.SourceF32 {
-    private final MIDITracker tracker;
-    private final MIDITimer timer;
+public class MIDISynthesizerSource extends AudioIOSource.SourceF32 implements AudioIOSource.ISeekable {
+    private final MIDISequence.TimingInformation timing;
+    private final MIDIEventCursor cursor;
+    private MIDITimer timer;
     private final MIDISynthesizer synthesizer;
     private final int frameCount, chunkSize;
     private int totalFramesConsumed;
 
     public MIDISynthesizerSource(MIDISequence sequence, MIDISynthesizer synth, double cooloff) {
+        this(new MIDIEventTable(sequence), synth, cooloff);
+    }
+
+    /**
+     * The table may be shared with other sources.
+     */
+    public MIDISynthesizerSource(MIDIEventTable table, MIDISynthesizer synth, double cooloff) {
         super(new AudioIOCRSet(2, synth.sampleRate));
-        double totalTime = sequence.calcTimingInformation().lengthSeconds + cooloff;
+        timing = table.calcTimingInformation();
+        double totalTime = timing.lengthSeconds + cooloff;
         synthesizer = synth;
-        tracker = new MIDITracker(sequence, synthesizer);
-        timer = new MIDITimer(tracker);
+        cursor = new MIDIEventCursor(table, synthesizer);
+        timer = new MIDITimer(cursor);
         frameCount = (int) (totalTime * synth.sampleRate);
         chunkSize = synth.sampleRate > 100 ? (synth.sampleRate / 100) : 1;
         // get all the early events over with
         timer.resolve();
     }
 
+    /**
+     * Renders a whole sequence into a WAV file as fast as possible.
+     * For more speed on dense sequences, see MIDISynthesizer.setRenderThreads.
+     */
+    public static void renderWAV(OutputStream os, MIDISequence sequence, MIDISynthesizer synth, double cooloff, AudioIOFormat fmt) throws IOException {
+        WavIO.writeWAV(os, new MIDISynthesizerSource(sequence, synth, cooloff), fmt);
+    }
+
     @Override
     public int frameCount() {
         return frameCount;
     }
 
+    @Override
+    public int framePosition() {
+        return totalFramesConsumed;
+    }
+
+    @Override
+    public void seekToFrame(int frame) throws IOException {
+        if (frame < 0 || frame > frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of range 0-" + frameCount);
+        double time = frame / (double) synthesizer.sampleRate;
+        synthesizer.resetParameters();
+        synthesizer.clear();
+        int tick = timing.secondsToTick(time);
+        cursor.seekToTick(tick);
+        cursor.table.sendControllersBefore(cursor.getPosition(), synthesizer);
+        timer = new MIDITimer(cursor, timing.tickToSeconds(tick));
+        totalFramesConsumed = frame;
+        timer.currentTime = time;
+        timer.resolve();
+    }
+
     @Override
     public void nextFrames(float[] frame, int at, int frames) throws IOException {
         while (frames > 0) {
@@ -19,24 +19,40 @@ import gabien.media.audio.AudioIOSource;
 import gabien.natives.MP3Decoder;
 
 /**
+ * MP3 source.
+ * The length-measuring pass also records where each MP3 frame is, which is used for seeking.
  * Created 3rd November 2023.
  */
-public class MP3Source extends AudioIOSource.SourceF32 {
+public class MP3Source extends AudioIOSource.SourceF32 implements AudioIOSource.ISeekable {
+    /**
+     * Layer III frames can take main data from up to this many bytes before them (the bit reservoir).
+     * Seeking decodes at least this far back (plus a frame for the overlap) so the target frame decodes properly.
+     */
+    private static final int MAX_RESERVOIR = 511;
+
     private final MP3Decoder res;
     private final int frameCount;
 
     private final byte[] data;
     private int dataPosition = 0;
 
+    // Seek index: MP3 frame byte offsets and the audio frame each starts at.
+    private final int[] indexOffsets;
+    private final int[] indexFrames;
+
     private final float[] buffer = new float[MP3Decoder.MAX_SAMPLES_PER_FRAME];
     private int bufferPosition = 0;
     private int bufferRemainingFrames = 0;
+    private int framesToSkip;
+    private int framePosition;
 
-    private MP3Source(MP3Decoder res, int channels, int sampleRate, int frameCount, byte[] data) throws IOException {
+    private MP3Source(MP3Decoder res, int channels, int sampleRate, int frameCount, byte[] data, int[] indexOffsets, int[] indexFrames) throws IOException {
         super(new AudioIOCRSet(channels, sampleRate));
         this.res = res;
         this.data = data;
         this.frameCount = frameCount;
+        this.indexOffsets = indexOffsets;
+        this.indexFrames = indexFrames;
     }
 
     public static MP3Source fromInputStream(InputStream inp, boolean close) throws IOException {
@@ -57,6 +73,9 @@ public class MP3Source extends AudioIOSource.SourceF32 {
             int sampleRate = 22050;
             int channels = 1;
             int dataPosition = 0;
+            int[] indexOffsets = new int[256];
+            int[] indexFrames = new int[256];
+            int indexCount = 0;
             MP3Decoder res = new MP3Decoder();
             while (true) {
                 int frames = res.decodeFrame(data, dataPosition, data.length - dataPosition, null, 0);
@@ -66,6 +85,14 @@ public class MP3Source extends AudioIOSource.SourceF32 {
                         break;
                     continue;
                 } else {
+                    if (indexCount == indexOffsets.length) {
+                        indexOffsets = resize(indexOffsets, indexCount * 2);
+                        indexFrames = resize(indexFrames, indexCount * 2);
+                    }
+                    // where decoding this frame starts from (the decoder may skip junk before the frame itself)
+                    indexOffsets[indexCount] = dataPosition;
+                    indexFrames[indexCount] = frameCount;
+                    indexCount++;
                     frameCount += frames;
                     if (isFirst) {
                         sampleRate = res.getLastFrameSampleRate();
@@ -80,26 +107,84 @@ public class MP3Source extends AudioIOSource.SourceF32 {
                 throw new IOException("Not an MP3");
             }
             res.reset();
-            return new MP3Source(res, channels, sampleRate, frameCount, data);
+            return new MP3Source(res, channels, sampleRate, frameCount, data, resize(indexOffsets, indexCount), resize(indexFrames, indexCount));
         } finally {
             if (close)
                 inp.close();
         }
     }
 
+    private static int[] resize(int[] arr, int len) {
+        int[] res = new int[len];
+        System.arraycopy(arr, 0, res, 0, Math.min(arr.length, len));
+        return res;
+    }
+
     @Override
     public int frameCount() {
         return frameCount;
     }
 
+    @Override
+    public int framePosition() {
+        return framePosition;
+    }
+
+    @Override
+    public void seekToFrame(int frame) throws IOException {
+        if (frame < 0 || frame > frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of range 0-" + frameCount);
+        res.reset();
+        bufferRemainingFrames = 0;
+        framePosition = frame;
+        if (frame == frameCount) {
+            dataPosition = data.length;
+            framesToSkip = 0;
+            return;
+        }
+        // Find the MP3 frame containing the target.
+        int lo = 0, hi = indexFrames.length - 1, idx = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexFrames[mid] <= frame) {
+                idx = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        // Decode (and throw away) enough before it to fill the bit reservoir and the overlap.
+        int start = idx > 0 ? idx - 1 : 0;
+        while (start > 0 && indexOffsets[idx] - indexOffsets[start] < MAX_RESERVOIR)
+            start--;
+        for (int i = start; i < idx; i++)
+            res.decodeFrame(data, indexOffsets[i], data.length - indexOffsets[i], buffer, 0);
+        dataPosition = indexOffsets[idx];
+        framesToSkip = frame - indexFrames[idx];
+    }
+
     @Override
     public void nextFrames(@NonNull float[] frame, int at, int frames) throws IOException {
+        if (frames > frameCount - framePosition)
+            throw new EOFException("Out of frames!");
+        framePosition += frames;
+        int channels = crSet.channels;
         while (frames > 0) {
             if (bufferRemainingFrames > 0) {
-                for (int i = 0; i < crSet.channels; i++)
-                    frame[at++] = buffer[bufferPosition++];
-                frames--;
-                bufferRemainingFrames--;
+                if (framesToSkip > 0) {
+                    int skip = Math.min(framesToSkip, bufferRemainingFrames);
+                    bufferPosition += skip * channels;
+                    bufferRemainingFrames -= skip;
+                    framesToSkip -= skip;
+                } else {
+                    int am = Math.min(frames, bufferRemainingFrames);
+                    int samples = am * channels;
+                    System.arraycopy(buffer, bufferPosition, frame, at, samples);
+                    bufferPosition += samples;
+                    at += samples;
+                    bufferRemainingFrames -= am;
+                    frames -= am;
+                }
             } else {
                 bufferPosition = 0;
                 while (true) {
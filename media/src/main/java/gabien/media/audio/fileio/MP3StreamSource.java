@@ -0,0 +1,358 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+package gabien.media.audio.fileio;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gabien.media.audio.AudioIOCRSet;
+import gabien.media.audio.AudioIOSource;
+import gabien.natives.MP3Decoder;
+
+/**
+ * MP3 source that decodes frame by frame straight from an InputStream, holding only a small window of input.
+ * The length comes from the Xing/Info/VBRI header if there is one, or otherwise is estimated from the file size (assuming CBR).
+ * As such it's an estimate: if the stream runs short the rest is silence, and if it runs long the extra is dropped.
+ * This can't seek; see MP3Source for that (and for an exact length).
+ * Created 18th October, 2026.
+ */
+public class MP3StreamSource extends AudioIOSource.SourceF32 {
+    /**
+     * Input window size. The decoder wants a few frames of lookahead to sync, which this easily covers.
+     */
+    private static final int WINDOW = 16384;
+
+    private final MP3Decoder res;
+    private final InputStream input;
+    private final boolean closeInput;
+    private final int frameCount;
+
+    // Input window: data from windowStart to windowEnd is valid.
+    private final byte[] window = new byte[WINDOW * 2];
+    private int windowStart, windowEnd;
+    private boolean inputEOF;
+
+    private final float[] buffer = new float[MP3Decoder.MAX_SAMPLES_PER_FRAME];
+    private int bufferPosition = 0;
+    private int bufferRemainingFrames = 0;
+    private boolean decoderEOF;
+    private int framePosition;
+
+    private MP3StreamSource(MP3Decoder res, Probe probe, InputStream input, boolean closeInput, byte[] initial, int initialLength, boolean inputEOF) {
+        super(new AudioIOCRSet(probe.channels, probe.sampleRate));
+        this.res = res;
+        this.frameCount = probe.frameCount;
+        this.input = input;
+        this.closeInput = closeInput;
+        System.arraycopy(initial, 0, window, 0, initialLength);
+        windowEnd = initialLength;
+        this.inputEOF = inputEOF;
+    }
+
+    /**
+     * Opens an MP3 stream for streaming playback.
+     * Falls back to a full scan (see MP3Source) if the length can't be worked out without one.
+     * If streaming, the stream is closed (if close is true) when the source is; it must remain open as long as the source is in use.
+     */
+    public static AudioIOSource open(InputStream inp, boolean close) throws IOException {
+        return open(inp, close, false);
+    }
+
+    /**
+     * Opens an MP3 stream. If exactLength is true, or the length can't be worked out from the start of the stream, a full scan is done (see MP3Source).
+     */
+    public static AudioIOSource open(InputStream inp, boolean close, boolean exactLength) throws IOException {
+        if (exactLength)
+            return MP3Source.fromInputStream(inp, close);
+        // Only use a length that's actually known; available() is just an estimate (and often 0 or 1).
+        long streamLength = -1;
+        if (inp instanceof FileInputStream) {
+            FileChannel fc = ((FileInputStream) inp).getChannel();
+            streamLength = fc.size() - fc.position();
+        }
+        byte[] initial = new byte[WINDOW];
+        boolean handedOver = false;
+        try {
+            // Skip an ID3v2 tag on the stream itself, as it can be far bigger than the window (say, cover art).
+            // This also keeps it out of the stream length estimate.
+            int initialLength = readUpTo(inp, initial, 0, 10);
+            if (initialLength == 10 && initial[0] == 'I' && initial[1] == 'D' && initial[2] == '3') {
+                long tagLen = ((initial[6] & 0x7F) << 21) | ((initial[7] & 0x7F) << 14) | ((initial[8] & 0x7F) << 7) | (initial[9] & 0x7F);
+                if ((initial[5] & 0x10) != 0)
+                    tagLen += 10;
+                long skipped = skipUpTo(inp, tagLen);
+                if (streamLength >= 0)
+                    streamLength = Math.max(0, streamLength - (10 + skipped));
+                initialLength = 0;
+            }
+            initialLength += readUpTo(inp, initial, initialLength, WINDOW - initialLength);
+            boolean eof = initialLength < WINDOW;
+            if (eof)
+                streamLength = initialLength;
+            Probe probe = probe(initial, initialLength, streamLength);
+            if (probe == null) {
+                // full scan it is, with what's been read put back in front
+                handedOver = true;
+                InputStream rest = eof ? new ByteArrayInputStream(initial, 0, initialLength) : new SequenceInputStream(new ByteArrayInputStream(initial, 0, initialLength), inp);
+                try {
+                    return MP3Source.fromInputStream(rest, false);
+                } finally {
+                    if (close)
+                        inp.close();
+                }
+            }
+            MP3StreamSource src = new MP3StreamSource(new MP3Decoder(), probe, inp, close, initial, initialLength, eof);
+            handedOver = true;
+            return src;
+        } finally {
+            if (close && !handedOver)
+                inp.close();
+        }
+    }
+
+    /**
+     * Reads until len bytes have been read or the stream ends, returning how many were read.
+     */
+    private static int readUpTo(InputStream inp, byte[] data, int at, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int r = inp.read(data, at + total, len - total);
+            if (r < 0)
+                break;
+            total += r;
+        }
+        return total;
+    }
+
+    /**
+     * Skips until len bytes have been skipped or the stream ends, returning how many were skipped.
+     */
+    private static long skipUpTo(InputStream inp, long len) throws IOException {
+        long total = 0;
+        while (total < len) {
+            long s = inp.skip(len - total);
+            if (s > 0) {
+                total += s;
+                continue;
+            }
+            // skip can return 0 without being at the end, so check with a read
+            if (inp.read() < 0)
+                break;
+            total++;
+        }
+        return total;
+    }
+
+    /**
+     * Works out the format and length of the stream from the first frame.
+     * Any ID3v2 tag must already have been skipped.
+     * Returns null if there isn't enough to go on, or no frame was found (the full scan then decides what to make of it).
+     */
+    private static @Nullable Probe probe(byte[] data, int length, long streamLength) throws IOException {
+        try (MP3Decoder dec = new MP3Decoder()) {
+            int frames = dec.decodeFrame(data, 0, length, null, 0);
+            if (frames == 0)
+                return null;
+            int frameEnd = dec.getLastFrameBytes();
+            int sampleRate = dec.getLastFrameSampleRate();
+            int channels = dec.getLastFrameChannels();
+            int header = findHeader(data, 0, frameEnd, length);
+            if (header != -1) {
+                long tagFrames = readTagFrames(data, header, frameEnd);
+                // the tag frame itself decodes to a frame of silence
+                if (tagFrames > 0)
+                    return Probe.of(channels, sampleRate, (tagFrames + 1) * frames);
+            }
+            if (streamLength <= 0 || header == -1)
+                return null;
+            // no tag, so assume CBR
+            long frameBytes = frameEnd - header;
+            long estimate = ((streamLength - header) / frameBytes) * frames;
+            if (estimate <= 0)
+                return null;
+            return Probe.of(channels, sampleRate, estimate);
+        }
+    }
+
+    /**
+     * Finds the header of the frame the decoder found, given where it ended.
+     * The header must be valid and (if the next header is available) match it in version, layer and sample rate.
+     */
+    private static int findHeader(byte[] data, int from, int frameEnd, int length) {
+        boolean haveNext = frameEnd + 4 <= length && isHeader(data, frameEnd);
+        for (int i = from; i <= frameEnd - 4; i++) {
+            if (!isHeader(data, i))
+                continue;
+            if (haveNext && (((data[i + 1] ^ data[frameEnd + 1]) & 0xFE) != 0 || ((data[i + 2] ^ data[frameEnd + 2]) & 0x0C) != 0))
+                continue;
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isHeader(byte[] data, int i) {
+        int h1 = data[i + 1] & 0xFF;
+        int h2 = data[i + 2] & 0xFF;
+        return (data[i] & 0xFF) == 0xFF && (h1 & 0xE0) == 0xE0 && ((h1 >> 3) & 3) != 1 && ((h1 >> 1) & 3) != 0 && (h2 >> 4) != 15 && ((h2 >> 2) & 3) != 3;
+    }
+
+    /**
+     * Reads the frame count from a Xing/Info or VBRI tag in the frame at the given header.
+     * Returns -1 if there's no such tag (or it doesn't have a frame count).
+     */
+    private static long readTagFrames(byte[] data, int header, int frameEnd) {
+        int h1 = data[header + 1] & 0xFF;
+        boolean mpeg1 = ((h1 >> 3) & 3) == 3;
+        boolean layer3 = ((h1 >> 1) & 3) == 1;
+        boolean mono = ((data[header + 3] & 0xFF) >> 6) == 3;
+        if (!layer3)
+            return -1;
+        // Xing/Info goes after the side information
+        int xing = header + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        if (xing + 12 <= frameEnd && (tagIs(data, xing, "Xing") || tagIs(data, xing, "Info"))) {
+            int flags = readBE32(data, xing + 4);
+            if ((flags & 1) != 0)
+                return readBE32(data, xing + 8) & 0xFFFFFFFFL;
+            return -1;
+        }
+        // VBRI is always 32 bytes after the header
+        int vbri = header + 4 + 32;
+        if (vbri + 18 <= frameEnd && tagIs(data, vbri, "VBRI"))
+            return readBE32(data, vbri + 14) & 0xFFFFFFFFL;
+        return -1;
+    }
+
+    private static boolean tagIs(byte[] data, int at, String tag) {
+        for (int i = 0; i < 4; i++)
+            if (data[at + i] != tag.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static int readBE32(byte[] data, int at) {
+        return ((data[at] & 0xFF) << 24) | ((data[at + 1] & 0xFF) << 16) | ((data[at + 2] & 0xFF) << 8) | (data[at + 3] & 0xFF);
+    }
+
+    @Override
+    public int frameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Frames read so far.
+     */
+    public int framePosition() {
+        return framePosition;
+    }
+
+    /**
+     * Tops up the window (moving it back to the start of the array first if need be).
+     */
+    private void fillWindow() throws IOException {
+        if (windowStart >= WINDOW) {
+            System.arraycopy(window, windowStart, window, 0, windowEnd - windowStart);
+            windowEnd -= windowStart;
+            windowStart = 0;
+        }
+        while (!inputEOF && windowEnd - windowStart < WINDOW) {
+            int len = input.read(window, windowEnd, window.length - windowEnd);
+            if (len < 0) {
+                inputEOF = true;
+            } else {
+                windowEnd += len;
+            }
+        }
+    }
+
+    /**
+     * Decodes the next frame into the buffer. Returns false at the end of the stream.
+     */
+    private boolean decodeNext() throws IOException {
+        while (true) {
+            fillWindow();
+            int avail = windowEnd - windowStart;
+            if (avail == 0)
+                return false;
+            int frames = res.decodeFrame(window, windowStart, avail, buffer, 0);
+            int consumed = res.getLastFrameBytes();
+            if (frames > 0) {
+                windowStart += consumed;
+                bufferPosition = 0;
+                bufferRemainingFrames = frames;
+                return true;
+            }
+            if (consumed > 0 && (inputEOF || consumed < avail)) {
+                // junk, or a frame that couldn't be decoded (say, missing bit reservoir)
+                windowStart += consumed;
+            } else if (inputEOF) {
+                // the rest is a partial frame or junk
+                return false;
+            } else {
+                // nothing usable in a full window; move on (keeping the tail, which may be the start of a frame)
+                windowStart += avail - 4;
+            }
+        }
+    }
+
+    @Override
+    public void nextFrames(@NonNull float[] frame, int at, int frames) throws IOException {
+        if (frames > frameCount - framePosition)
+            throw new EOFException("Out of frames!");
+        framePosition += frames;
+        int channels = crSet.channels;
+        while (frames > 0) {
+            if (bufferRemainingFrames > 0) {
+                int am = Math.min(frames, bufferRemainingFrames);
+                int samples = am * channels;
+                System.arraycopy(buffer, bufferPosition, frame, at, samples);
+                bufferPosition += samples;
+                at += samples;
+                bufferRemainingFrames -= am;
+                frames -= am;
+            } else if (decoderEOF || !decodeNext()) {
+                // stream ran short of the estimate
+                decoderEOF = true;
+                int samples = frames * channels;
+                for (int i = 0; i < samples; i++)
+                    frame[at + i] = 0;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        res.close();
+        if (closeInput)
+            input.close();
+    }
+
+    private static final class Probe {
+        final int channels, sampleRate, frameCount;
+
+        private Probe(int channels, int sampleRate, int frameCount) {
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.frameCount = frameCount;
+        }
+
+        static Probe of(int channels, int sampleRate, long frameCount) throws IOException {
+            if (frameCount <= 0 || frameCount > Integer.MAX_VALUE)
+                throw new IOException("MP3 length " + frameCount + " makes no sense");
+            return new Probe(channels, sampleRate, (int) frameCount);
+        }
+    }
+}
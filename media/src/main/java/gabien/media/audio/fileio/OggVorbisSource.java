@@ -17,108 +17,208 @@ import org.eclipse.jdt.annotation.NonNull;
 import gabien.media.audio.AudioIOCRSet;
 import gabien.media.audio.AudioIOSource;
 import gabien.media.ogg.OggBufferedDemux;
-import gabien.media.ogg.OggBufferingInputStreamReader;
+import gabien.media.ogg.OggPacketsFromSegments;
+import gabien.media.ogg.OggPage;
+import gabien.media.ogg.OggPageCursor;
 import gabien.natives.VorbisDecoder;
+import gabien.uslx.io.PositionalInput;
 
 /**
+ * Ogg Vorbis source.
+ * The length is worked out from the granule position of the final page.
+ * Pages are demuxed on demand as frames are read, so memory use stays bounded (if reading from a file).
+ * Seeking uses an index of page offsets and granule positions, which is built as pages are read.
  * Created 20th October 2023.
  */
-public class OggVorbisSource extends AudioIOSource.SourceF32 {
+public class OggVorbisSource extends AudioIOSource.SourceF32 implements AudioIOSource.ISeekable {
     private final VorbisDecoder res;
+    private final OggPageCursor cursor;
+    private final int streamID;
     private final int frameCount;
-    int framesToDiscard;
-    private final LinkedList<byte[]> packets;
+    /**
+     * Decoded frames that aren't part of the stream (negative initial granule position).
+     */
+    private final int initialDiscard;
+    /**
+     * Granule position of the first decoded frame.
+     */
+    private final long startGranulePos;
+    /**
+     * The first audio packet always starts on a fresh page; this is that page.
+     */
+    private final long firstAudioPageOffset;
+
+    private final LinkedList<byte[]> packets = new LinkedList<>();
+    private final OggPacketsFromSegments opfs = new OggPacketsFromSegments((data, ofs, len) -> {
+        byte[] res = new byte[len];
+        System.arraycopy(data, ofs, res, 0, len);
+        packets.add(res);
+    });
+    private boolean ignoreContinued;
+    private long lastPageGranulePos;
+
+    // Seek index: pages of this stream that have granule positions, in order.
+    // Covers the input from firstAudioPageOffset to indexEnd.
+    private long[] indexOffsets = new long[64];
+    private long[] indexGranulePos = new long[64];
+    private int indexCount;
+    private long indexEnd;
+
     private final float[] buffer;
     private int bufferPosition = 0;
     private int bufferRemainingFrames = 0;
-    private OggVorbisSource(VorbisDecoder res, LinkedList<byte[]> packets, long igp) throws IOException {
+    private int framesToSkip;
+    private int framePosition;
+
+    private OggVorbisSource(VorbisDecoder res, OggPageCursor cursor, int streamID, long firstAudioPageOffset, long igp, long startGranulePos, long finalGranulePos) throws IOException {
         super(new AudioIOCRSet(res.channels, res.sampleRate));
         this.res = res;
-        this.packets = packets;
+        this.cursor = cursor;
+        this.streamID = streamID;
         this.buffer = new float[res.outputLength];
-        if (igp < 0)
-            framesToDiscard = (int) -igp;
-        boolean isFirst = true;
-        // Since we have all samples, we can measure the stream by inspecting packet headers.
-        // This doesn't require we actually *decode* it.
-        // The code to do this could be written in Java.
-        // However, treating stb_vorbis_g as a semi-independent project, having it there makes more sense.
-        // stb_vorbis_g doesn't know about Ogg and we don't know about Vorbis.
-        int tfc = 0;
-        for (byte[] b : packets) {
-            if (isFirst) {
-                isFirst = false;
-                continue;
-            }
-            tfc += res.getPacketSampleCount(b, 0, b.length);
-        }
-        tfc -= framesToDiscard;
-        frameCount = tfc;
+        this.firstAudioPageOffset = firstAudioPageOffset;
+        this.startGranulePos = startGranulePos;
+        initialDiscard = igp < 0 ? (int) -igp : 0;
+        long tfc = finalGranulePos - startGranulePos - initialDiscard;
+        if (tfc < 0 || tfc > Integer.MAX_VALUE)
+            throw new IOException("Final granule position " + finalGranulePos + " makes no sense");
+        frameCount = (int) tfc;
+        indexEnd = firstAudioPageOffset;
+        restartFromBeginning();
     }
 
+    /**
+     * Opens an Ogg Vorbis stream. See PositionalInput.from for how the stream is accessed and closed.
+     * If it ends up being read through its channel and close is false, it must remain open as long as the source is in use.
+     */
     public static OggVorbisSource fromInputStream(InputStream inp, boolean close) throws IOException {
+        return fromInput(PositionalInput.from(inp, close));
+    }
+
+    /**
+     * Opens an Ogg Vorbis stream. The source takes ownership of the input.
+     */
+    public static OggVorbisSource fromInput(PositionalInput input) throws IOException {
+        boolean handedOver = false;
         try {
-            OggBufferingInputStreamReader isr;
-            OggBufferedDemux.Stream stream;
-            {
-                OggBufferedDemux demux = new OggBufferedDemux();
-                isr = new OggBufferingInputStreamReader(inp, demux);
-                // Assume a compliant unchained stream.
-                // This procedure should be able to deal with (read: ignore) Ogg Skeleton and other odd cases.
-                // It can't handle chained streams, but chained streams are weird.
-                isr.readStartingBOSPages();
-                // Attempt to identify a Vorbis stream (i.e. the one we'll be using)
-                // Do this by peeking at first packet of each stream
-                stream = null;
-                for (OggBufferedDemux.Stream st : demux.streams) {
-                    if (st.packets.size() > 0) {
-                        byte[] packet1 = st.packets.getFirst();
-                        if (packet1.length < 7)
-                            continue;
-                        if (packet1[0] != 1)
-                            continue;
-                        if (packet1[1] != 'v')
-                            continue;
-                        if (packet1[2] != 'o')
-                            continue;
-                        if (packet1[3] != 'r')
-                            continue;
-                        if (packet1[4] != 'b')
-                            continue;
-                        if (packet1[5] != 'i')
-                            continue;
-                        if (packet1[6] != 's')
-                            continue;
-                        stream = st;
-                        break;
-                    }
+            OggPageCursor cursor = new OggPageCursor(input);
+            OggBufferedDemux demux = new OggBufferedDemux();
+            // Assume a compliant unchained stream.
+            // This procedure should be able to deal with (read: ignore) Ogg Skeleton and other odd cases.
+            // It can't handle chained streams, but chained streams are weird.
+            while (cursor.next()) {
+                if ((cursor.page[OggPage.FIELD_FLAGS] & OggPage.FLAG_BOS) == 0) {
+                    // don't consume the first data page
+                    cursor.position = cursor.pageOffset;
+                    break;
                 }
-                // That stream is now the only stream we will buffer
-                // (all other streams can now be GC'd)
-                if (stream == null)
-                    throw new IOException("No Vorbis stream could be identified from the BOS pages.");
-                isr.out = stream;
+                demux.page(cursor.page, 0, cursor.pageLength);
             }
+            // Attempt to identify a Vorbis stream (i.e. the one we'll be using)
+            // Do this by peeking at first packet of each stream
+            OggBufferedDemux.Stream stream = null;
+            for (OggBufferedDemux.Stream st : demux.streams) {
+                if (st.packets.size() > 0) {
+                    byte[] packet1 = st.packets.getFirst();
+                    if (packet1.length < 7)
+                        continue;
+                    if (packet1[0] != 1)
+                        continue;
+                    if (packet1[1] != 'v')
+                        continue;
+                    if (packet1[2] != 'o')
+                        continue;
+                    if (packet1[3] != 'r')
+                        continue;
+                    if (packet1[4] != 'b')
+                        continue;
+                    if (packet1[5] != 'i')
+                        continue;
+                    if (packet1[6] != 's')
+                        continue;
+                    stream = st;
+                    break;
+                }
+            }
+            if (stream == null)
+                throw new IOException("No Vorbis stream could be identified from the BOS pages.");
             // Finish setup
             LinkedList<byte[]> packets = stream.packets;
+            long firstAudioPageOffset = -1;
             while (packets.size() < 4) {
-                if (!isr.readNextPage())
+                if (!cursor.next())
                     throw new IOException("Was unable to get header packets and a single data packet");
+                if (OggPage.getStreamID(cursor.page, 0) != stream.streamID)
+                    continue;
+                if (packets.size() >= 3 && firstAudioPageOffset == -1)
+                    firstAudioPageOffset = cursor.pageOffset;
+                stream.page(cursor.page, 0, cursor.pageLength);
             }
+            if (firstAudioPageOffset == -1)
+                throw new IOException("First audio packet doesn't start on a fresh page");
             // granule pos of packet 4 (1st audio packet)
             long initGranulePos = stream.lastGranulePos;
-            // grab all packets
-            while (isr.readNextPage());
             // do setup
             byte[] id = packets.removeFirst();
             packets.removeFirst();
             byte[] setup = packets.removeFirst();
             VorbisDecoder res = new VorbisDecoder(id, 0, id.length, setup, 0, setup.length);
-            return new OggVorbisSource(res, packets, initGranulePos);
+            // The remaining packets are those that finished on the same page as the 1st audio packet.
+            // The page's granule position minus their samples is where the stream starts.
+            long startGranulePos = initGranulePos - countPacketSamples(res, packets);
+            long finalGranulePos = scanFinalGranulePos(input, stream.streamID);
+            if (finalGranulePos == -1)
+                throw new IOException("Unable to find the final granule position");
+            OggVorbisSource ovs = new OggVorbisSource(res, cursor, stream.streamID, firstAudioPageOffset, initGranulePos, startGranulePos, finalGranulePos);
+            handedOver = true;
+            return ovs;
         } finally {
-            if (close)
-                inp.close();
+            if (!handedOver)
+                input.close();
+        }
+    }
+
+    /**
+     * Sums the sample counts of a list of audio packets, skipping the first (see VorbisDecoder.getPacketSampleCount).
+     * Since we have the packets, we can measure them by inspecting packet headers.
+     * This doesn't require we actually *decode* them.
+     * The code to do this could be written in Java.
+     * However, treating stb_vorbis_g as a semi-independent project, having it there makes more sense.
+     * stb_vorbis_g doesn't know about Ogg and we don't know about Vorbis.
+     */
+    private static long countPacketSamples(VorbisDecoder res, LinkedList<byte[]> packets) {
+        boolean isFirst = true;
+        long tfc = 0;
+        for (byte[] b : packets) {
+            if (isFirst) {
+                isFirst = false;
+                continue;
+            }
+            tfc += res.getPacketSampleCount(b, 0, b.length);
+        }
+        return tfc;
+    }
+
+    /**
+     * Finds the granule position of the last page of the given stream by reading backwards from the end.
+     * Returns -1 if none was found.
+     */
+    private static long scanFinalGranulePos(PositionalInput input, int streamID) throws IOException {
+        // Windows overlap by a full page, so any page is entirely within at least one window.
+        byte[] window = new byte[OggPage.MAX_PAGE_LENGTH * 2];
+        long end = input.length;
+        while (end > 0) {
+            long start = Math.max(0, end - window.length);
+            int len = (int) (end - start);
+            input.readFully(start, window, 0, len);
+            long gp = OggPage.findLastGranulePos(window, 0, len, streamID);
+            if (gp != -1)
+                return gp;
+            if (start == 0)
+                break;
+            end = start + OggPage.MAX_PAGE_LENGTH;
         }
+        return -1;
     }
 
     @Override
@@ -126,26 +226,168 @@ public class OggVorbisSource extends AudioIOSource.SourceF32 {
         return frameCount;
     }
 
+    @Override
+    public int framePosition() {
+        return framePosition;
+    }
+
+    @Override
+    public void seekToFrame(int frame) throws IOException {
+        if (frame < 0 || frame > frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of range 0-" + frameCount);
+        long target = frame + (long) initialDiscard;
+        long targetGranulePos = target + startGranulePos;
+        // Make sure the index reaches the target.
+        if (indexCount == 0 || indexGranulePos[indexCount - 1] < targetGranulePos) {
+            cursor.position = indexEnd;
+            while ((indexCount == 0 || indexGranulePos[indexCount - 1] < targetGranulePos) && cursor.next())
+                indexCurrentPage();
+        }
+        // Find the last indexed page at or before the target.
+        int lo = 0, hi = indexCount - 1, r = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexGranulePos[mid] <= targetGranulePos) {
+                r = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        // If the first packet starting on that page spills past the target, go back further.
+        long start = -1;
+        while (r >= 0) {
+            start = restartAt(indexOffsets[r]);
+            if (start != -1 && start <= target)
+                break;
+            r--;
+        }
+        if (r < 0) {
+            restartFromBeginning();
+            start = 0;
+        }
+        framesToSkip = (int) (target - start);
+        framePosition = frame;
+    }
+
+    /**
+     * Resets to the start of the audio.
+     */
+    private void restartFromBeginning() {
+        res.flush();
+        packets.clear();
+        opfs.discard();
+        ignoreContinued = false;
+        cursor.position = firstAudioPageOffset;
+        bufferRemainingFrames = 0;
+        framesToSkip = initialDiscard;
+        framePosition = 0;
+    }
+
+    /**
+     * Resets to the first packet starting on the given page (which is used to prime the decoder).
+     * Returns the decoded frame position at that point, or -1 if it couldn't be worked out.
+     */
+    private long restartAt(long pageOffset) throws IOException {
+        res.flush();
+        packets.clear();
+        opfs.discard();
+        ignoreContinued = true;
+        cursor.position = pageOffset;
+        bufferRemainingFrames = 0;
+        // Read until a granule position covers at least one packet.
+        while (packets.size() == 0 || lastPageGranulePos == -1)
+            if (!readOwnPage())
+                return -1;
+        // That granule position is the end of the last packet; walk back to the end of the first.
+        long end = lastPageGranulePos - countPacketSamples(res, packets);
+        byte[] primer = packets.removeFirst();
+        res.decodeFrame(primer, 0, primer.length, buffer, 0);
+        return end - startGranulePos;
+    }
+
+    /**
+     * Reads the next page of this stream, feeding the packets list. Returns false at the end.
+     */
+    private boolean readOwnPage() throws IOException {
+        while (cursor.next()) {
+            indexCurrentPage();
+            byte[] page = cursor.page;
+            if (OggPage.getStreamID(page, 0) != streamID)
+                continue;
+            if (OggPage.sendSegmentsTo(page, 0, opfs, ignoreContinued) != 0)
+                ignoreContinued = false;
+            lastPageGranulePos = OggPage.getGranulePos(page, 0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the cursor's current page to the index if it's next in line.
+     */
+    private void indexCurrentPage() {
+        if (cursor.pageOffset < indexEnd)
+            return;
+        indexEnd = cursor.position;
+        byte[] page = cursor.page;
+        if (OggPage.getStreamID(page, 0) != streamID)
+            return;
+        long gp = OggPage.getGranulePos(page, 0);
+        if (gp == -1)
+            return;
+        if (indexCount == indexOffsets.length) {
+            long[] nO = new long[indexCount * 2];
+            long[] nG = new long[indexCount * 2];
+            System.arraycopy(indexOffsets, 0, nO, 0, indexCount);
+            System.arraycopy(indexGranulePos, 0, nG, 0, indexCount);
+            indexOffsets = nO;
+            indexGranulePos = nG;
+        }
+        indexOffsets[indexCount] = cursor.pageOffset;
+        indexGranulePos[indexCount] = gp;
+        indexCount++;
+    }
+
     @Override
     public void nextFrames(@NonNull float[] frame, int at, int frames) throws IOException {
+        if (frames > frameCount - framePosition)
+            throw new EOFException("Out of frames!");
+        framePosition += frames;
+        int channels = res.channels;
         while (frames > 0) {
             if (bufferRemainingFrames > 0) {
-                if (framesToDiscard > 0) {
-                    // don't advance!
-                    bufferPosition += res.channels;
+                if (framesToSkip > 0) {
+                    int skip = Math.min(framesToSkip, bufferRemainingFrames);
+                    bufferPosition += skip * channels;
+                    bufferRemainingFrames -= skip;
+                    framesToSkip -= skip;
                 } else {
-                    for (int i = 0; i < res.channels; i++)
-                        frame[at++] = buffer[bufferPosition++];
-                    frames--;
+                    int am = Math.min(frames, bufferRemainingFrames);
+                    int samples = am * channels;
+                    System.arraycopy(buffer, bufferPosition, frame, at, samples);
+                    bufferPosition += samples;
+                    at += samples;
+                    bufferRemainingFrames -= am;
+                    frames -= am;
                 }
-                bufferRemainingFrames--;
             } else if (packets.size() > 0) {
                 bufferPosition = 0;
                 byte[] packet = packets.removeFirst();
                 bufferRemainingFrames = res.decodeFrame(packet, 0, packet.length, buffer, 0);
-            } else {
-                throw new EOFException("Out of frames!");
+            } else if (!readOwnPage()) {
+                // Stream ended short of the final granule position; pad with silence.
+                int samples = frames * channels;
+                for (int i = 0; i < samples; i++)
+                    frame[at++] = 0;
+                frames = 0;
             }
         }
     }
+
+    @Override
+    public void close() throws IOException {
+        cursor.input.close();
+        res.close();
+    }
 }
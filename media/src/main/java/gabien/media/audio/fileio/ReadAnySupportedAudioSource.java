@@ -7,14 +7,20 @@
 
 package gabien.media.audio.fileio;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import gabien.media.audio.AudioIOSource;
+import gabien.media.audio.PrefetchingAudioSource;
 import gabien.media.midi.MIDISequence;
 import gabien.media.midi.MIDISynthesizer;
 import gabien.media.midi.DefaultMIDIPalette;
+import gabien.uslx.append.AsyncResult;
+import gabien.uslx.append.WorkerPool;
 
 /**
  * Created 20th October, 2023.
@@ -26,11 +32,23 @@ public abstract class ReadAnySupportedAudioSource {
     }
 
     public static AudioIOSource open(InputStream inp, boolean close) throws IOException {
-        PushbackInputStream pb = new PushbackInputStream(inp);
-        int b = pb.read();
+        InputStream pb;
+        int b;
+        if (inp instanceof FileInputStream) {
+            // Peek without wrapping, so readers can still get at the channel (see OggVorbisSource).
+            FileChannel fc = ((FileInputStream) inp).getChannel();
+            ByteBuffer bb = ByteBuffer.allocate(1);
+            b = fc.read(bb, fc.position()) > 0 ? (bb.get(0) & 0xFF) : -1;
+            pb = inp;
+        } else {
+            PushbackInputStream pbis = new PushbackInputStream(inp);
+            b = pbis.read();
+            if (b != -1)
+                pbis.unread(b);
+            pb = pbis;
+        }
         if (b == -1)
             throw new IOException("Empty file");
-        pb.unread(b);
         if (b == 'O') {
             return OggVorbisSource.fromInputStream(pb, close);
         } else if (b == 'R') {
@@ -49,7 +67,40 @@ public abstract class ReadAnySupportedAudioSource {
             MIDISynthesizer synth = new MIDISynthesizer(22050, DefaultMIDIPalette.INSTANCE, MIDI_POLYPHONY);
             return new MIDISynthesizerSource(ms[0], synth, 2);
         } else {
-            return MP3Source.fromInputStream(inp, close);
+            return MP3StreamSource.open(pb, close);
         }
     }
+
+    /**
+     * Opens a source on the default audio decode pool and prefetches it (see PrefetchingAudioSource).
+     * The result completes once the prefetch buffer is full, so it can be played from any thread without waiting on decoding.
+     */
+    public static AsyncResult<PrefetchingAudioSource> openAsync(InputStream inp, boolean close) {
+        return openAsync(inp, close, PrefetchingAudioSource.getDefaultPool(), PrefetchingAudioSource.DEFAULT_AHEAD_FRAMES);
+    }
+
+    /**
+     * Opens a source on the given pool, then prefetches aheadFrames frames of it.
+     * Reads from the resulting source never block; if decoding falls behind, they get silence.
+     */
+    public static AsyncResult<PrefetchingAudioSource> openAsync(InputStream inp, boolean close, WorkerPool pool, int aheadFrames) {
+        AsyncResult<PrefetchingAudioSource> res = new AsyncResult<>();
+        pool.execute(() -> {
+            AudioIOSource src;
+            try {
+                src = open(inp, close);
+            } catch (Throwable t) {
+                res.fail(t);
+                return;
+            }
+            PrefetchingAudioSource.prime(src, pool, aheadFrames, false).whenDone((v, t) -> {
+                if (t != null) {
+                    res.fail(t);
+                } else {
+                    res.complete(v);
+                }
+            });
+        });
+        return res;
+    }
 }
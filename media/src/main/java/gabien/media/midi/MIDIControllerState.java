@@ -0,0 +1,86 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.media.midi;
+
+/**
+ * Records the controller values MIDISynthesizer cares about, as raw MIDI values.
+ * Used by MIDIEventTable to restore controller state after a seek.
+ * Created 18th October, 2026.
+ */
+final class MIDIControllerState implements MIDIEventReceiver {
+    private final byte[] bank = new byte[16];
+    private final byte[] program = new byte[16];
+    private final byte[] volume = new byte[16];
+    private final byte[] panController = new byte[16];
+    private final byte[] pan = new byte[16];
+    private final short[] pitchBend = new short[16];
+
+    MIDIControllerState() {
+        for (int i = 0; i < 16; i++) {
+            volume[i] = 127;
+            panController[i] = 10;
+            pan[i] = 64;
+            pitchBend[i] = 8192;
+        }
+    }
+
+    MIDIControllerState copy() {
+        MIDIControllerState res = new MIDIControllerState();
+        System.arraycopy(bank, 0, res.bank, 0, 16);
+        System.arraycopy(program, 0, res.program, 0, 16);
+        System.arraycopy(volume, 0, res.volume, 0, 16);
+        System.arraycopy(panController, 0, res.panController, 0, 16);
+        System.arraycopy(pan, 0, res.pan, 0, 16);
+        System.arraycopy(pitchBend, 0, res.pitchBend, 0, 16);
+        return res;
+    }
+
+    @Override
+    public void receiveEvent(byte status, byte[] data, int offset, int length) {
+        int si = status & 0xFF;
+        int mch = si & 0xF;
+        if (si >= 0xB0 && si <= 0xBF && length >= 2) {
+            int cc = data[offset] & 0x7F;
+            byte cv = (byte) (data[offset + 1] & 0x7F);
+            if (cc == 0) {
+                bank[mch] = cv;
+            } else if (cc == 7) {
+                volume[mch] = cv;
+            } else if (cc == 8 || cc == 10) {
+                panController[mch] = (byte) cc;
+                pan[mch] = cv;
+            }
+        } else if (si >= 0xC0 && si <= 0xCF && length >= 1) {
+            program[mch] = (byte) (data[offset] & 0x7F);
+        } else if (si >= 0xE0 && si <= 0xEF && length >= 2) {
+            pitchBend[mch] = (short) ((data[offset] & 0x7F) | ((data[offset + 1] & 0x7F) << 7));
+        }
+    }
+
+    /**
+     * Sends the recorded state as events.
+     */
+    void sendTo(MIDIEventReceiver receiver) {
+        byte[] tmp = new byte[2];
+        for (int i = 0; i < 16; i++) {
+            tmp[0] = 0;
+            tmp[1] = bank[i];
+            receiver.receiveEvent((byte) (0xB0 | i), tmp, 0, 2);
+            tmp[0] = program[i];
+            receiver.receiveEvent((byte) (0xC0 | i), tmp, 0, 1);
+            tmp[0] = 7;
+            tmp[1] = volume[i];
+            receiver.receiveEvent((byte) (0xB0 | i), tmp, 0, 2);
+            tmp[0] = panController[i];
+            tmp[1] = pan[i];
+            receiver.receiveEvent((byte) (0xB0 | i), tmp, 0, 2);
+            tmp[0] = (byte) (pitchBend[i] & 0x7F);
+            tmp[1] = (byte) (pitchBend[i] >> 7);
+            receiver.receiveEvent((byte) (0xE0 | i), tmp, 0, 2);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.media.midi;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Plays a MIDIEventTable. Drop-in replacement for MIDITracker (drive it with a MIDITimer), but doesn't parse anything while playing.
+ * Each runNextEvent call runs every event at the next tick.
+ * Created 18th October, 2026.
+ */
+public final class MIDIEventCursor implements MIDITimableThing {
+    public final MIDIEventTable table;
+    public @Nullable MIDIEventReceiver receiver;
+
+    // index of the next event to run
+    private int position;
+    private int currentTick;
+    private double ticksToSeconds;
+    // index of the next tempo change
+    private int nextTempo;
+
+    public MIDIEventCursor(MIDIEventTable table, @Nullable MIDIEventReceiver receiver) {
+        this.table = table;
+        this.receiver = receiver;
+        ticksToSeconds = table.initialTicksToSeconds;
+    }
+
+    /**
+     * Moves the cursor so that the next event run is the first at or after the given tick.
+     * Skipped events are not sent anywhere; see MIDIEventTable.sendControllersBefore for restoring controller state.
+     * Afterwards, getCurrentTick returns the given tick.
+     */
+    public void seekToTick(int tick) {
+        if (tick < 0)
+            tick = 0;
+        position = table.findEvent(tick);
+        currentTick = tick;
+        nextTempo = table.findTempoChange(position);
+        ticksToSeconds = nextTempo == 0 ? table.initialTicksToSeconds : table.tempoTicksToSeconds[nextTempo - 1];
+    }
+
+    /**
+     * Index (in the table) of the next event to run. Equal to the table's eventCount at the end.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public double getTicksToSeconds() {
+        return ticksToSeconds;
+    }
+
+    @Override
+    public int getCurrentTick() {
+        return currentTick;
+    }
+
+    @Override
+    public int getTickOfNextEvent() {
+        return position < table.eventCount ? table.getTick(position) : -1;
+    }
+
+    @Override
+    public boolean runNextEvent() {
+        if (position >= table.eventCount)
+            return false;
+        int tick = table.getTick(position);
+        currentTick = tick;
+        MIDIEventReceiver r = receiver;
+        int[] tempoEvents = table.tempoEvents;
+        do {
+            if (nextTempo < tempoEvents.length && tempoEvents[nextTempo] == position)
+                ticksToSeconds = table.tempoTicksToSeconds[nextTempo++];
+            if (r != null)
+                table.sendEvent(position, r);
+            position++;
+        } while (position < table.eventCount && table.getTick(position) == tick);
+        return true;
+    }
+}
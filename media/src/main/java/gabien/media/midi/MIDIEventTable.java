@@ -0,0 +1,244 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.media.midi;
+
+import java.util.LinkedList;
+
+/**
+ * A sequence compiled into a single time-sorted event list.
+ * Delta times, running status and track merging are all resolved once, up-front, so playing it (see MIDIEventCursor) is just walking arrays.
+ * Events are in exactly the order MIDITracker would run them.
+ * This is immutable, so any number of cursors can share one.
+ * Created 18th October, 2026.
+ */
+public final class MIDIEventTable {
+    /**
+     * Events between controller state checkpoints (see sendControllersBefore).
+     */
+    public static final int CHECKPOINT_INTERVAL = 128;
+
+    public final MIDISequence sequence;
+    public final int eventCount;
+
+    // Event i: tick eventTicks[i], status eventStatus[i], data from eventData[eventDataOffsets[i]] to eventData[eventDataOffsets[i + 1]].
+    private final int[] eventTicks;
+    private final byte[] eventStatus;
+    private final int[] eventDataOffsets;
+    private final byte[] eventData;
+
+    // Ticks to seconds before any event has run.
+    final double initialTicksToSeconds;
+    // Tempo change j: after event tempoEvents[j] runs, ticks to seconds becomes tempoTicksToSeconds[j].
+    final int[] tempoEvents;
+    final double[] tempoTicksToSeconds;
+
+    // Checkpoint k: controller state once all events before k * CHECKPOINT_INTERVAL have run.
+    private final MIDIControllerState[] controllerCheckpoints;
+
+    public MIDIEventTable(MIDISequence sequence) {
+        this.sequence = sequence;
+        Compiler c = new Compiler(sequence);
+        eventCount = c.count;
+        eventTicks = new int[eventCount];
+        eventStatus = new byte[eventCount];
+        eventDataOffsets = new int[eventCount + 1];
+        eventData = new byte[c.dataLen];
+        System.arraycopy(c.ticks, 0, eventTicks, 0, eventCount);
+        System.arraycopy(c.status, 0, eventStatus, 0, eventCount);
+        System.arraycopy(c.offsets, 0, eventDataOffsets, 0, eventCount);
+        eventDataOffsets[eventCount] = c.dataLen;
+        System.arraycopy(c.data, 0, eventData, 0, c.dataLen);
+        initialTicksToSeconds = c.initialTTS;
+        tempoEvents = new int[c.tempoCount];
+        tempoTicksToSeconds = new double[c.tempoCount];
+        System.arraycopy(c.tempoEvents, 0, tempoEvents, 0, c.tempoCount);
+        System.arraycopy(c.tempoTTS, 0, tempoTicksToSeconds, 0, c.tempoCount);
+        controllerCheckpoints = new MIDIControllerState[(eventCount / CHECKPOINT_INTERVAL) + 1];
+        MIDIControllerState cs = new MIDIControllerState();
+        for (int k = 0; k < controllerCheckpoints.length; k++) {
+            if (k > 0)
+                replay((k - 1) * CHECKPOINT_INTERVAL, k * CHECKPOINT_INTERVAL, cs);
+            controllerCheckpoints[k] = cs.copy();
+        }
+    }
+
+    public int getTick(int event) {
+        return eventTicks[event];
+    }
+
+    public byte getStatus(int event) {
+        return eventStatus[event];
+    }
+
+    /**
+     * Sends the given event to a receiver.
+     */
+    public void sendEvent(int event, MIDIEventReceiver receiver) {
+        int ofs = eventDataOffsets[event];
+        receiver.receiveEvent(eventStatus[event], eventData, ofs, eventDataOffsets[event + 1] - ofs);
+    }
+
+    /**
+     * Sends events from (inclusive) to to (exclusive) to a receiver, ignoring timing.
+     */
+    public void replay(int from, int to, MIDIEventReceiver receiver) {
+        for (int i = from; i < to; i++) {
+            int ofs = eventDataOffsets[i];
+            receiver.receiveEvent(eventStatus[i], eventData, ofs, eventDataOffsets[i + 1] - ofs);
+        }
+    }
+
+    /**
+     * Sends the controller state (see MIDIControllerState) in effect once all events before the given event have run.
+     * This restores controller state after a seek. It replays from the nearest checkpoint, so it costs at most CHECKPOINT_INTERVAL events.
+     */
+    public void sendControllersBefore(int event, MIDIEventReceiver receiver) {
+        int k = event / CHECKPOINT_INTERVAL;
+        MIDIControllerState cs = controllerCheckpoints[k].copy();
+        replay(k * CHECKPOINT_INTERVAL, event, cs);
+        cs.sendTo(receiver);
+    }
+
+    /**
+     * Finds the first event at or after the given tick (binary search).
+     * Returns eventCount if there is none.
+     */
+    public int findEvent(int tick) {
+        int lo = 0, hi = eventCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (eventTicks[mid] < tick) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Gets the ticks to seconds value in effect once all events before the given event have run (binary search).
+     */
+    public double getTicksToSecondsBefore(int event) {
+        int change = findTempoChange(event);
+        return change == 0 ? initialTicksToSeconds : tempoTicksToSeconds[change - 1];
+    }
+
+    /**
+     * Finds the first tempo change at or after the given event (binary search).
+     */
+    int findTempoChange(int event) {
+        int lo = 0, hi = tempoEvents.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tempoEvents[mid] < event) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Tick of the last event (or 0 if there are no events).
+     */
+    public int getLastTick() {
+        return eventCount == 0 ? 0 : eventTicks[eventCount - 1];
+    }
+
+    /**
+     * Calculate timing information. Same results as MIDISequence.calcTimingInformation, but only looks at tempo changes.
+     */
+    public MIDISequence.TimingInformation calcTimingInformation() {
+        // tick 0 events are "warm-up" and so go into the initial segment
+        int j = 0;
+        double tts = initialTicksToSeconds;
+        while (j < tempoEvents.length && eventTicks[tempoEvents[j]] == 0)
+            tts = tempoTicksToSeconds[j++];
+        LinkedList<MIDISequence.TimingSegment> ll = new LinkedList<>();
+        MIDISequence.TimingSegment lastBase = new MIDISequence.TimingSegment(0, 0, tts);
+        ll.add(lastBase);
+        while (j < tempoEvents.length) {
+            int tick = eventTicks[tempoEvents[j]];
+            // multiple changes at one tick collapse into the last of them
+            while (j < tempoEvents.length && eventTicks[tempoEvents[j]] == tick)
+                tts = tempoTicksToSeconds[j++];
+            if (tts != lastBase.ticksToSeconds) {
+                lastBase = new MIDISequence.TimingSegment(tick, lastBase.startTime + ((tick - lastBase.startTick) * lastBase.ticksToSeconds), tts);
+                ll.add(lastBase);
+            }
+        }
+        return new MIDISequence.TimingInformation(ll.toArray(new MIDISequence.TimingSegment[0]), getLastTick());
+    }
+
+    /**
+     * Runs a MIDITracker over the sequence once, recording what it does.
+     */
+    private static final class Compiler implements MIDIEventReceiver {
+        final MIDITracker tracker;
+        int count, dataLen, tempoCount;
+        int[] ticks = new int[256];
+        byte[] status = new byte[256];
+        int[] offsets = new int[256];
+        byte[] data = new byte[1024];
+        final double initialTTS;
+        double lastTTS;
+        int[] tempoEvents = new int[16];
+        double[] tempoTTS = new double[16];
+
+        Compiler(MIDISequence sequence) {
+            tracker = new MIDITracker(sequence, this);
+            initialTTS = lastTTS = tracker.getTicksToSeconds();
+            while (tracker.runNextEvent()) {
+                // everything of interest happens in receiveEvent
+            }
+        }
+
+        @Override
+        public void receiveEvent(byte st, byte[] src, int offset, int length) {
+            if (count == ticks.length) {
+                int[] nt = new int[count * 2];
+                System.arraycopy(ticks, 0, nt, 0, count);
+                ticks = nt;
+                byte[] ns = new byte[count * 2];
+                System.arraycopy(status, 0, ns, 0, count);
+                status = ns;
+                int[] no = new int[count * 2];
+                System.arraycopy(offsets, 0, no, 0, count);
+                offsets = no;
+            }
+            if (dataLen + length > data.length) {
+                byte[] nd = new byte[Math.max(data.length * 2, dataLen + length)];
+                System.arraycopy(data, 0, nd, 0, dataLen);
+                data = nd;
+            }
+            ticks[count] = tracker.getCurrentTick();
+            status[count] = st;
+            offsets[count] = dataLen;
+            System.arraycopy(src, offset, data, dataLen, length);
+            dataLen += length;
+            // the tracker handles tempo before passing the event on
+            double tts = tracker.getTicksToSeconds();
+            if (tts != lastTTS) {
+                if (tempoCount == tempoEvents.length) {
+                    int[] ne = new int[tempoCount * 2];
+                    System.arraycopy(tempoEvents, 0, ne, 0, tempoCount);
+                    tempoEvents = ne;
+                    double[] nv = new double[tempoCount * 2];
+                    System.arraycopy(tempoTTS, 0, nv, 0, tempoCount);
+                    tempoTTS = nv;
+                }
+                tempoEvents[tempoCount] = count;
+                tempoTTS[tempoCount] = tts;
+                tempoCount++;
+                lastTTS = tts;
+            }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.media.midi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Runs a batch of indexed jobs across some worker threads, with the calling thread joining in.
+ * Used by MIDISynthesizer's parallel render mode.
+ * Which thread runs which index is not defined, so jobs must not depend on it.
+ * The worker threads only reference this object, so they must be stopped with shutdown().
+ * Created 18th October, 2026.
+ */
+final class MIDIRenderWorkers {
+    private final Thread[] threads;
+    private final Object lock = new Object();
+    /**
+     * Next index to claim. The top 32 bits are the batch generation, so a late worker can never claim an index from the next batch.
+     */
+    private final AtomicLong next = new AtomicLong();
+    // guarded by lock
+    private @Nullable IJob job;
+    private int count;
+    private int generation;
+    private int remaining;
+    private boolean active;
+    private @Nullable RuntimeException failure;
+    private boolean shutdown;
+
+    MIDIRenderWorkers(int workerCount) {
+        threads = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            threads[i] = new Thread("MIDISynthesizer Render " + i) {
+                @Override
+                public void run() {
+                    workerLoop();
+                }
+            };
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return threads.length + 1;
+    }
+
+    /**
+     * Runs job.run(0) through job.run(count - 1), returning when all are done.
+     * The first exception thrown by a job is rethrown here.
+     * Not reentrant; only one thread may call this at a time.
+     */
+    public void run(IJob job, int count) {
+        int gen;
+        synchronized (lock) {
+            gen = ++generation;
+            this.job = job;
+            this.count = count;
+            remaining = count;
+            failure = null;
+            next.set(((long) gen) << 32);
+            active = true;
+            lock.notifyAll();
+        }
+        work(gen, job, count);
+        boolean interrupted = false;
+        RuntimeException err;
+        synchronized (lock) {
+            while (remaining > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            active = false;
+            // Don't keep the job (and so the synthesizer) alive between batches.
+            this.job = null;
+            err = failure;
+            failure = null;
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (err != null)
+            throw err;
+    }
+
+    /**
+     * Stops the worker threads.
+     * They're daemons, but they don't stop when the owner is garbage-collected, so this must be called.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void workerLoop() {
+        int lastGen = 0;
+        while (true) {
+            int gen, jobCount;
+            IJob jobRef;
+            synchronized (lock) {
+                while (!shutdown && (!active || generation == lastGen)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ie) {
+                        // keep going
+                    }
+                }
+                if (shutdown)
+                    return;
+                gen = generation;
+                jobRef = job;
+                jobCount = count;
+            }
+            lastGen = gen;
+            if (jobRef != null)
+                work(gen, jobRef, jobCount);
+        }
+    }
+
+    /**
+     * Claims and runs indices of the given batch until there are none left.
+     * A batch can't finish while one of its claimed indices is still running, so job and count stay valid throughout.
+     */
+    private void work(int gen, IJob job, int count) {
+        int done = 0;
+        RuntimeException err = null;
+        while (true) {
+            long v = next.get();
+            if (((int) (v >>> 32)) != gen || ((int) v) >= count)
+                break;
+            if (!next.compareAndSet(v, v + 1))
+                continue;
+            try {
+                job.run((int) v);
+            } catch (RuntimeException re) {
+                if (err == null)
+                    err = re;
+            }
+            done++;
+        }
+        if (done == 0)
+            return;
+        synchronized (lock) {
+            if (failure == null)
+                failure = err;
+            remaining -= done;
+            if (remaining == 0)
+                lock.notifyAll();
+        }
+    }
+
+    public interface IJob {
+        void run(int index);
+    }
+}
@@ -101,7 +101,7 @@ public final class MIDISequence {
             double newTTS = mt.getTicksToSeconds();
             if (newTTS != lastBase.ticksToSeconds) {
                 // Change of base
-                lastBase = new TimingSegment(tick, (tick - lastBase.startTick) * lastBase.ticksToSeconds, newTTS);
+                lastBase = new TimingSegment(tick, lastBase.startTime + ((tick - lastBase.startTick) * lastBase.ticksToSeconds), newTTS);
                 ll.add(lastBase);
             }
         }
@@ -137,15 +137,54 @@ public final class MIDISequence {
             lengthSeconds = totalLength;
         }
 
+        /**
+         * Finds the index of the segment containing the given time (binary search).
+         */
+        public int segmentAtTime(double d) {
+            int lo = 0, hi = segments.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (d >= segments[mid].startTime) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Finds the index of the segment containing the given tick (binary search).
+         */
+        public int segmentAtTick(int tick) {
+            int lo = 0, hi = segments.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (tick >= segments[mid].startTick) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
         /**
          * Convert seconds to ticks.
          */
         public int secondsToTick(double d) {
-            int candidate = 0;
-            for (TimingSegment s : segments)
-                if (d >= s.startTime)
-                    candidate = s.startTick + (int) Math.floor((d - s.startTime) / s.ticksToSeconds);
-            return candidate;
+            if (d < 0)
+                return 0;
+            TimingSegment s = segments[segmentAtTime(d)];
+            return s.startTick + (int) Math.floor((d - s.startTime) / s.ticksToSeconds);
+        }
+
+        /**
+         * Convert ticks to seconds.
+         */
+        public double tickToSeconds(int tick) {
+            TimingSegment s = segments[segmentAtTick(tick)];
+            return s.startTime + ((tick - s.startTick) * s.ticksToSeconds);
         }
     }
     public static class TimingSegment {
@@ -17,15 +17,41 @@ public final class MIDISynthesizer implements MIDIEventReceiver {
     public final double sampleTime;
     public float globalVolume = DEFAULT_GLOBAL_VOLUME;
 
+    /**
+     * Voices per group in grouped rendering.
+     * This is fixed (not based on thread count) so that the output doesn't depend on thread count.
+     */
+    private static final int GROUP_VOICES = 4;
+
     private final Palette pal;
     public final MIDIChannel[] midiChannels = new MIDIChannel[16];
 
+    // Grouped (parallel) rendering state
+    private int renderThreads;
+    private @Nullable MIDIRenderWorkers renderWorkers;
+    private final Channel[] groupedVoices;
+    private final float[] groupedVoiceL, groupedVoiceR;
+    private float[][] groupBuffers = new float[0][];
+    private int groupedVoiceCount, groupedFrames;
+    private final MIDIRenderWorkers.IJob groupJob = new MIDIRenderWorkers.IJob() {
+        @Override
+        public void run(int index) {
+            renderGroup(index);
+        }
+    };
+
+    // Instrumentation
+    private long lastRenderNanos, maxRenderNanos, totalRenderNanos, renderCount;
+
     public MIDISynthesizer(int rate, Palette pal, int capacity) {
         sampleRate = rate;
         sampleTime = 1.0d / rate;
         this.pal = pal;
         for (int i = 0; i < 16; i++)
             midiChannels[i] = new MIDIChannel(capacity);
+        groupedVoices = new Channel[16 * capacity];
+        groupedVoiceL = new float[16 * capacity];
+        groupedVoiceR = new float[16 * capacity];
         resetParameters();
     }
 
@@ -92,12 +118,154 @@ public final class MIDISynthesizer implements MIDIEventReceiver {
             midiChannels[i].clear();
     }
 
+    /**
+     * Sets the render mode.
+     * 0 (the default) renders each voice straight into the output on the calling thread.
+     * 1 or more enables grouped rendering: voices are rendered in fixed groups into scratch buffers, which are then summed in order.
+     * The groups are spread across this many threads (including the calling thread).
+     * Grouped output is the same whatever the thread count, but can differ very slightly from the default mode.
+     * With 2 or more, worker threads are started; call close() (or set this back to 0 or 1) when done with the synthesizer to stop them.
+     */
+    public void setRenderThreads(int threads) {
+        if (threads < 0)
+            throw new IllegalArgumentException("Thread count can't be negative");
+        if (threads == renderThreads)
+            return;
+        MIDIRenderWorkers old = renderWorkers;
+        if (old != null)
+            old.shutdown();
+        renderWorkers = threads > 1 ? new MIDIRenderWorkers(threads - 1) : null;
+        renderThreads = threads;
+    }
+
+    /**
+     * See setRenderThreads.
+     */
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    /**
+     * Stops any render worker threads, returning to the default render mode.
+     * The synthesizer remains usable afterwards.
+     */
+    public void close() {
+        setRenderThreads(0);
+    }
+
+    @Override
+    protected void finalize() {
+        // Safety net; the workers don't reference the synthesizer between renders, so it can be collected.
+        MIDIRenderWorkers workers = renderWorkers;
+        if (workers != null)
+            workers.shutdown();
+    }
+
     /**
      * Render (additively) into the given buffer.
      */
     public void render(float[] buffer, int offset, int frames) {
-        for (int i = 0; i < 16; i++)
-            midiChannels[i].render(buffer, offset, frames);
+        long start = System.nanoTime();
+        if (renderThreads == 0) {
+            for (int i = 0; i < 16; i++)
+                midiChannels[i].render(buffer, offset, frames);
+        } else {
+            renderGrouped(buffer, offset, frames);
+        }
+        long time = System.nanoTime() - start;
+        lastRenderNanos = time;
+        if (time > maxRenderNanos)
+            maxRenderNanos = time;
+        totalRenderNanos += time;
+        renderCount++;
+    }
+
+    private void renderGrouped(float[] buffer, int offset, int frames) {
+        // gather voices in a fixed order
+        int count = 0;
+        for (int i = 0; i < 16; i++) {
+            for (Channel c : midiChannels[i].synthChannels) {
+                if (c != null) {
+                    groupedVoices[count] = c;
+                    groupedVoiceL[count] = c.extLVol * globalVolume;
+                    groupedVoiceR[count] = c.extRVol * globalVolume;
+                    count++;
+                }
+            }
+        }
+        int groups = (count + GROUP_VOICES - 1) / GROUP_VOICES;
+        int samples = frames * 2;
+        if (groupBuffers.length < groups) {
+            float[][] nb = new float[groups][];
+            System.arraycopy(groupBuffers, 0, nb, 0, groupBuffers.length);
+            groupBuffers = nb;
+        }
+        for (int g = 0; g < groups; g++) {
+            float[] gb = groupBuffers[g];
+            if (gb == null || gb.length < samples)
+                groupBuffers[g] = new float[samples];
+        }
+        groupedVoiceCount = count;
+        groupedFrames = frames;
+        MIDIRenderWorkers workers = renderWorkers;
+        try {
+            if (workers != null && groups > 1) {
+                workers.run(groupJob, groups);
+            } else {
+                for (int g = 0; g < groups; g++)
+                    renderGroup(g);
+            }
+        } finally {
+            for (int i = 0; i < count; i++)
+                groupedVoices[i] = null;
+        }
+        // sum in group order, so the result doesn't depend on which thread did what
+        for (int g = 0; g < groups; g++) {
+            float[] gb = groupBuffers[g];
+            for (int i = 0; i < samples; i++)
+                buffer[offset + i] += gb[i];
+        }
+    }
+
+    private void renderGroup(int group) {
+        float[] gb = groupBuffers[group];
+        int frames = groupedFrames;
+        for (int i = 0; i < frames * 2; i++)
+            gb[i] = 0;
+        int end = Math.min(groupedVoiceCount, (group + 1) * GROUP_VOICES);
+        for (int v = group * GROUP_VOICES; v < end; v++)
+            groupedVoices[v].render(gb, 0, frames, groupedVoiceL[v], groupedVoiceR[v]);
+    }
+
+    /**
+     * Time taken by the last render call in nanoseconds.
+     */
+    public long getLastRenderNanos() {
+        return lastRenderNanos;
+    }
+
+    /**
+     * Longest time taken by a render call in nanoseconds.
+     */
+    public long getMaxRenderNanos() {
+        return maxRenderNanos;
+    }
+
+    /**
+     * Average time taken by render calls in nanoseconds.
+     */
+    public long getAverageRenderNanos() {
+        return renderCount == 0 ? 0 : totalRenderNanos / renderCount;
+    }
+
+    /**
+     * Resets the render timing statistics.
+     */
+    public void resetRenderStats() {
+        lastRenderNanos = 0;
+        maxRenderNanos = 0;
+        totalRenderNanos = 0;
+        renderCount = 0;
     }
 
     /**
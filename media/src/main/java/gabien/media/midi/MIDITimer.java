@@ -38,6 +38,17 @@ public class MIDITimer {
         lastBaseTTS = target.getTicksToSeconds();
     }
 
+    /**
+     * Creates a timer for a target that has already been moved forward (say, a MIDIEventCursor after a seek).
+     * currentTime must be the absolute time of the target's current tick.
+     */
+    public MIDITimer(MIDITimableThing target, double currentTime) {
+        this(target);
+        this.currentTime = currentTime;
+        lastBase = currentTime;
+        lastBaseTick = target.getCurrentTick();
+    }
+
     /**
      * Ensures all events have been executed up to the given tick.
      * Also updates currentTime accordingly.
@@ -48,7 +59,7 @@ public class MIDITimer {
         int currentTick = target.getCurrentTick();
         while (currentTick < targetTick) {
             runAllEventsSlatedForNow();
-            int nextEventAt = target.getCurrentTick();
+            int nextEventAt = target.getTickOfNextEvent();
             if (nextEventAt == -1) {
                 // past end, so it's fine
                 break;
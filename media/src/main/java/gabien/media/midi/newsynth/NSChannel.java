@@ -12,10 +12,16 @@ import gabien.uslx.append.MathsX;
 /**
  * Adapted out of MLDIChannel but with modifications.
  * Created 2nd July, 2025.
+ * Wavetable kernel with per-block envelope interpolation added 18th October, 2026.
  */
 public class NSChannel extends MIDISynthesizer.Channel {
-    // Position in wave 0-waveform.length
-    float internalCounter;
+    private static final double PHASE_UNIT = 4294967296d;
+    private static final float FRAC_UNIT = 1f / 2147483648f;
+
+    /**
+     * Position in wave, as a fraction of a cycle where 2^32 is a whole cycle (so it wraps by itself).
+     */
+    int phase;
 
     /**
      * Current volume register
@@ -25,7 +31,7 @@ public class NSChannel extends MIDISynthesizer.Channel {
     /**
      * Time in this stage
      */
-    public double timeInStage, renderTimeInStage;
+    public double timeInStage;
 
     /**
      * Time in this stage when it ends
@@ -49,15 +55,20 @@ public class NSChannel extends MIDISynthesizer.Channel {
     public final float octaveShiftMultiplier;
 
     /**
-     * Waveform, envelope (left/right quarters unused to make curve editing nicer), pitch envelope
+     * Band-limited waveform (shared with the patch)
+     */
+    public final NSWavetable wavetable;
+
+    /**
+     * Envelope (left/right quarters unused to make curve editing nicer), pitch envelope
      */
-    public final float[] waveform, envelope, pitchEnv;
+    public final float[] envelope, pitchEnv;
 
     public NSChannel(NSPatch patch) {
         this.stageEndTime = patch.strikeMs / 1000f;
         this.octaveShiftMultiplier = (float) Math.pow(2, patch.octaveShift);
         this.patch = patch;
-        this.waveform = patch.getMainWaveform();
+        this.wavetable = patch.getWavetable();
         this.envelope = patch.getEnvWaveform();
         this.pitchEnv = patch.getPitchEnvWaveform();
         this.pitchMulState = 1;
@@ -69,22 +80,63 @@ public class NSChannel extends MIDISynthesizer.Channel {
         // do nothing, we don't use the notification to track note release
     }
 
+    private long phaseIncFor(float pitchMul) {
+        double hz = (patch.fixedFrequency != 0) ? patch.fixedFrequency : getFrequencyHz();
+        long inc = (long) (hz * pitchMul * octaveShiftMultiplier * getSampleSeconds() * PHASE_UNIT);
+        return Math.max(0, Math.min(inc, Integer.MAX_VALUE));
+    }
+
     @Override
     public void render(float[] buffer, int offset, int frames, float leftVol, float rightVol) {
-        float sampleSeconds = (float) getSampleSeconds();
-        float effectiveCycleSeconds = (float) (((patch.fixedFrequency != 0) ? (1.0d / patch.fixedFrequency) : getCycleSeconds()) / pitchMulState);
-        // this is a divisor since we are dividing cycleSeconds
-        effectiveCycleSeconds /= octaveShiftMultiplier;
-        float sampleAdv = (sampleSeconds / effectiveCycleSeconds) * waveform.length;
-        leftVol *= volume;
-        rightVol *= volume;
+        if (frames <= 0)
+            return;
+        // Envelopes are interpolated across the block, towards where update will leave them.
+        float envPtr = envelopePointer(timeInStage + (frames * getSampleSeconds()));
+        float endVolume = MathsX.linearSample1d(envPtr, envelope, false);
+        float endPitchMul = 0.5f + MathsX.linearSample1d(envPtr, pitchEnv, false);
+        long startInc = phaseIncFor(pitchMulState);
+        long endInc = phaseIncFor(endPitchMul);
+        // the level is picked for the highest pitch in the block
+        int level = wavetable.levelFor(Math.max(startInc, endInc));
+        float[] table = wavetable.levels[level];
+        int bits = wavetable.bits[level];
+        int shift = 32 - bits;
+        int p = phase;
+        int inc = (int) startInc;
+        int incStep = (int) ((endInc - startInc) / frames);
+        float vol = volume;
+        float volStep = (endVolume - volume) / frames;
         while (frames > 0) {
-            internalCounter = (internalCounter + sampleAdv) % waveform.length;
-            float wf = MathsX.linearSample1d(internalCounter, waveform, true);
+            int idx = p >>> shift;
+            float frac = ((p << bits) >>> 1) * FRAC_UNIT;
+            float a = table[idx];
+            float wf = (a + ((table[idx + 1] - a) * frac)) * vol;
             buffer[offset++] += wf * leftVol;
             buffer[offset++] += wf * rightVol;
+            p += inc;
+            inc += incStep;
+            vol += volStep;
             frames--;
         }
+        phase = p;
+    }
+
+    /**
+     * Works out where in the envelope a given time in the current stage is.
+     */
+    private float envelopePointer(double time) {
+        int envQuarter = envelope.length / 4;
+        float volPtr = MathsX.lerpUnclamped(0, envQuarter, MathsX.clamp((float) (time / stageEndTime), 0, 1));
+        if (stage == 0) {
+            volPtr += envQuarter;
+        } else if (stage == 1) {
+            // sustaining, so hold at a particular point
+            volPtr = envelope.length / 2;
+        } else if (stage == 2) {
+            // releasing
+            volPtr += envelope.length / 2;
+        }
+        return volPtr;
     }
 
     @Override
@@ -116,17 +168,7 @@ public class NSChannel extends MIDISynthesizer.Channel {
                 return true;
             }
         }
-        int envQuarter = envelope.length / 4;
-        float volPtr = MathsX.lerpUnclamped(0, envQuarter, MathsX.clamp((float) (timeInStage / stageEndTime), 0, 1));
-        if (stage == 0) {
-            volPtr += envQuarter;
-        } else if (stage == 1) {
-            // sustaining, so hold at a particular point
-            volPtr = envelope.length / 2;
-        } else if (stage == 2) {
-            // releasing
-            volPtr += envelope.length / 2;
-        }
+        float volPtr = envelopePointer(timeInStage);
         volume = MathsX.linearSample1d(volPtr, envelope, false);
         pitchMulState = 0.5f + MathsX.linearSample1d(volPtr, pitchEnv, false);
         return false;
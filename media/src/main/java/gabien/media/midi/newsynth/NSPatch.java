@@ -41,6 +41,7 @@ public class NSPatch {
     public boolean noiseEnabled = false;
 
     private float[] mainWaveformCache = new float[1];
+    private NSWavetable wavetableCache = NSWavetable.get(mainWaveformCache);
     private final float[] envWaveformCache = new float[CACHED_WAVEFORM_LEN];
     private final float[] pitchEnvWaveformCache = new float[CACHED_WAVEFORM_LEN];
     private volatile boolean cacheDirty = true;
@@ -66,6 +67,15 @@ public class NSPatch {
         return mainWaveformCache;
     }
 
+    /**
+     * Band-limited version of the main waveform, as used by NSChannel.
+     */
+    public NSWavetable getWavetable() {
+        if (cacheDirty)
+            regenCaches();
+        return wavetableCache;
+    }
+
     public float[] getEnvWaveform() {
         if (cacheDirty)
             regenCaches();
@@ -93,6 +103,7 @@ public class NSPatch {
             for (int i = 0; i < mainWaveformCache.length; i++)
                 mainWaveformCache[i] *= r.nextGaussian();
         }
+        wavetableCache = NSWavetable.get(mainWaveformCache);
         CurvePlotter.resolve(volumeWaveform, envWaveformCache, NormalizationMode.None);
         CurvePlotter.resolve(pitchEnvWaveform, pitchEnvWaveformCache, NormalizationMode.None);
     }
@@ -0,0 +1,135 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+package gabien.media.midi.newsynth;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Band-limited wavetable for NSChannel.
+ * Level 0 is the waveform resampled to a power-of-two length; each further level is half the length and half the bandwidth.
+ * Each level has a guard sample on the end (a copy of the first), so interpolation never needs to wrap.
+ * Tables are immutable and shared between all patches with the same waveform (see get).
+ * Created 18th October, 2026.
+ */
+public final class NSWavetable {
+    public static final int MIN_BITS = 3;
+    public static final int MAX_BITS = 20;
+    // half-band filter half-length
+    private static final int FILTER_TAPS = 16;
+    private static final double[] FILTER = new double[(FILTER_TAPS * 2) + 1];
+
+    private static final HashMap<Integer, ArrayList<WeakReference<NSWavetable>>> cache = new HashMap<>();
+
+    static {
+        double total = 0;
+        for (int i = -FILTER_TAPS; i <= FILTER_TAPS; i++) {
+            double sinc = i == 0 ? 0.5d : Math.sin(Math.PI * i / 2) / (Math.PI * i);
+            // Blackman window
+            double w = (i + FILTER_TAPS) / (double) (FILTER_TAPS * 2);
+            double window = 0.42d - (0.5d * Math.cos(2 * Math.PI * w)) + (0.08d * Math.cos(4 * Math.PI * w));
+            FILTER[i + FILTER_TAPS] = sinc * window;
+            total += sinc * window;
+        }
+        for (int i = 0; i < FILTER.length; i++)
+            FILTER[i] /= total;
+    }
+
+    private final float[] source;
+    /**
+     * Level tables (length (1 << bits[level]) + 1).
+     */
+    public final float[][] levels;
+    /**
+     * log2 of each level's length.
+     */
+    public final int[] bits;
+
+    private NSWavetable(float[] waveform) {
+        source = waveform.clone();
+        int b = MIN_BITS;
+        while (b < MAX_BITS && (1 << b) < waveform.length)
+            b++;
+        int levelCount = b - MIN_BITS + 1;
+        levels = new float[levelCount][];
+        bits = new int[levelCount];
+        float[] level0 = new float[(1 << b) + 1];
+        if (waveform.length == (1 << b)) {
+            System.arraycopy(waveform, 0, level0, 0, waveform.length);
+        } else {
+            // resample (looped, linear) to a power-of-two length
+            double step = waveform.length / (double) (1 << b);
+            for (int i = 0; i < (1 << b); i++) {
+                double pos = i * step;
+                int a = (int) pos;
+                float frac = (float) (pos - a);
+                float va = waveform[a % waveform.length];
+                float vb = waveform[(a + 1) % waveform.length];
+                level0[i] = va + ((vb - va) * frac);
+            }
+        }
+        level0[1 << b] = level0[0];
+        levels[0] = level0;
+        bits[0] = b;
+        for (int l = 1; l < levelCount; l++) {
+            float[] src = levels[l - 1];
+            int srcMask = (1 << bits[l - 1]) - 1;
+            int len = 1 << (bits[l - 1] - 1);
+            float[] dst = new float[len + 1];
+            for (int i = 0; i < len; i++) {
+                double acc = 0;
+                int centre = i * 2;
+                for (int t = -FILTER_TAPS; t <= FILTER_TAPS; t++)
+                    acc += FILTER[t + FILTER_TAPS] * src[(centre - t) & srcMask];
+                dst[i] = (float) acc;
+            }
+            dst[len] = dst[0];
+            levels[l] = dst;
+            bits[l] = bits[l - 1] - 1;
+        }
+    }
+
+    /**
+     * Gets the wavetable for a waveform, reusing an existing one if the waveform is identical.
+     */
+    public static NSWavetable get(float[] waveform) {
+        Integer key = Arrays.hashCode(waveform);
+        synchronized (cache) {
+            ArrayList<WeakReference<NSWavetable>> bucket = cache.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                cache.put(key, bucket);
+            }
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                NSWavetable existing = bucket.get(i).get();
+                if (existing == null) {
+                    bucket.remove(i);
+                } else if (Arrays.equals(existing.source, waveform)) {
+                    return existing;
+                }
+            }
+            NSWavetable res = new NSWavetable(waveform);
+            bucket.add(new WeakReference<>(res));
+            return res;
+        }
+    }
+
+    /**
+     * Selects the level to use for a given phase increment (where 2^32 is one cycle).
+     * This is the largest level that doesn't advance more than one sample per output sample, which means no harmonics above Nyquist.
+     */
+    public int levelFor(long phaseInc) {
+        int level = 0;
+        // at level l, samples per output sample is phaseInc / 2^(32 - bits[l])
+        while (level < levels.length - 1 && phaseInc > (1L << (32 - bits[level])))
+            level++;
+        return level;
+    }
+}
@@ -11,15 +11,13 @@ import java.io.InputStream;
 
 /**
  * Separates an InputStream into Ogg pages.
+ * Reads go straight into the OggReader's sync window.
  * Created 20th October, 2023.
  */
 public class OggBufferingInputStreamReader {
-    private final byte[] chunkBuffer = new byte[512];
-    private int chunkBufferPosition, chunkBufferRemaining;
     private final OggReader or = new OggReader();
-    // can't really change this around safely due to the chunk buffer...
     private final InputStream inp;
-    // ...but can change this!
+    private boolean reachedEOF;
     public OggPageReceiver out;
 
     public OggBufferingInputStreamReader(InputStream inp, OggPageReceiver opr) {
@@ -35,19 +33,14 @@ public class OggBufferingInputStreamReader {
      */
     public void readStartingBOSPages() throws IOException {
         while (true) {
-            if (chunkBufferRemaining > 0) {
-                or.addByteToSyncWindow(chunkBuffer[chunkBufferPosition++]);
-                chunkBufferRemaining--;
-                int len = OggPage.verifyAndGetLength(or.syncWindow, 0, or.amountOfDataInSyncWindow);
-                if (len > 0) {
-                    int flags = or.syncWindow[OggPage.FIELD_FLAGS];
-                    boolean isBOS = (flags & OggPage.FLAG_BOS) != 0;
-                    if (!isBOS)
-                        return;
-                    out.page(or.syncWindow, 0, len);
-                    or.skipSyncWindow(len);
-                }
-            } else if (!refillChunkBuffer()) {
+            if (or.findPage(reachedEOF)) {
+                int flags = or.syncWindow[or.syncWindowStart + OggPage.FIELD_FLAGS];
+                boolean isBOS = (flags & OggPage.FLAG_BOS) != 0;
+                if (!isBOS)
+                    return;
+                out.page(or.syncWindow, or.syncWindowStart, or.pageLength);
+                or.skipPage();
+            } else if (!refillSyncWindow()) {
                 return;
             }
         }
@@ -58,30 +51,30 @@ public class OggBufferingInputStreamReader {
      */
     public boolean readNextPage() throws IOException {
         while (true) {
-            if (chunkBufferRemaining > 0) {
-                or.addByteToSyncWindow(chunkBuffer[chunkBufferPosition++]);
-                chunkBufferRemaining--;
-                int len = OggPage.verifyAndGetLength(or.syncWindow, 0, or.amountOfDataInSyncWindow);
-                if (len > 0) {
-                    out.page(or.syncWindow, 0, len);
-                    or.skipSyncWindow(len);
-                    return true;
-                }
-            } else if (!refillChunkBuffer()) {
+            if (or.findPage(reachedEOF)) {
+                out.page(or.syncWindow, or.syncWindowStart, or.pageLength);
+                or.skipPage();
+                return true;
+            } else if (!refillSyncWindow()) {
                 return false;
             }
         }
     }
 
     /**
-     * Refills chunk buffer for more reading.
+     * Reads more data into the sync window. Returns false if there's no more to read.
      */
-    private boolean refillChunkBuffer() throws IOException {
-        int amount = inp.read(chunkBuffer);
-        if (amount == -1)
+    private boolean refillSyncWindow() throws IOException {
+        if (reachedEOF)
             return false;
-        chunkBufferPosition = 0;
-        chunkBufferRemaining = amount;
+        int room = or.prepareToAdd();
+        int amount = inp.read(or.syncWindow, or.syncWindowEnd, room);
+        if (amount == -1) {
+            // one last go, with incomplete candidates skipped
+            reachedEOF = true;
+            return true;
+        }
+        or.addedToSyncWindow(amount);
         return true;
     }
 }
@@ -157,6 +157,41 @@ public abstract class OggPage {
         return length;
     }
 
+    /**
+     * Finds the first capture pattern ("OggS") starting between from (inclusive) and to - 3 (exclusive).
+     * Returns -1 if there isn't one.
+     */
+    public static int findCapturePattern(byte[] data, int from, int to) {
+        to -= 3;
+        for (int i = from; i < to; i++) {
+            // 'O' is rare enough in most data that checking it first skips almost everything
+            if (data[i] != 'O')
+                continue;
+            if (data[i + 1] == 'g' && data[i + 2] == 'g' && data[i + 3] == 'S')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Scans backwards through a chunk of a physical bitstream for the last valid page of the given logical bitstream that has a granule position.
+     * Useful for finding the length of a stream from its tail without reading the whole thing.
+     * Returns -1 if there isn't one (which is also the "no granule position" value).
+     */
+    public static long findLastGranulePos(byte[] data, int ofs, int len, int streamID) {
+        for (int at = len - 27; at >= 0; at--) {
+            int pageLen = verifyAndGetLength(data, ofs + at, len - at);
+            if (pageLen == 0)
+                continue;
+            if (getStreamID(data, ofs + at) != streamID)
+                continue;
+            long gp = getGranulePos(data, ofs + at);
+            if (gp != -1)
+                return gp;
+        }
+        return -1;
+    }
+
     /**
      * Forwards the current page's segments to the target receiver.
      * Does not verify the page is valid.
@@ -0,0 +1,94 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.media.ogg;
+
+import java.io.IOException;
+
+import gabien.uslx.io.PositionalInput;
+
+/**
+ * Reads Ogg pages from random-access input, from any position.
+ * Pages are read whole (header, segment table, body) rather than being pushed byte-by-byte through a sync window.
+ * If there isn't a valid page at the current position, this resyncs by searching for the next capture pattern.
+ * Created 18th October, 2026.
+ */
+public final class OggPageCursor {
+    public final PositionalInput input;
+
+    /**
+     * The current page (always at offset 0).
+     */
+    public final byte[] page = new byte[OggPage.MAX_PAGE_LENGTH];
+    public int pageLength;
+
+    /**
+     * Position of the current page in the input.
+     */
+    public long pageOffset = -1;
+
+    /**
+     * Position the next page is read from. Can be changed freely to seek.
+     */
+    public long position;
+
+    private final byte[] scanBuffer = new byte[4096];
+
+    public OggPageCursor(PositionalInput input) {
+        this.input = input;
+    }
+
+    /**
+     * Reads the next valid page into the page buffer. Returns false at the end of the input.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            long remaining = input.length - position;
+            if (remaining < 27)
+                return false;
+            input.readFully(position, page, 0, 27);
+            if (OggPage.findCapturePattern(page, 0, 4) == 0 && page[4] == 0) {
+                int segmentCount = page[26] & 0xFF;
+                if (remaining >= 27 + segmentCount) {
+                    input.readFully(position + 27, page, 27, segmentCount);
+                    int len = OggPage.getLength(page, 0);
+                    if (remaining >= len) {
+                        input.readFully(position + 27 + segmentCount, page, 27 + segmentCount, len - (27 + segmentCount));
+                        if (OggPage.verifyAndGetLength(page, 0, len) == len) {
+                            pageOffset = position;
+                            pageLength = len;
+                            position += len;
+                            return true;
+                        }
+                    }
+                }
+            }
+            // Not a page, so resync.
+            position = findCapturePattern(position + 1);
+            if (position == -1) {
+                position = input.length;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Finds the next capture pattern at or after the given position. Returns -1 if there isn't one.
+     */
+    private long findCapturePattern(long at) throws IOException {
+        while (true) {
+            int am = (int) Math.min(scanBuffer.length, input.length - at);
+            if (am < 4)
+                return -1;
+            input.readFully(at, scanBuffer, 0, am);
+            int res = OggPage.findCapturePattern(scanBuffer, 0, am);
+            if (res != -1)
+                return at + res;
+            // keep the last 3 bytes in case the pattern straddles chunks
+            at += am - 3;
+        }
+    }
+}
@@ -8,23 +8,34 @@ package gabien.media.ogg;
 
 /**
  * Ogg page reader.
+ * Data is added in bulk, and pages are found by searching for the capture pattern.
+ * Headers and CRCs are only checked at candidate offsets, and pages are handed out in-place.
  * Some definitions:
- * Sync window: area from syncWindow[0] to syncWindow[amountOfDataInSyncWindow - 1].
- * Current page: The page at the head of the sync window.
+ * Sync window: area from syncWindow[syncWindowStart] to syncWindow[syncWindowEnd - 1] (data not yet consumed).
+ * Current page: The page at the head of the sync window, once findPage has found it.
  * Created 19th October, 2023
  */
 public final class OggReader {
     /**
-     * Ogg page
+     * Buffer holding the sync window.
+     * Twice the maximum page length, so that a whole page always fits after compaction.
      */
-    public final byte[] syncWindow = new byte[OggPage.MAX_PAGE_LENGTH];
+    public final byte[] syncWindow = new byte[OggPage.MAX_PAGE_LENGTH * 2];
+
+    public int syncWindowStart = 0, syncWindowEnd = 0;
 
     /**
-     * Before the sync window is full, it may have uninitialized (zero) areas.
-     * To prevent a CRC32 collision, from accidentally treating these as valid, this is recorded.
+     * Amount of data in the sync window, kept up to date for older code.
+     * @deprecated The sync window no longer necessarily starts at 0; use getAmountOfDataInSyncWindow.
      */
+    @Deprecated
     public int amountOfDataInSyncWindow = 0;
 
+    /**
+     * Length of the current page (only valid after findPage returns true).
+     */
+    public int pageLength;
+
     public OggReader() {
     }
 
@@ -32,28 +43,135 @@ public final class OggReader {
      * Resets the sync window.
      */
     public void reset() {
+        syncWindowStart = 0;
+        syncWindowEnd = 0;
         amountOfDataInSyncWindow = 0;
     }
 
+    /**
+     * Amount of data in the sync window.
+     */
+    public int getAmountOfDataInSyncWindow() {
+        return syncWindowEnd - syncWindowStart;
+    }
+
+    /**
+     * Makes room at the end of the sync window, and returns how much room there is.
+     * Data can then be written directly into syncWindow at syncWindowEnd, followed by a call to addedToSyncWindow.
+     * This invalidates the current page.
+     */
+    public int prepareToAdd() {
+        if (syncWindowStart > 0 && syncWindowEnd > syncWindow.length - OggPage.MAX_PAGE_LENGTH) {
+            int amount = syncWindowEnd - syncWindowStart;
+            System.arraycopy(syncWindow, syncWindowStart, syncWindow, 0, amount);
+            syncWindowStart = 0;
+            syncWindowEnd = amount;
+        }
+        return syncWindow.length - syncWindowEnd;
+    }
+
+    /**
+     * See prepareToAdd.
+     */
+    public void addedToSyncWindow(int len) {
+        if (len < 0 || syncWindowEnd + len > syncWindow.length)
+            throw new IndexOutOfBoundsException("Added more than there was room for");
+        syncWindowEnd += len;
+        amountOfDataInSyncWindow = syncWindowEnd - syncWindowStart;
+    }
+
+    /**
+     * Adds data to the sync window. Returns the amount that fit.
+     * This invalidates the current page.
+     */
+    public int addToSyncWindow(byte[] data, int ofs, int len) {
+        len = Math.min(len, prepareToAdd());
+        System.arraycopy(data, ofs, syncWindow, syncWindowEnd, len);
+        syncWindowEnd += len;
+        amountOfDataInSyncWindow = syncWindowEnd - syncWindowStart;
+        return len;
+    }
+
+    /**
+     * Finds a valid page at the head of the sync window, discarding anything before it that can't be one.
+     * Returns true if one was found (see syncWindowStart and pageLength).
+     * Otherwise more data is needed.
+     * If noMoreData is set, incomplete candidates are skipped rather than waited on.
+     */
+    public boolean findPage(boolean noMoreData) {
+        while (true) {
+            int candidate = OggPage.findCapturePattern(syncWindow, syncWindowStart, syncWindowEnd);
+            if (candidate == -1) {
+                // keep anything that could be the start of a capture pattern
+                syncWindowStart = Math.max(syncWindowStart, syncWindowEnd - 3);
+                amountOfDataInSyncWindow = syncWindowEnd - syncWindowStart;
+                return false;
+            }
+            syncWindowStart = candidate;
+            amountOfDataInSyncWindow = syncWindowEnd - syncWindowStart;
+            int available = syncWindowEnd - candidate;
+            int length = -1;
+            if (available >= 27 && available >= 27 + (syncWindow[candidate + 26] & 0xFF))
+                length = OggPage.getLength(syncWindow, candidate);
+            if (length == -1 || available < length) {
+                if (!noMoreData)
+                    return false;
+            } else if (OggPage.verifyAndGetLength(syncWindow, candidate, available) == length) {
+                pageLength = length;
+                return true;
+            }
+            // not a page after all
+            syncWindowStart = candidate + 1;
+        }
+    }
+
+    /**
+     * Consumes the current page.
+     */
+    public void skipPage() {
+        syncWindowStart += pageLength;
+        amountOfDataInSyncWindow = syncWindowEnd - syncWindowStart;
+    }
+
+    /**
+     * Moves the sync window to the start of the buffer, as the deprecated methods expect it there.
+     */
+    private void moveWindowToStart() {
+        if (syncWindowStart > 0) {
+            int amount = syncWindowEnd - syncWindowStart;
+            System.arraycopy(syncWindow, syncWindowStart, syncWindow, 0, amount);
+            syncWindowStart = 0;
+            syncWindowEnd = amount;
+        }
+    }
+
     /**
      * Adds a byte of data to the sync window.
+     * The window is kept at the start of the buffer and limited to OggPage.MAX_PAGE_LENGTH, as it used to be.
+     * @deprecated Byte-at-a-time; use addToSyncWindow (or prepareToAdd) and findPage.
      */
+    @Deprecated
     public void addByteToSyncWindow(byte b) {
-        if (amountOfDataInSyncWindow < syncWindow.length) {
-            syncWindow[amountOfDataInSyncWindow++] = b;
-        } else {
-            System.arraycopy(syncWindow, 1, syncWindow, 0, syncWindow.length - 1);
-            syncWindow[syncWindow.length - 1] = b;
+        moveWindowToStart();
+        if (syncWindowEnd >= OggPage.MAX_PAGE_LENGTH) {
+            System.arraycopy(syncWindow, 1, syncWindow, 0, OggPage.MAX_PAGE_LENGTH - 1);
+            syncWindowEnd = OggPage.MAX_PAGE_LENGTH - 1;
         }
+        syncWindow[syncWindowEnd++] = b;
+        amountOfDataInSyncWindow = syncWindowEnd;
     }
 
     /**
      * Consume data from the sync window (to consume a known-valid page).
+     * The rest of the window is moved to the start of the buffer.
+     * @deprecated Use findPage and skipPage.
      */
+    @Deprecated
     public void skipSyncWindow(int len) {
-        if (amountOfDataInSyncWindow < len)
+        if (syncWindowEnd - syncWindowStart < len)
             throw new RuntimeException("Can't skip more bytes than are in the sync window!");
-        System.arraycopy(syncWindow, len, syncWindow, 0, amountOfDataInSyncWindow - len);
-        amountOfDataInSyncWindow -= len;
+        syncWindowStart += len;
+        moveWindowToStart();
+        amountOfDataInSyncWindow = syncWindowEnd;
     }
 }
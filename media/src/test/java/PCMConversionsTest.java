@@ -0,0 +1,123 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gabien.media.audio.AudioIOCRSet;
+import gabien.media.audio.AudioIOFormat;
+import gabien.media.audio.AudioIOSample;
+
+/**
+ * Checks the block conversions (PCMConversions) give exactly what the per-sample ones (AudioIOFormat) do.
+ * Created 18th October, 2026.
+ */
+public class PCMConversionsTest {
+    private static final AudioIOFormat[] FORMATS = {
+        AudioIOFormat.F_U8, AudioIOFormat.F_S16, AudioIOFormat.F_S24, AudioIOFormat.F_S32,
+        AudioIOFormat.F_F32, AudioIOFormat.F_F64, AudioIOFormat.F_AL8, AudioIOFormat.F_UL8
+    };
+    private static final int SAMPLES = 0x10000;
+
+    /**
+     * Random samples in the given format. Float formats get values somewhat out of range too, to test clamping.
+     */
+    private static byte[] makeData(AudioIOFormat fmt, Random r) {
+        byte[] data = new byte[SAMPLES * fmt.bytesPerSample];
+        if (fmt instanceof AudioIOFormat.FP) {
+            for (int i = 0; i < SAMPLES; i++)
+                fmt.ofF64(data, i * fmt.bytesPerSample, (r.nextDouble() * 2.5d) - 1.25d);
+        } else {
+            r.nextBytes(data);
+        }
+        return data;
+    }
+
+    @Test
+    public void testToF32() {
+        Random r = new Random(1);
+        for (AudioIOFormat fmt : FORMATS) {
+            byte[] data = makeData(fmt, r);
+            float[] block = new float[SAMPLES];
+            fmt.asF32(data, 0, block, 0, SAMPLES);
+            for (int i = 0; i < SAMPLES; i++)
+                Assert.assertEquals((float) fmt.asF64(data, i * fmt.bytesPerSample), block[i], 0);
+        }
+    }
+
+    @Test
+    public void testToS32() {
+        Random r = new Random(2);
+        for (AudioIOFormat fmt : FORMATS) {
+            byte[] data = makeData(fmt, r);
+            int[] block = new int[SAMPLES];
+            fmt.asS32(data, 0, block, 0, SAMPLES);
+            for (int i = 0; i < SAMPLES; i++)
+                Assert.assertEquals(fmt.asS32(data, i * fmt.bytesPerSample), block[i]);
+        }
+    }
+
+    @Test
+    public void testOfF32() {
+        Random r = new Random(3);
+        float[] src = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+            src[i] = (r.nextFloat() * 2.5f) - 1.25f;
+        // the edges
+        src[0] = -1;
+        src[1] = 1;
+        src[2] = 0;
+        src[3] = -0f;
+        for (AudioIOFormat fmt : FORMATS) {
+            byte[] block = new byte[SAMPLES * fmt.bytesPerSample];
+            byte[] scalar = new byte[SAMPLES * fmt.bytesPerSample];
+            fmt.ofF32(block, 0, src, 0, SAMPLES);
+            for (int i = 0; i < SAMPLES; i++)
+                fmt.ofF64(scalar, i * fmt.bytesPerSample, src[i]);
+            Assert.assertArrayEquals(scalar, block);
+        }
+    }
+
+    @Test
+    public void testOfS32() {
+        Random r = new Random(4);
+        int[] src = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+            src[i] = r.nextInt();
+        src[0] = Integer.MIN_VALUE;
+        src[1] = Integer.MAX_VALUE;
+        src[2] = 0;
+        for (AudioIOFormat fmt : FORMATS) {
+            byte[] block = new byte[SAMPLES * fmt.bytesPerSample];
+            byte[] scalar = new byte[SAMPLES * fmt.bytesPerSample];
+            fmt.ofS32(block, 0, src, 0, SAMPLES);
+            for (int i = 0; i < SAMPLES; i++)
+                fmt.ofS32(scalar, i * fmt.bytesPerSample, src[i]);
+            Assert.assertArrayEquals(scalar, block);
+        }
+    }
+
+    @Test
+    public void testSampleGetF32() {
+        Random r = new Random(5);
+        for (AudioIOFormat fmt : FORMATS) {
+            AudioIOSample sample = new AudioIOSample(new AudioIOCRSet(2, 22050), fmt, SAMPLES / 2);
+            byte[] data = makeData(fmt, r);
+            System.arraycopy(data, 0, sample.data, 0, data.length);
+            float[] block = new float[SAMPLES];
+            sample.getF32(0, SAMPLES / 2, block, 0);
+            float[] frame = new float[2];
+            for (int i = 0; i < SAMPLES / 2; i++) {
+                sample.getF32(i, frame);
+                Assert.assertEquals(frame[0], block[i * 2], 0);
+                Assert.assertEquals(frame[1], block[(i * 2) + 1], 0);
+            }
+        }
+    }
+}
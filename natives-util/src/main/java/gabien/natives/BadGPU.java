@@ -7,6 +7,9 @@
 
 package gabien.natives;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
 import org.eclipse.jdt.annotation.Nullable;
 
 import gabien.uslx.append.ThreadOwned;
@@ -215,6 +218,20 @@ public abstract class BadGPU extends BadGPUEnum {
             readPixelsChecks(x, y, width, height, fmt, dataOfs * 4, data.length * 4);
             return BadGPUUnsafe.readPixelsI(pointer, x, y, width, height, fmt.value, data, dataOfs);
         }
+        /**
+         * Reads pixels straight into a direct ByteBuffer. dataOfs is in bytes; the position/limit are ignored.
+         * Natives older than this function will throw UnsatisfiedLinkError.
+         */
+        public boolean readPixels(int x, int y, int width, int height, TextureLoadFormat fmt, ByteBuffer data, int dataOfs) {
+            if (width == 0 || height == 0)
+                return true;
+            if (data == null)
+                throw new IllegalArgumentException("data must not be null.");
+            if (!data.isDirect())
+                throw new IllegalArgumentException("data must be direct.");
+            readPixelsChecks(x, y, width, height, fmt, dataOfs, data.capacity());
+            return BadGPUUnsafe.readPixelsDirect(pointer, x, y, width, height, fmt.value, data, dataOfs);
+        }
         // Common bounds checks etc. for readPixels
         private static void readPixelsBoundsChecks(int x, int y, int width, int height, TextureLoadFormat fmt, int dataOfs, int dataLen) {
             if (width >= 32768 || height >= 32768 || width < 1 || height < 1)
@@ -277,6 +294,26 @@ public abstract class BadGPU extends BadGPUEnum {
     private static void checkVL(int flags, int vPosD, float[] vPos, int vPosOfs, @Nullable float[] vCol, int vColOfs, int vTCD, @Nullable float[] vTC, int vTCOfs,
             int iStart, int iCount, @Nullable short[] indices, int indicesOfs,
             @Nullable float[] matrixA, int matrixAOfs, @Nullable float[] clipPlane, int clipPlaneOfs, @Nullable float[] matrixT, int matrixTOfs) {
+        checkVL(flags, vPosD, vPos.length, vPosOfs, vCol != null ? vCol.length : -1, vColOfs, vTCD, vTC != null ? vTC.length : -1, vTCOfs,
+                iStart, iCount, indices, indicesOfs,
+                matrixA, matrixAOfs, clipPlane, clipPlaneOfs, matrixT, matrixTOfs);
+    }
+    private static void checkVLDirect(int flags, int vPosD, FloatBuffer vPos, int vPosOfs, @Nullable FloatBuffer vCol, int vColOfs, int vTCD, @Nullable FloatBuffer vTC, int vTCOfs,
+            int iStart, int iCount, @Nullable short[] indices, int indicesOfs,
+            @Nullable float[] matrixA, int matrixAOfs, @Nullable float[] clipPlane, int clipPlaneOfs, @Nullable float[] matrixT, int matrixTOfs) {
+        // A heap buffer has no address, and the native side would read NULL.
+        if (!vPos.isDirect() || (vCol != null && !vCol.isDirect()) || (vTC != null && !vTC.isDirect()))
+            throw new IllegalArgumentException("Vertex buffers must be direct");
+        checkVL(flags, vPosD, vPos.capacity(), vPosOfs, vCol != null ? vCol.capacity() : -1, vColOfs, vTCD, vTC != null ? vTC.capacity() : -1, vTCOfs,
+                iStart, iCount, indices, indicesOfs,
+                matrixA, matrixAOfs, clipPlane, clipPlaneOfs, matrixT, matrixTOfs);
+    }
+    /**
+     * Array lengths of -1 mean the array isn't present.
+     */
+    private static void checkVL(int flags, int vPosD, int vPosLen, int vPosOfs, int vColLen, int vColOfs, int vTCD, int vTCLen, int vTCOfs,
+            int iStart, int iCount, @Nullable short[] indices, int indicesOfs,
+            @Nullable float[] matrixA, int matrixAOfs, @Nullable float[] clipPlane, int clipPlaneOfs, @Nullable float[] matrixT, int matrixTOfs) {
         if (vPosD < 2 || vPosD > 4)
             throw new IllegalArgumentException("vPosD out of range");
         if (vTCD < 2 || vTCD > 4)
@@ -291,13 +328,13 @@ public abstract class BadGPU extends BadGPUEnum {
         cCount *= 4;
         tCount *= vTCD;
         // Check them
-        if (vPosOfs < 0 || (vPosOfs + vCount) > vPos.length)
+        if (vPosOfs < 0 || (vPosOfs + vCount) > vPosLen)
             throw new IllegalArgumentException("vPos out of bounds");
-        if (vCol != null)
-            if (vColOfs < 0 || (vColOfs + cCount) > vCol.length)
+        if (vColLen != -1)
+            if (vColOfs < 0 || (vColOfs + cCount) > vColLen)
             throw new IllegalArgumentException("vCol out of bounds");
-        if (vTC != null)
-            if (vTCOfs < 0 || (vTCOfs + tCount) > vTC.length)
+        if (vTCLen != -1)
+            if (vTCOfs < 0 || (vTCOfs + tCount) > vTCLen)
                 throw new IllegalArgumentException("vTC out of bounds");
         // Matrices
         if (matrixA != null)
@@ -398,4 +435,45 @@ public abstract class BadGPU extends BadGPUEnum {
                 clipPlane, clipPlaneOfs, atFunc.value, atRef,
                 blendProgram);
     }
+    /**
+     * drawGeomNoDS with vertex data in direct FloatBuffers. See BadGPUUnsafe.drawGeomNoDSDirect.
+     */
+    public static boolean drawGeomNoDS(
+        @Nullable Texture sTexture, int sFlags, int sScX, int sScY, int sScWidth, int sScHeight,
+        int flags,
+        int vPosD, FloatBuffer vPos, int vPosOfs, @Nullable FloatBuffer vCol, int vColOfs, int vTCD, @Nullable FloatBuffer vTC, int vTCOfs,
+        PrimitiveType pType, float plSize,
+        int iStart, int iCount, @Nullable short[] indices, int indicesOfs,
+        @Nullable float[] matrixA, int matrixAOfs,
+        int vX, int vY, int vW, int vH,
+        @Nullable Texture texture, @Nullable float[] matrixT, int matrixTOfs,
+        @Nullable float[] clipPlane, int clipPlaneOfs, Compare atFunc, float atRef,
+        int blendProgram
+    ) {
+        if (sTexture == null)
+            return false;
+        if (texture != null)
+            assert sTexture.syncObject == texture.syncObject;
+        // actual parameter checking
+        checkVLDirect(flags, vPosD, vPos, vPosOfs, vCol, vColOfs, vTCD, vTC, vTCOfs,
+                iStart, iCount, indices, indicesOfs,
+                matrixA, matrixAOfs, clipPlane, clipPlaneOfs, matrixT, matrixTOfs);
+        // continue
+        sTexture.syncObject.assertBound();
+        if (!sTexture.valid)
+            throw new InvalidatedPointerException(sTexture);
+        if (texture != null && !texture.valid)
+            throw new InvalidatedPointerException(texture);
+        return BadGPUUnsafe.drawGeomNoDSDirect(
+                sTexture.pointer, sFlags, sScX, sScY, sScWidth, sScHeight,
+                flags,
+                vPosD, vPos, vPosOfs, vCol, vColOfs, vTCD, vTC, vTCOfs,
+                pType.value, plSize,
+                iStart, iCount, indices, indicesOfs,
+                matrixA, matrixAOfs,
+                vX, vY, vW, vH,
+                texture != null ? texture.pointer : 0, matrixT, matrixTOfs,
+                clipPlane, clipPlaneOfs, atFunc.value, atRef,
+                blendProgram);
+    }
 }
@@ -7,6 +7,9 @@
 
 package gabien.natives;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
 import org.eclipse.jdt.annotation.Nullable;
 
 /**
@@ -68,6 +71,11 @@ public abstract class BadGPUUnsafe extends BadGPUEnum {
     public static native boolean generateMipmap(long texture);
     public static native boolean readPixelsB(long texture, int x, int y, int width, int height, int fmt, byte[] data, int dataOfs);
     public static native boolean readPixelsI(long texture, int x, int y, int width, int height, int fmt, int[] data, int dataOfs);
+    /**
+     * readPixels into a direct ByteBuffer (offset in bytes), without pinning or copying.
+     * Natives older than this function will throw UnsatisfiedLinkError.
+     */
+    public static native boolean readPixelsDirect(long texture, int x, int y, int width, int height, int fmt, ByteBuffer data, int dataOfs);
     // DC
     public static native boolean drawClear(
         long sTexture, long sDSBuffer, int sFlags, int sScX, int sScY, int sScWidth, int sScHeight,
@@ -100,6 +108,23 @@ public abstract class BadGPUUnsafe extends BadGPUEnum {
         @Nullable float[] clipPlane, int clipPlaneOfs, int atFunc, float atRef,
         int blendProgram
     );
+    /**
+     * drawGeomNoDS, but the vertex data is in direct FloatBuffers (offsets still in floats).
+     * These are read in-place, so nothing is pinned and no copy is made.
+     * Natives older than this function will throw UnsatisfiedLinkError.
+     */
+    public static native boolean drawGeomNoDSDirect(
+        long sTexture, int sFlags, int sScX, int sScY, int sScWidth, int sScHeight,
+        int flags,
+        int vPosD, FloatBuffer vPos, int vPosOfs, @Nullable FloatBuffer vCol, int vColOfs, int vTCD, @Nullable FloatBuffer vTC, int vTCOfs,
+        int pType, float plSize,
+        int iStart, int iCount, @Nullable short[] indices, int indicesOfs,
+        @Nullable float[] matrixA, int matrixAOfs,
+        int vX, int vY, int vW, int vH,
+        long texture, @Nullable float[] matrixT, int matrixTOfs,
+        @Nullable float[] clipPlane, int clipPlaneOfs, int atFunc, float atRef,
+        int blendProgram
+    );
 
     // Android magic
     public static native long ANDcreateEGLSurface(long instance, Object window);
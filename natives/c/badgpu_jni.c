@@ -165,6 +165,13 @@ unsigned char J_BADGPU(readPixelsI)(void * env, void * self, int64_t texture, in
     return res;
 }
 
+unsigned char J_BADGPU(readPixelsDirect)(void * env, void * self, int64_t texture, int32_t x, int32_t y, int32_t w, int32_t h, int32_t fmt, JNIBA_ARG(data)) {
+    JNIBD_L(data);
+    if (!data)
+        return 0;
+    return badgpuReadPixels(C_PTR(texture), x, y, w, h, fmt, data);
+}
+
 // DC
 
 #define JSESS_ARGS int64_t sTexture, int64_t sDSBuffer, int32_t sFlags, int32_t sScX, int32_t sScY, int32_t sScWidth, int32_t sScHeight
@@ -268,3 +275,42 @@ unsigned char J_BADGPU(drawGeomNoDS)(void * env, void * self,
     return res;
 }
 
+unsigned char J_BADGPU(drawGeomNoDSDirect)(void * env, void * self,
+    int64_t sTexture, int32_t sFlags, int32_t sScX, int32_t sScY, int32_t sScWidth, int32_t sScHeight,
+    int32_t flags,
+    int32_t vPosD, JNIBA_ARG(vPos), JNIBA_ARG(vCol), int32_t vTCD, JNIBA_ARG(vTC),
+    int32_t pType, float plSize,
+    int32_t iStart, int32_t iCount, JNIBA_ARG(indices),
+    JNIBA_ARG(mvMatrix),
+    int32_t vX, int32_t vY, int32_t vW, int32_t vH,
+    int64_t texture, JNIBA_ARG(matrixT),
+    JNIBA_ARG(clipPlane), int32_t atFunc, float atRef,
+    int32_t blendProgram
+) {
+    // Vertex data comes from direct FloatBuffers; only the small arrays get pinned.
+    JNIFD_L(vPos);
+    JNIFD_L(vCol);
+    JNIFD_L(vTC);
+    JNISA_L(indices);
+    JNIFA_L(mvMatrix);
+    JNIFA_L(matrixT);
+    JNIFA_L(clipPlane);
+    BADGPUBool res = badgpuDrawGeomNoDS(
+        C_PTR(sTexture), sFlags, sScX, sScY, sScWidth, sScHeight,
+        flags,
+        vPosD, (void *) vPos, (void *) vCol, vTCD, (void *) vTC,
+        pType, plSize,
+        iStart, iCount, (void *) indices,
+        (void *) mvMatrix,
+        vX, vY, vW, vH,
+        C_PTR(texture), (void *) matrixT,
+        clipPlane, atFunc, atRef,
+        blendProgram
+    );
+    JNIFA_R(clipPlane, JNI_ABORT);
+    JNIFA_R(matrixT, JNI_ABORT);
+    JNIFA_R(mvMatrix, JNI_ABORT);
+    JNISA_R(indices, JNI_ABORT);
+    return res;
+}
+
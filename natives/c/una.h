@@ -70,3 +70,13 @@ extern const char una_version[];
 #define JNIIA_R(name, mode) JNIXA_R(name, mode)
 #define JNIFA_R(name, mode) JNIXA_R(name, mode)
 
+// Direct buffers. These aren't pinned, so there's no release; the offset is in elements.
+#define JNIXD_L(name, type) type * name = 0; if (name ## _buf) { \
+    name = JNI_GetDirectBufferAddress(env, name ## _buf); \
+    if (name) \
+        name += name ## _ofs; \
+}
+
+#define JNIBD_L(name) JNIXD_L(name, int8_t)
+#define JNIFD_L(name) JNIXD_L(name, float)
+
@@ -17,10 +17,11 @@ import gabien.GaBIEn;
 import gabien.audio.IRawAudioDriver.IRawAudioSource;
 import gabien.media.audio.AudioIOFormat;
 import gabien.media.audio.fileio.ReadAnySupportedAudioSource;
+import gabien.media.midi.MIDIEventCursor;
+import gabien.media.midi.MIDIEventTable;
 import gabien.media.midi.MIDISequence;
 import gabien.media.midi.MIDISynthesizer;
 import gabien.media.midi.MIDITimer;
-import gabien.media.midi.MIDITracker;
 import gabien.ui.UIElement;
 import gabien.ui.WindowCreatingUIElementConsumer;
 import gabien.ui.UIElement.UIProxy;
@@ -103,24 +104,24 @@ public class UIMIDIPlayer extends UIProxy {
     }
 
     private class TheThingThatDoesTheStuff implements IRawAudioSource {
-        final MIDISequence sequence;
+        final MIDIEventTable table;
         final MIDISequence.TimingInformation seqTiming;
         MIDISynthesizer synth = new MIDISynthesizer(22050, palette, ReadAnySupportedAudioSource.MIDI_POLYPHONY);
-        MIDITracker tracker;
+        MIDIEventCursor cursor;
         MIDITimer timer;
         float[] data = new float[256];
         int dataPtr = 256;
         public TheThingThatDoesTheStuff(MIDISequence seq) {
-            sequence = seq;
-            seqTiming = seq.calcTimingInformation();
+            table = new MIDIEventTable(seq);
+            seqTiming = table.calcTimingInformation();
             reinitTrackerAndTimer();
         }
         private void reinitTrackerAndTimer() {
             // System.out.println("Doing reinit");
             synth.resetParameters();
             synth.clear();
-            tracker = new MIDITracker(sequence, synth);
-            timer = new MIDITimer(tracker);
+            cursor = new MIDIEventCursor(table, synth);
+            timer = new MIDITimer(cursor);
             // timer.resolve();
         }
         @Override
@@ -147,10 +148,12 @@ public class UIMIDIPlayer extends UIProxy {
             Double seekRequest = uiSeekRequest.getAndSet(null);
             if (seekRequest != null && DEBUG_ENABLE_SEEKING) {
                 dataPtr = data.length;
-                reinitTrackerAndTimer();
-                int target = seqTiming.secondsToTick(seekRequest * seqTiming.lengthSeconds);
-                timer.resolveTick(target - 1);
+                synth.resetParameters();
                 synth.clear();
+                int target = seqTiming.secondsToTick(seekRequest * seqTiming.lengthSeconds);
+                cursor.seekToTick(target);
+                table.sendControllersBefore(cursor.getPosition(), synth);
+                timer = new MIDITimer(cursor, seqTiming.tickToSeconds(target));
                 timer.resolveTick(target);
             }
             if (!play.state) {
@@ -167,7 +170,7 @@ public class UIMIDIPlayer extends UIProxy {
                     synth.update(nav);
                     timer.currentTime += nav;
                     timer.resolve();
-                    if (tracker.getTickOfNextEvent() == -1) {
+                    if (cursor.getTickOfNextEvent() == -1) {
                         // loop
                         reinitTrackerAndTimer();
                         timer.resolveTick(0);
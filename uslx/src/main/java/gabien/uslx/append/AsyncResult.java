@@ -0,0 +1,150 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.uslx.append;
+
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Minimal future for results produced on another thread.
+ * CompletableFuture isn't available on older Android, so this is the subset that's actually needed:
+ *  completing exactly once (with a value or a failure), blocking on the result, and callbacks.
+ * Callbacks run on whichever thread completes the result, or immediately if it's already done.
+ * Keep them short; if they need to do real work, they should hand it off.
+ *
+ * Created 18th October, 2026.
+ */
+public final class AsyncResult<T> implements Future<T> {
+    private boolean done;
+    private @Nullable T value;
+    private @Nullable Throwable failure;
+    private @Nullable LinkedList<BiConsumer<T, Throwable>> callbacks = new LinkedList<>();
+
+    public AsyncResult() {
+    }
+
+    /**
+     * Creates an already-completed result.
+     */
+    public static <T> AsyncResult<T> completed(T value) {
+        AsyncResult<T> res = new AsyncResult<>();
+        res.complete(value);
+        return res;
+    }
+
+    /**
+     * Completes with a value. Returns false if already done (in which case nothing happens).
+     */
+    public boolean complete(T value) {
+        return finish(value, null);
+    }
+
+    /**
+     * Completes with a failure. Returns false if already done (in which case nothing happens).
+     */
+    public boolean fail(@NonNull Throwable t) {
+        return finish(null, t);
+    }
+
+    @SuppressWarnings("null")
+    private boolean finish(@Nullable T v, @Nullable Throwable t) {
+        LinkedList<BiConsumer<T, Throwable>> cb;
+        synchronized (this) {
+            if (done)
+                return false;
+            done = true;
+            value = v;
+            failure = t;
+            cb = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        for (BiConsumer<T, Throwable> c : cb)
+            c.accept(v, t);
+        return true;
+    }
+
+    /**
+     * Calls the callback with (value, null) or (null, failure) once done.
+     */
+    @SuppressWarnings("null")
+    public void whenDone(BiConsumer<T, Throwable> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.accept(value, failure);
+    }
+
+    /**
+     * Calls the callback with the value if this completes successfully.
+     */
+    public void thenAccept(Consumer<T> callback) {
+        whenDone((v, t) -> {
+            if (t == null)
+                callback.accept(v);
+        });
+    }
+
+    /**
+     * Cancelling is simply failing with a CancellationException; whatever was producing the result isn't stopped.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return failure instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done)
+            wait();
+        return getNow();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getNow();
+    }
+
+    @SuppressWarnings("null")
+    private T getNow() throws ExecutionException {
+        Throwable t = failure;
+        if (t instanceof CancellationException)
+            throw (CancellationException) t;
+        if (t != null)
+            throw new ExecutionException(t);
+        return value;
+    }
+}
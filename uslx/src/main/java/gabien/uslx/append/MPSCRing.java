@@ -0,0 +1,282 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.uslx.append;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Bounded lock-free ring with any number of producers and exactly one consumer.
+ * Producers claim a slot by CAS on the tail, then publish it via that slot's sequence number (Vyukov-style).
+ * The consumer never takes a lock, and is expected to drain in bulk.
+ * What a producer does when the ring is full is controlled by the BackPressure policy.
+ *
+ * Created 18th October, 2026.
+ */
+public final class MPSCRing<T> {
+    /**
+     * Number of times SpinThenPark spins before it starts to park.
+     */
+    private static final int SPIN_TRIES = 128;
+    /**
+     * How long SpinThenPark parks for each time it parks.
+     */
+    private static final long PARK_NANOS = 50000;
+
+    public final int capacity;
+    public final BackPressure backPressure;
+
+    private final int mask;
+    private final Object[] elements;
+    /**
+     * Per-slot sequence numbers.
+     * A slot is free for position P when its sequence is P, and full for position P when it is P + 1.
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Only ever written by the consumer. Volatile so that size() works from other threads.
+     */
+    private volatile long head;
+
+    private volatile @Nullable Thread parkedConsumer;
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+    private final Object producerMonitor = new Object();
+
+    private final AtomicLong statStalls = new AtomicLong();
+    private final AtomicLong statStallNanos = new AtomicLong();
+    private final AtomicLong statDropped = new AtomicLong();
+
+    /**
+     * Creates the ring. The capacity is rounded up to a power of two.
+     */
+    public MPSCRing(int capacity, BackPressure backPressure) {
+        if (capacity <= 0 || capacity > (1 << 30))
+            throw new IllegalArgumentException("Bad MPSCRing capacity " + capacity);
+        int cap = 1;
+        while (cap < capacity)
+            cap <<= 1;
+        this.capacity = cap;
+        this.backPressure = backPressure;
+        mask = cap - 1;
+        elements = new Object[cap];
+        sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Attempts to add an element without waiting. Returns false if the ring is full.
+     * This does not count as a stall or a drop; it's the primitive the policies are built on.
+     * Safe from any thread.
+     */
+    public boolean offer(@NonNull T value) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements[idx] = value;
+                    sequences.set(idx, pos + 1);
+                    Thread consumer = parkedConsumer;
+                    if (consumer != null)
+                        LockSupport.unpark(consumer);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Adds an element, applying the back-pressure policy if the ring is full.
+     * Returns false if the element wasn't added. That's either a drop (Drop policy), or the thread being interrupted while blocked (Block policy).
+     * In the interrupted case the interrupt flag is set again and nothing is counted, as it's up to the caller whether to retry.
+     * Safe from any thread.
+     */
+    public boolean put(@NonNull T value) {
+        if (offer(value))
+            return true;
+        if (backPressure == BackPressure.Drop) {
+            statDropped.incrementAndGet();
+            return false;
+        }
+        long stallStart = System.nanoTime();
+        statStalls.incrementAndGet();
+        try {
+            if (backPressure == BackPressure.Block) {
+                // Must be visible before the re-check, or the consumer may miss us (see notifyProducers).
+                blockedProducers.incrementAndGet();
+                try {
+                    synchronized (producerMonitor) {
+                        while (!offer(value))
+                            producerMonitor.wait();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } finally {
+                    blockedProducers.decrementAndGet();
+                }
+            } else {
+                int tries = 0;
+                while (!offer(value)) {
+                    if (tries < SPIN_TRIES) {
+                        tries++;
+                    } else if (tries == SPIN_TRIES) {
+                        tries++;
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                }
+            }
+        } finally {
+            statStallNanos.addAndGet(System.nanoTime() - stallStart);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the next element, or returns null if there is none.
+     * Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable T poll() {
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1)
+            return null;
+        Object res = elements[idx];
+        elements[idx] = null;
+        sequences.set(idx, pos + capacity);
+        head = pos + 1;
+        notifyProducers();
+        return (T) res;
+    }
+
+    /**
+     * Removes as many elements as are available (up to buffer.length) into the start of buffer.
+     * Returns the amount of elements removed.
+     * Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(@NonNull T[] buffer) {
+        long pos = head;
+        int count = 0;
+        while (count < buffer.length) {
+            int idx = (int) (pos & mask);
+            if (sequences.get(idx) != pos + 1)
+                break;
+            buffer[count++] = (T) elements[idx];
+            elements[idx] = null;
+            sequences.set(idx, pos + capacity);
+            pos++;
+        }
+        if (count != 0) {
+            head = pos;
+            notifyProducers();
+        }
+        return count;
+    }
+
+    /**
+     * Like drain, but waits (parking the thread) until at least one element is available.
+     * Consumer thread only.
+     */
+    public int take(@NonNull T[] buffer) {
+        while (true) {
+            int count = drain(buffer);
+            if (count != 0)
+                return count;
+            // Announce we're about to park, then re-check; offer() checks in the opposite order.
+            parkedConsumer = Thread.currentThread();
+            if (isEmpty())
+                LockSupport.park(this);
+            parkedConsumer = null;
+        }
+    }
+
+    /**
+     * Returns true if the next element isn't available yet.
+     * Meaningful on the consumer thread; elsewhere it's a guess.
+     */
+    public boolean isEmpty() {
+        long pos = head;
+        return sequences.get((int) (pos & mask)) != pos + 1;
+    }
+
+    /**
+     * Approximate queue depth. This includes slots claimed by producers that haven't been published yet.
+     */
+    public int size() {
+        long res = tail.get() - head;
+        if (res < 0)
+            return 0;
+        if (res > capacity)
+            return capacity;
+        return (int) res;
+    }
+
+    /**
+     * Number of times a producer found the ring full and had to wait.
+     */
+    public long getStallCount() {
+        return statStalls.get();
+    }
+
+    /**
+     * Total time producers have spent waiting on a full ring, in nanoseconds.
+     */
+    public long getStallNanos() {
+        return statStallNanos.get();
+    }
+
+    /**
+     * Number of elements put discarded due to the Drop policy.
+     */
+    public long getDropCount() {
+        return statDropped.get();
+    }
+
+    private void notifyProducers() {
+        if (blockedProducers.get() != 0) {
+            synchronized (producerMonitor) {
+                producerMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * What put does when the ring is full.
+     */
+    public enum BackPressure {
+        /**
+         * Wait on a monitor until the consumer frees space.
+         */
+        Block,
+        /**
+         * Busy-wait briefly, then repeatedly park for short periods.
+         * Lower wakeup latency than Block, at the cost of CPU.
+         */
+        SpinThenPark,
+        /**
+         * Discard the element and count it.
+         */
+        Drop
+    }
+}
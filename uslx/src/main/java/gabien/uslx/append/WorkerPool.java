@@ -0,0 +1,95 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.uslx.append;
+
+import java.util.LinkedList;
+
+/**
+ * Fixed set of daemon threads that run jobs in submission order.
+ * Used for background decoding (images, audio prefetch); each use keeps its own pool, so a long job of one kind can't hold up another.
+ * Created 18th October, 2026.
+ */
+public final class WorkerPool {
+    private final Thread[] threads;
+    // guarded by itself
+    private final LinkedList<Runnable> queue = new LinkedList<>();
+    private boolean shutdown;
+
+    public WorkerPool(String name, int threadCount) {
+        if (threadCount <= 0)
+            throw new IllegalArgumentException("Thread count must be positive");
+        threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(name + " " + i) {
+                @Override
+                public void run() {
+                    workerLoop();
+                }
+            };
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Creates a pool with one thread per processor.
+     */
+    public WorkerPool(String name) {
+        this(name, Math.max(1, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    /**
+     * Queues a job. Never blocks (beyond taking the queue lock briefly).
+     * Exceptions thrown by jobs are printed and otherwise ignored, so jobs should handle their own.
+     */
+    public void execute(Runnable job) {
+        synchronized (queue) {
+            if (shutdown)
+                throw new IllegalStateException("WorkerPool has been shut down");
+            queue.add(job);
+            queue.notify();
+        }
+    }
+
+    /**
+     * Stops the worker threads once they're done with their current jobs. Queued jobs are dropped.
+     */
+    public void shutdown() {
+        synchronized (queue) {
+            shutdown = true;
+            queue.clear();
+            queue.notifyAll();
+        }
+    }
+
+    private void workerLoop() {
+        while (true) {
+            Runnable job;
+            synchronized (queue) {
+                while (!shutdown && queue.isEmpty()) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException ie) {
+                        // keep going
+                    }
+                }
+                if (shutdown)
+                    return;
+                job = queue.removeFirst();
+            }
+            try {
+                job.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@
  */
 package gabien.uslx.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,4 +37,19 @@ public class InputStreamUtils {
             len -= res;
         }
     }
+
+    /**
+     * Reads everything remaining in the stream into a byte array.
+     */
+    public static byte[] readAll(InputStream inp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] chk = new byte[4096];
+        while (true) {
+            int len = inp.read(chk);
+            if (len < 0)
+                break;
+            baos.write(chk, 0, len);
+        }
+        return baos.toByteArray();
+    }
 }
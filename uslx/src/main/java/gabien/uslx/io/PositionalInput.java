@@ -0,0 +1,113 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+package gabien.uslx.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Read-only random-access input. Reads are positional, so there's no shared "current position".
+ * Unlike MemoryishR, reads can fail with IOException, so this can sit on top of a file without reading it in.
+ * Created 18th October, 2026.
+ */
+public abstract class PositionalInput implements Closeable {
+    public final long length;
+
+    public PositionalInput(long length) {
+        this.length = length;
+    }
+
+    /**
+     * Reads up to len bytes at the given position.
+     * Returns the amount read, which is only 0 if len is 0 or the position is at/past the end.
+     */
+    public abstract int read(long at, byte[] data, int ofs, int len) throws IOException;
+
+    /**
+     * Reads exactly len bytes at the given position, or throws EOFException.
+     */
+    public final void readFully(long at, byte[] data, int ofs, int len) throws IOException {
+        while (len > 0) {
+            int res = read(at, data, ofs, len);
+            if (res <= 0)
+                throw new EOFException();
+            at += res;
+            ofs += res;
+            len -= res;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing to do here!
+    }
+
+    /**
+     * Wraps a byte array.
+     */
+    public static PositionalInput of(byte[] data) {
+        return new PositionalInput(data.length) {
+            @Override
+            public int read(long at, byte[] target, int ofs, int len) {
+                if (at >= length)
+                    return 0;
+                int am = (int) Math.min(len, length - at);
+                System.arraycopy(data, (int) at, target, ofs, am);
+                return am;
+            }
+        };
+    }
+
+    /**
+     * Wraps a file channel. Position 0 is the given base position in the channel.
+     * If closeMe is non-null, it's closed when this is.
+     */
+    public static PositionalInput of(FileChannel fc, long base, @Nullable Closeable closeMe) throws IOException {
+        return new PositionalInput(fc.size() - base) {
+            @Override
+            public int read(long at, byte[] target, int ofs, int len) throws IOException {
+                if (at >= length)
+                    return 0;
+                int am = (int) Math.min(len, length - at);
+                int res = fc.read(ByteBuffer.wrap(target, ofs, am), base + at);
+                return res < 0 ? 0 : res;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closeMe != null)
+                    closeMe.close();
+            }
+        };
+    }
+
+    /**
+     * Gets random access to the rest of an InputStream.
+     * A FileInputStream is accessed through its channel (starting at the current position), anything else is read into memory.
+     * In the first case, if close is true, the stream is closed when the result is.
+     * In the second case, if close is true, the stream is closed immediately.
+     */
+    public static PositionalInput from(InputStream inp, boolean close) throws IOException {
+        if (inp instanceof FileInputStream) {
+            FileChannel fc = ((FileInputStream) inp).getChannel();
+            return of(fc, fc.position(), close ? inp : null);
+        }
+        try {
+            return of(InputStreamUtils.readAll(inp));
+        } finally {
+            if (close)
+                inp.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gabien.uslx.append.AsyncResult;
+
+/**
+ * Created 18th October 2026.
+ */
+public class AsyncResultTest {
+    @Test
+    public void testCompleteOnce() throws Exception {
+        AsyncResult<String> res = new AsyncResult<>();
+        AtomicInteger calls = new AtomicInteger();
+        res.thenAccept((v) -> {
+            Assert.assertEquals("A", v);
+            calls.incrementAndGet();
+        });
+        Assert.assertFalse(res.isDone());
+        Assert.assertTrue(res.complete("A"));
+        Assert.assertFalse(res.complete("B"));
+        Assert.assertFalse(res.fail(new RuntimeException()));
+        Assert.assertEquals("A", res.get());
+        // late callbacks run immediately
+        res.thenAccept((v) -> calls.incrementAndGet());
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AsyncResult<String> res = new AsyncResult<>();
+        try {
+            res.get(1, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (TimeoutException te) {
+            // expected
+        }
+        res.fail(new IllegalStateException("X"));
+        try {
+            res.get();
+            Assert.fail();
+        } catch (ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertFalse(res.isCancelled());
+    }
+
+    @Test
+    public void testOtherThread() throws Exception {
+        AsyncResult<Integer> res = new AsyncResult<>();
+        new Thread(() -> res.complete(123)).start();
+        Assert.assertEquals(123, (int) res.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * gabien-common - Cross-platform game and UI framework
+ * Written starting in 2016 by contributors (see CREDITS.txt)
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * A copy of the Unlicense should have been supplied as COPYING.txt in this repository. Alternatively, you can find it at <https://unlicense.org/>.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gabien.uslx.append.MPSCRing;
+
+/**
+ * Created 18th October 2026.
+ */
+public class MPSCRingTest {
+    @Test
+    public void testDropPolicy() {
+        MPSCRing<Integer> ring = new MPSCRing<>(3, MPSCRing.BackPressure.Drop);
+        Assert.assertEquals(4, ring.capacity);
+        for (int i = 0; i < 4; i++)
+            Assert.assertTrue(ring.put(i));
+        Assert.assertFalse(ring.put(4));
+        Assert.assertEquals(1, ring.getDropCount());
+        Assert.assertEquals(4, ring.size());
+        Integer[] tmp = new Integer[3];
+        Assert.assertEquals(3, ring.drain(tmp));
+        Assert.assertEquals(2, (int) tmp[2]);
+        Assert.assertEquals(3, (int) ring.poll());
+        Assert.assertNull(ring.poll());
+        Assert.assertTrue(ring.isEmpty());
+    }
+
+    private void runProducers(MPSCRing.BackPressure bp) throws InterruptedException {
+        final int producers = 4;
+        final int each = 20000;
+        // small on purpose so that producers actually stall
+        MPSCRing<int[]> ring = new MPSCRing<>(16, bp);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int pid = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < each; i++)
+                    ring.put(new int[] {pid, i});
+            });
+            threads[p].start();
+        }
+        int[] next = new int[producers];
+        int[][] tmp = new int[8][];
+        int total = 0;
+        while (total < producers * each) {
+            int count = ring.take(tmp);
+            for (int i = 0; i < count; i++) {
+                // per-producer order must be preserved
+                Assert.assertEquals(next[tmp[i][0]]++, tmp[i][1]);
+            }
+            total += count;
+        }
+        for (Thread t : threads)
+            t.join();
+        Assert.assertEquals(0, ring.getDropCount());
+        Assert.assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testBlockPolicy() throws InterruptedException {
+        runProducers(MPSCRing.BackPressure.Block);
+    }
+
+    @Test
+    public void testSpinThenParkPolicy() throws InterruptedException {
+        runProducers(MPSCRing.BackPressure.SpinThenPark);
+    }
+}